@@ -0,0 +1,64 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finds the javadoc archives in synthetic Maven repositories of 1k, 10k and 100k files with the
+ * {@link JavadocArchiveFinder} file visitor and with the {@link ParallelJavadocArchiveScanner}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveFinderBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int files;
+
+    private Path repository;
+
+    private ParallelJavadocArchiveScanner scanner;
+
+    @Setup
+    public void setUp() throws IOException {
+        repository = BenchmarkArchives.repository(files);
+        scanner = new ParallelJavadocArchiveScanner();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        scanner.close();
+        BenchmarkArchives.delete(repository);
+    }
+
+    @Benchmark
+    public Collection<String> fileVisitor() throws IOException {
+        var finder = new JavadocArchiveFinder(repository);
+        Files.walkFileTree(repository, finder);
+        return finder.getJavadocArtifactDirectoryNames();
+    }
+
+    @Benchmark
+    public Collection<String> parallelScanner() {
+        return scanner.scan(repository);
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.argherna.javadocserver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates the archives and repositories benchmarks run against, the same every time.
+ */
+final class BenchmarkArchives {
+
+    /**
+     * Name of a class page, about 10 KB.
+     */
+    static final String SMALL_ENTRY = "com/example/pkg7/Class42.html";
+
+    /**
+     * Name of the member search index, about 1.5 MB.
+     */
+    static final String LARGE_ENTRY = "member-search-index.js";
+
+    /**
+     * Name of the stylesheet every page loads.
+     */
+    static final String STYLESHEET = "stylesheet.css";
+
+    /**
+     * Names of the scripts every page loads, besides the stylesheet.
+     */
+    static final String[] SCRIPTS = {"script.js", "script-dir/jquery-3.6.1.min.js"};
+
+    /**
+     * Names of the search indexes, loaded by the search box.
+     */
+    static final String[] SEARCH_INDEXES =
+            {LARGE_ENTRY, "type-search-index.js", "package-search-index.js"};
+
+    /**
+     * Words the text of the archives is made of.
+     */
+    static final String[] WORDS = {"the", "value", "returns", "if", "of", "a", "an",
+            "specified", "element", "list", "map", "string", "index", "throws", "null", "this",
+            "method", "parameter", "object", "class", "interface", "default", "see", "also"};
+
+    private static final int PACKAGES = 20;
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+
+    private static Path javadocJar;
+
+    // Empty private constructor to prevent instantiation.
+    private BenchmarkArchives() {
+    }
+
+    /**
+     * Return a javadoc jar shaped like a real one, with {@value #PACKAGES} packages of
+     * {@value #CLASSES_PER_PACKAGE} class pages each, stylesheets, scripts and search indexes.
+     * The jar is made once per JVM and deleted when the JVM exits.
+     *
+     * @return path to the javadoc jar.
+     */
+    static synchronized Path javadocJar() {
+        if (javadocJar == null) {
+            try {
+                var jar = Files.createTempFile("benchmark-", "-1.0-javadoc.jar");
+                jar.toFile().deleteOnExit();
+                writeJavadocArchive(jar, "", PACKAGES * CLASSES_PER_PACKAGE, new Random(42L));
+                javadocJar = jar;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return javadocJar;
+    }
+
+    /**
+     * Create a Maven repository holding about the given number of files, one javadoc jar among
+     * every five files like a real repository with jars, sources and poms.
+     *
+     * @param files number of files to create.
+     * @return path to the repository.
+     * @throws IOException if the repository can't be created.
+     */
+    static Path repository(int files) throws IOException {
+        var repository = Files.createTempDirectory("benchmark-m2-");
+        var versions = Math.max(1, files / 5);
+        for (var i = 0; i < versions; i++) {
+            var artifactId = "artifact" + (i / 4);
+            var version = "1." + (i % 4);
+            var dir = repository.resolve("org").resolve("example" + (i / 400))
+                    .resolve(artifactId).resolve(version);
+            Files.createDirectories(dir);
+            var base = artifactId + "-" + version;
+            for (var suffix : new String[] {".jar", ".pom", "-sources.jar", "-javadoc.jar",
+                    ".jar.sha1"}) {
+                Files.createFile(dir.resolve(base + suffix));
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * Delete a directory and everything in it.
+     *
+     * @param dir directory to delete.
+     * @throws IOException if something can't be deleted.
+     */
+    static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Write an archive laid out like javadoc under a prefix, {@code docs/api/} say for JDK
+     * documentation, with packages of {@value #CLASSES_PER_PACKAGE} class pages, the stylesheet,
+     * scripts and search indexes.
+     *
+     * @param archive path to the archive.
+     * @param prefix  prefix of the entry names, empty or ending with {@code /}.
+     * @param classes number of class pages.
+     * @param random  source of the text, seeded for the same archive every time.
+     * @return names of the class pages relative to the prefix.
+     * @throws IOException if the archive can't be written.
+     */
+    static List<String> writeJavadocArchive(Path archive, String prefix, int classes,
+            Random random) throws IOException {
+        var pageNames = new ArrayList<String>(classes);
+        var members = new StringBuilder("memberSearchIndex = [");
+        var types = new StringBuilder("typeSearchIndex = [");
+        var packages = new StringBuilder("packageSearchIndex = [");
+        try (var out = new ZipOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(archive)))) {
+            put(out, prefix + "index.html", page(random, "Overview", 4 * 1024));
+            put(out, prefix + STYLESHEET, text(random, 40 * 1024));
+            put(out, prefix + SCRIPTS[0], text(random, 12 * 1024));
+            put(out, prefix + SCRIPTS[1], text(random, 90 * 1024));
+            for (var c = 0; c < classes; c++) {
+                var pkg = "com.example.pkg" + (c / CLASSES_PER_PACKAGE);
+                var cls = "Class" + (c % CLASSES_PER_PACKAGE);
+                var name = pkg.replace('.', '/') + "/" + cls + ".html";
+                pageNames.add(name);
+                put(out, prefix + name,
+                        page(random, pkg + "." + cls, 6 * 1024 + random.nextInt(8 * 1024)));
+                if (c % CLASSES_PER_PACKAGE == 0) {
+                    packages.append("{\"l\":\"").append(pkg).append("\"},");
+                }
+                types.append("{\"p\":\"").append(pkg).append("\",\"l\":\"").append(cls)
+                        .append("\"},");
+                for (var m = 0; m < 10; m++) {
+                    members.append("{\"p\":\"").append(pkg).append("\",\"c\":\"").append(cls)
+                            .append("\",\"l\":\"").append(WORDS[random.nextInt(WORDS.length)])
+                            .append(m).append("(java.lang.String)\"},");
+                }
+            }
+            put(out, prefix + SEARCH_INDEXES[0], close(members));
+            put(out, prefix + SEARCH_INDEXES[1], close(types));
+            put(out, prefix + SEARCH_INDEXES[2], close(packages));
+        }
+        return pageNames;
+    }
+
+    private static String close(StringBuilder searchIndex) {
+        if (searchIndex.charAt(searchIndex.length() - 1) == ',') {
+            searchIndex.setLength(searchIndex.length() - 1);
+        }
+        return searchIndex.append("];").toString();
+    }
+
+    private static void put(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+
+    private static String page(Random random, String title, int size) {
+        return "<!DOCTYPE html><html><head><title>" + title + "</title>"
+                + "<link rel=\"stylesheet\" href=\"" + STYLESHEET + "\"></head><body><p>"
+                + text(random, size) + "</p></body></html>";
+    }
+
+    private static String text(Random random, int size) {
+        var sb = new StringBuilder(size + 16);
+        while (sb.length() < size) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.argherna.javadocserver;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * HttpExchange that keeps no connection and throws the response body away, so that benchmarks
+ * measure the handlers and not the network. Reset it before every request.
+ */
+final class BenchmarkExchange extends HttpExchange {
+
+    private final Headers requestHeaders = new Headers();
+
+    private final Headers responseHeaders = new Headers();
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final OutputStream responseBody = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytesWritten += len;
+        }
+    };
+
+    private URI requestURI = URI.create("/");
+
+    private int responseCode = -1;
+
+    private long bytesWritten;
+
+    /**
+     * Get ready for a new request, keeping the request headers.
+     *
+     * @param requestURI URI of the request.
+     * @return this exchange.
+     */
+    BenchmarkExchange reset(URI requestURI) {
+        this.requestURI = requestURI;
+        responseHeaders.clear();
+        responseCode = -1;
+        bytesWritten = 0L;
+        return this;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return "GET";
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return InputStream.nullInputStream();
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) {
+        responseCode = rCode;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return InetSocketAddress.createUnresolved("localhost", 0);
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return InetSocketAddress.createUnresolved("localhost", 0);
+    }
+
+    @Override
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+}
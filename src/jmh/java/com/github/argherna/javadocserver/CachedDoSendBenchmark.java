@@ -0,0 +1,85 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Sends the small entry of a real-sized javadoc jar from the hot entry cache, with and without
+ * gzip, and answers a conditional request for it with a 304.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CachedDoSendBenchmark {
+
+    @Param({"identity", "gzip"})
+    String encoding;
+
+    private final BenchmarkExchange exchange = new BenchmarkExchange();
+
+    private final BenchmarkExchange conditionalExchange = new BenchmarkExchange();
+
+    private final URI uri = URI.create("/");
+
+    private JavadocHandler handler;
+
+    private String archiveName;
+
+    private String contentType;
+
+    @Setup
+    public void setUp() throws IOException {
+        archiveName = BenchmarkArchives.javadocJar().toString();
+        contentType = JavadocServerFileNameMap.getInstance()
+                .getContentTypeFor(BenchmarkArchives.SMALL_ENTRY);
+        handler = new JavadocHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) {
+            }
+        };
+        if (encoding.equals("gzip")) {
+            exchange.getRequestHeaders().set("Accept-Encoding", "gzip");
+            conditionalExchange.getRequestHeaders().set("Accept-Encoding", "gzip");
+        }
+        doSend(exchange);
+        conditionalExchange.getRequestHeaders().set("If-None-Match",
+                exchange.getResponseHeaders().getFirst("ETag"));
+    }
+
+    @Benchmark
+    public long cached() throws IOException {
+        doSend(exchange);
+        return exchange.getBytesWritten();
+    }
+
+    @Benchmark
+    public int notModified() throws IOException {
+        doSend(conditionalExchange);
+        return conditionalExchange.getResponseCode();
+    }
+
+    private void doSend(BenchmarkExchange e) throws IOException {
+        handler.doSend(e.reset(uri), contentType, archiveName, BenchmarkArchives.SMALL_ENTRY,
+                CachePolicy.IMMUTABLE);
+    }
+}
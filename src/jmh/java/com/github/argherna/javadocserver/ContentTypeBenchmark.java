@@ -0,0 +1,77 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.FileNameMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves the content types of the kinds of file names javadoc pages load, with
+ * {@link JavadocServerFileNameMap} and with the map keyed by extension it used before, for
+ * comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentTypeBenchmark {
+
+    @Param({"docs/api/java.base/java/lang/String.html", "docs/api/stylesheet.css",
+            "docs/api/script-dir/jquery-3.6.1.min.js", "docs/api/member-search-index.zip",
+            "docs/api/element-list", "docs/api/legal/LICENSE.unknown"})
+    String fileName;
+
+    private FileNameMap fileNameMap;
+
+    private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        fileNameMap = JavadocServerFileNameMap.getInstance();
+
+        var props = new Properties();
+        try (var is = ContentTypeBenchmark.class.getResourceAsStream(
+                "/com/github/argherna/javadocserver/content-types.properties")) {
+            props.load(is);
+        }
+        for (var mimetype : props.stringPropertyNames()) {
+            for (var component : props.getProperty(mimetype).split(";")) {
+                if (component.startsWith("file_extensions=")) {
+                    for (var extension : component.split("=")[1].split(",")) {
+                        contentTypes.put(extension, mimetype);
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public String getContentTypeFor() {
+        return fileNameMap.getContentTypeFor(fileName);
+    }
+
+    // The lookup without the logging it did for file names that had no content type.
+    @Benchmark
+    public String substringAndMap() {
+        if (fileName.lastIndexOf(".") == -1) {
+            return "application/octet-stream";
+        }
+        return contentTypes.get(fileName.substring(fileName.lastIndexOf(".")));
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Sends a small and a large entry of a real-sized javadoc jar with every archive reader, with and
+ * without gzip passthrough.
+ *
+ * <p>
+ * The hot entry cache is turned off so that every request reads the archive. The
+ * {@code cached} benchmark turns it back on for the small entry to show what a cache hit costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcom.github.argherna.javadocserver.entry.cache.bytes=0")
+@State(Scope.Thread)
+public class DoSendBenchmark {
+
+    @Param({"small", "large"})
+    String entry;
+
+    @Param({"ZIPFILE", "MAPPED"})
+    String reader;
+
+    @Param({"identity", "gzip"})
+    String encoding;
+
+    private final BenchmarkExchange exchange = new BenchmarkExchange();
+
+    private final URI uri = URI.create("/");
+
+    private JavadocHandler handler;
+
+    private String archiveName;
+
+    private String entryName;
+
+    private String contentType;
+
+    @Setup
+    public void setUp() {
+        archiveName = BenchmarkArchives.javadocJar().toString();
+        entryName = entry.equals("small") ? BenchmarkArchives.SMALL_ENTRY
+                : BenchmarkArchives.LARGE_ENTRY;
+        contentType = JavadocServerFileNameMap.getInstance().getContentTypeFor(entryName);
+        handler = new JavadocHandler(JavadocHandler.ArchiveReader.valueOf(reader)) {
+
+            @Override
+            public void handle(HttpExchange exchange) {
+            }
+        };
+        if (encoding.equals("gzip")) {
+            exchange.getRequestHeaders().set("Accept-Encoding", "gzip");
+        }
+    }
+
+    @Benchmark
+    public long doSend() throws IOException {
+        handler.doSend(exchange.reset(uri), contentType, archiveName, entryName,
+                CachePolicy.IMMUTABLE);
+        return exchange.getBytesWritten();
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders the index page for catalogs of 100, 1k and 10k javadoc archives, and serves the cached
+ * page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexPageBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int archives;
+
+    private final Collection<String> jdkDocsKeys = List.of("11", "17", "21");
+
+    private final Collection<String> artifactDirectoryNames = new ArrayList<>();
+
+    private final BenchmarkExchange exchange = new BenchmarkExchange();
+
+    private final URI uri = URI.create("/");
+
+    private MavenRepositories repositories;
+
+    private IndexHandler handler;
+
+    @Setup
+    public void setUp() {
+        var separator = System.getProperty("file.separator");
+        for (var i = 0; i < archives; i++) {
+            artifactDirectoryNames.add(String.join(separator, "org", "example" + (i / 100),
+                    "artifact" + (i / 4), "1." + (i % 4)));
+        }
+        repositories = new MavenRepositories(ServerConfig.getInstance());
+        repositories.start();
+        handler = new IndexHandler(repositories);
+        exchange.getRequestHeaders().set("Accept-Encoding", "gzip");
+    }
+
+    @TearDown
+    public void tearDown() {
+        repositories.close();
+    }
+
+    @Benchmark
+    public byte[] render() {
+        return IndexHandler.renderIndexPage(jdkDocsKeys, artifactDirectoryNames);
+    }
+
+    @Benchmark
+    public long cachedPage() throws IOException {
+        handler.handle(exchange.reset(uri));
+        return exchange.getBytesWritten();
+    }
+}
@@ -0,0 +1,495 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.prefs.AbstractPreferences;
+import java.util.prefs.Preferences;
+import java.util.prefs.PreferencesFactory;
+
+/**
+ * End-to-end throughput benchmark of the whole server.
+ *
+ * <p>
+ * The load test generates a Maven repository of javadoc jars and a JDK documentation archive in a
+ * temporary directory, starts the server on an ephemeral port against them and drives it with
+ * simulated page loads from {@link HttpClient}s: an HTML page followed by the stylesheet and
+ * scripts it loads, now and then the search indexes, the index page and the search API. It
+ * reports the throughput and the p50, p99 and p99.9 latencies of every route. Everything runs
+ * offline and in memory, the user preferences aren't read or changed.
+ *
+ * <p>
+ * Run it with the same options the server takes to compare executor and archive reader modes, and
+ * with the server's system properties to compare cache settings, like
+ *
+ * <pre>
+ * mvn -P jmh test-compile
+ * java -Dcom.github.argherna.javadocserver.entry.cache.bytes=0 \
+ *     -cp target/classes:target/test-classes com.github.argherna.javadocserver.LoadTest \
+ *     -x virtual -r mapped -c 32
+ * </pre>
+ *
+ * <p>
+ * The load test turns on {@code sun.net.httpserver.nodelay} unless it's set, so the JDK engine
+ * sends the body of a response without waiting for the client to acknowledge the headers.
+ */
+public class LoadTest {
+
+    private static final int DEFAULT_CLIENTS = 16;
+
+    private static final int DEFAULT_DURATION_SECONDS = 30;
+
+    private static final int DEFAULT_WARMUP_SECONDS = 10;
+
+    private static final int DEFAULT_ARCHIVES = 20;
+
+    private static final int DEFAULT_PAGES = 500;
+
+    private static final String JDK_KEY = "17";
+
+    private static final String JDK_DOCS_PREFIX = "docs/api/";
+
+    private static final String[] PAGE_ASSETS = {BenchmarkArchives.STYLESHEET,
+            BenchmarkArchives.SCRIPTS[0], BenchmarkArchives.SCRIPTS[1]};
+
+    private static final String[] WORDS = BenchmarkArchives.WORDS;
+
+    // Disables Nagle's algorithm, without it the body of every response waits for the client's
+    // delayed acknowledgement of the headers, around 40 ms.
+    private static final String SYS_PROP_NODELAY = "sun.net.httpserver.nodelay";
+
+    /**
+     * Routes latencies are reported for.
+     */
+    static enum RouteKind {
+        INDEX("/"),
+        JDK_PAGE("/jdk page"),
+        JDK_ASSET("/jdk asset"),
+        JDK_SEARCH_INDEX("/jdk search index"),
+        M2_PAGE("/m2 page"),
+        M2_ASSET("/m2 asset"),
+        M2_SEARCH_INDEX("/m2 search index"),
+        SEARCH("/api/search");
+
+        private final String label;
+
+        private RouteKind(String label) {
+            this.label = label;
+        }
+    }
+
+    private final ServerOptions serverOptions;
+
+    private int clients = DEFAULT_CLIENTS;
+
+    private int durationSeconds = DEFAULT_DURATION_SECONDS;
+
+    private int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+
+    private int archives = DEFAULT_ARCHIVES;
+
+    private int pages = DEFAULT_PAGES;
+
+    private String encoding = "gzip";
+
+    private List<String> pageNames;
+
+    private URI baseUri;
+
+    private LoadTest(ServerOptions serverOptions) {
+        this.serverOptions = serverOptions;
+    }
+
+    /**
+     * Run the load test with the options described by {@code -h}.
+     */
+    public static void main(String... args) throws Exception {
+        // Before anything touches the preferences, so that the server reads generated ones.
+        System.setProperty("java.util.prefs.PreferencesFactory",
+                MemoryPreferencesFactory.class.getName());
+        // The generated archives are deleted after the run, they don't belong in the hot set.
+        if (System.getProperty(HotSet.SYS_PROP_FILE) == null) {
+            System.setProperty(HotSet.SYS_PROP_FILE, "");
+        }
+        if (System.getProperty(SYS_PROP_NODELAY) == null) {
+            System.setProperty(SYS_PROP_NODELAY, "true");
+        }
+
+        var loadTest = new LoadTest(new ServerOptions());
+        for (var argIdx = 0; argIdx < args.length; argIdx++) {
+            var arg = args[argIdx];
+            try {
+                switch (arg) {
+                    case "-a":
+                        loadTest.archives = positive(nextArg(args, ++argIdx));
+                        break;
+                    case "-c":
+                        loadTest.clients = positive(nextArg(args, ++argIdx));
+                        break;
+                    case "-d":
+                        loadTest.durationSeconds = positive(nextArg(args, ++argIdx));
+                        break;
+                    case "-e":
+                        loadTest.encoding = nextArg(args, ++argIdx);
+                        break;
+                    case "-p":
+                        loadTest.pages = positive(nextArg(args, ++argIdx));
+                        break;
+                    case "-q":
+                        loadTest.serverOptions
+                                .setWorkerQueueSize(positive(nextArg(args, ++argIdx)));
+                        break;
+                    case "-r":
+                        loadTest.serverOptions.setArchiveReader(
+                                JavadocHandler.ArchiveReader.fromString(nextArg(args, ++argIdx)));
+                        break;
+                    case "-s":
+                        loadTest.serverOptions.setEngine(
+                                ServerOptions.Engine.fromString(nextArg(args, ++argIdx)));
+                        break;
+                    case "-t":
+                        loadTest.serverOptions.setWorkerThreads(positive(nextArg(args, ++argIdx)));
+                        break;
+                    case "-w":
+                        loadTest.warmupSeconds = Integer.parseInt(nextArg(args, ++argIdx));
+                        break;
+                    case "-x":
+                        loadTest.serverOptions.setExecutorMode(
+                                WorkerExecutors.Mode.fromString(nextArg(args, ++argIdx)));
+                        break;
+                    default:
+                        showUsageAndExit(arg.equals("-h") ? 0 : 2);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                showUsageAndExit(2);
+            }
+        }
+        loadTest.run();
+        System.exit(0);
+    }
+
+    private static String nextArg(String[] args, int argIdx) {
+        if (argIdx >= args.length) {
+            showUsageAndExit(2);
+        }
+        return args[argIdx];
+    }
+
+    private static int positive(String arg) {
+        var value = Integer.parseInt(arg);
+        if (value <= 0) {
+            throw new IllegalArgumentException(arg);
+        }
+        return value;
+    }
+
+    private static void showUsageAndExit(int status) {
+        System.err.printf("Usage: %s [options]%n", LoadTest.class.getName());
+        System.err.println();
+        System.err.println("Starts the server on generated javadoc archives and reports the "
+                + "throughput and latencies of simulated page loads.");
+        System.err.println();
+        System.err.println("Options:");
+        System.err.println();
+        System.err.println(" -a <count>    javadoc jars in the generated repository (default is "
+                + DEFAULT_ARCHIVES + ")");
+        System.err.println(" -c <count>    concurrent clients (default is " + DEFAULT_CLIENTS
+                + ")");
+        System.err.println(" -d <seconds>  measured duration (default is "
+                + DEFAULT_DURATION_SECONDS + ")");
+        System.err.println(" -e <encoding> Accept-Encoding of the requests, gzip or identity "
+                + "(default is gzip)");
+        System.err.println(" -h            show this help and exit");
+        System.err.println(" -p <count>    class pages in every archive (default is "
+                + DEFAULT_PAGES + ")");
+        System.err.println(" -w <seconds>  warm-up before measuring (default is "
+                + DEFAULT_WARMUP_SECONDS + ")");
+        System.err.println();
+        System.err.println("Server options -q, -r, -s, -t and -x are the same as the server's.");
+        System.exit(status);
+    }
+
+    private void run() throws Exception {
+        var workDir = Files.createTempDirectory("javadoc-server-loadtest-");
+        try {
+            System.err.printf("Generating %d javadoc jars of %d pages in %s%n", archives, pages,
+                    workDir);
+            var random = new Random(42L);
+            var jdkDocs = workDir.resolve("jdk-docs.zip");
+            pageNames = BenchmarkArchives.writeJavadocArchive(jdkDocs, JDK_DOCS_PREFIX, pages,
+                    random);
+            var repository = workDir.resolve("m2");
+            for (var i = 0; i < archives; i++) {
+                var dir = Files.createDirectories(
+                        repository.resolve("org").resolve("example").resolve(artifactId(i))
+                                .resolve("1.0"));
+                BenchmarkArchives.writeJavadocArchive(
+                        dir.resolve(artifactId(i) + "-1.0-javadoc.jar"), "", pages, random);
+            }
+
+            var javadocServer = Preferences.userNodeForPackage(ServerMain.class);
+            javadocServer.node(ServerConfig.JDK_DOCS_NODE).put(JDK_KEY, jdkDocs.toString());
+            javadocServer.node(ServerConfig.M2_REPOS_NODE).put(ServerConfig.DEFAULT_M2_REPO,
+                    repository.toString());
+
+            var server = new ServerMain(serverOptions.setPort(0));
+            server.run();
+            baseUri = URI.create("http://localhost:" + server.getLocalPort());
+
+            var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10)).build();
+            System.err.printf("Warming up with %d clients for %d seconds%n", clients,
+                    warmupSeconds);
+            drive(client, warmupSeconds);
+            System.err.printf("Measuring with %d clients for %d seconds%n", clients,
+                    durationSeconds);
+            var recorders = drive(client, durationSeconds);
+            report(recorders);
+        } finally {
+            try {
+                BenchmarkArchives.delete(workDir);
+            } catch (IOException e) {
+                System.err.printf("Could not delete %s: %s%n", workDir, e);
+            }
+        }
+    }
+
+    private List<Recorder> drive(HttpClient client, int seconds) throws InterruptedException {
+        var deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        var recorders = new ArrayList<Recorder>();
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < clients; i++) {
+            var recorder = new Recorder();
+            recorders.add(recorder);
+            var t = new Thread(() -> loadPages(client, recorder, deadline), "load-test-" + i);
+            t.start();
+            threads.add(t);
+        }
+        for (var t : threads) {
+            t.join();
+        }
+        return recorders;
+    }
+
+    // Loads pages the way a browser does until the deadline, alternating between the JDK and
+    // Maven documentation.
+    private void loadPages(HttpClient client, Recorder recorder, long deadline) {
+        var random = ThreadLocalRandom.current();
+        for (var n = 0; System.nanoTime() < deadline; n++) {
+            var page = pageNames.get(random.nextInt(pageNames.size()));
+            String base;
+            RouteKind pageKind;
+            RouteKind assetKind;
+            RouteKind searchIndexKind;
+            if (n % 2 == 0) {
+                base = "/jdk/" + JDK_KEY + "/" + JDK_DOCS_PREFIX;
+                pageKind = RouteKind.JDK_PAGE;
+                assetKind = RouteKind.JDK_ASSET;
+                searchIndexKind = RouteKind.JDK_SEARCH_INDEX;
+            } else {
+                base = "/m2/org.example/" + artifactId(random.nextInt(archives)) + "/1.0/";
+                pageKind = RouteKind.M2_PAGE;
+                assetKind = RouteKind.M2_ASSET;
+                searchIndexKind = RouteKind.M2_SEARCH_INDEX;
+            }
+            get(client, recorder, pageKind, base + page);
+            for (var asset : PAGE_ASSETS) {
+                get(client, recorder, assetKind, base + asset);
+            }
+            if (n % 4 == 0) {
+                for (var asset : BenchmarkArchives.SEARCH_INDEXES) {
+                    get(client, recorder, searchIndexKind, base + asset);
+                }
+            }
+            if (n % 5 == 0) {
+                get(client, recorder, RouteKind.SEARCH,
+                        "/api/search?q=" + WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (n % 10 == 0) {
+                get(client, recorder, RouteKind.INDEX, "/");
+            }
+        }
+    }
+
+    private void get(HttpClient client, Recorder recorder, RouteKind kind, String path) {
+        var request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Accept-Encoding", encoding).GET().build();
+        var start = System.nanoTime();
+        try {
+            var response = client.send(request, BodyHandlers.discarding());
+            recorder.record(kind, System.nanoTime() - start, response.statusCode() != 200);
+        } catch (IOException e) {
+            recorder.record(kind, System.nanoTime() - start, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(List<Recorder> recorders) {
+        System.out.printf("%-20s %10s %8s %10s %9s %9s %9s %9s%n", "route", "requests", "errors",
+                "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        var all = new Recorder();
+        for (var kind : RouteKind.values()) {
+            var merged = new Recorder();
+            for (var recorder : recorders) {
+                merged.addAll(kind, recorder);
+                all.addAll(kind, recorder);
+            }
+            printRow(kind.label, merged.latencies(kind), merged.errors[kind.ordinal()]);
+        }
+        var latencies = new long[0];
+        var errors = 0L;
+        for (var kind : RouteKind.values()) {
+            var kindLatencies = all.latencies(kind);
+            var offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + kindLatencies.length);
+            System.arraycopy(kindLatencies, 0, latencies, offset, kindLatencies.length);
+            errors += all.errors[kind.ordinal()];
+        }
+        Arrays.sort(latencies);
+        printRow("all", latencies, errors);
+    }
+
+    private void printRow(String label, long[] sortedLatencies, long errors) {
+        if (sortedLatencies.length == 0) {
+            return;
+        }
+        System.out.printf("%-20s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f%n", label,
+                sortedLatencies.length, errors, sortedLatencies.length / (double) durationSeconds,
+                percentile(sortedLatencies, 0.50), percentile(sortedLatencies, 0.99),
+                percentile(sortedLatencies, 0.999), percentile(sortedLatencies, 1.0));
+    }
+
+    private static double percentile(long[] sortedLatencies, double p) {
+        var index = (int) Math.ceil(p * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static String artifactId(int i) {
+        return "artifact" + i;
+    }
+
+    /**
+     * Latencies and errors of one client, by route.
+     */
+    private static final class Recorder {
+
+        private final long[][] latencies = new long[RouteKind.values().length][1024];
+
+        private final int[] counts = new int[RouteKind.values().length];
+
+        private final long[] errors = new long[RouteKind.values().length];
+
+        void record(RouteKind kind, long nanos, boolean error) {
+            var k = kind.ordinal();
+            if (counts[k] == latencies[k].length) {
+                latencies[k] = Arrays.copyOf(latencies[k], counts[k] * 2);
+            }
+            latencies[k][counts[k]++] = nanos;
+            if (error) {
+                errors[k]++;
+            }
+        }
+
+        void addAll(RouteKind kind, Recorder other) {
+            var k = kind.ordinal();
+            for (var i = 0; i < other.counts[k]; i++) {
+                record(kind, other.latencies[k][i], false);
+            }
+            errors[k] += other.errors[k];
+        }
+
+        long[] latencies(RouteKind kind) {
+            var sorted = Arrays.copyOf(latencies[kind.ordinal()], counts[kind.ordinal()]);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Preferences kept in memory, so that the load test configures the server without touching
+     * the user preferences.
+     */
+    public static final class MemoryPreferencesFactory implements PreferencesFactory {
+
+        private static final Preferences USER_ROOT = new MemoryPreferences(null, "");
+
+        private static final Preferences SYSTEM_ROOT = new MemoryPreferences(null, "");
+
+        @Override
+        public Preferences userRoot() {
+            return USER_ROOT;
+        }
+
+        @Override
+        public Preferences systemRoot() {
+            return SYSTEM_ROOT;
+        }
+    }
+
+    private static final class MemoryPreferences extends AbstractPreferences {
+
+        private final Map<String, String> values = new HashMap<>();
+
+        private final Map<String, MemoryPreferences> children = new HashMap<>();
+
+        private MemoryPreferences(MemoryPreferences parent, String name) {
+            super(parent, name);
+        }
+
+        @Override
+        protected void putSpi(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        protected String getSpi(String key) {
+            return values.get(key);
+        }
+
+        @Override
+        protected void removeSpi(String key) {
+            values.remove(key);
+        }
+
+        @Override
+        protected void removeNodeSpi() {
+            ((MemoryPreferences) parent()).children.remove(name());
+        }
+
+        @Override
+        protected String[] keysSpi() {
+            return values.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        protected String[] childrenNamesSpi() {
+            return children.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        protected AbstractPreferences childSpi(String name) {
+            return children.computeIfAbsent(name, n -> new MemoryPreferences(this, n));
+        }
+
+        @Override
+        protected void syncSpi() {
+        }
+
+        @Override
+        protected void flushSpi() {
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.argherna.javadocserver;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses {@code /jdk} and {@code /m2} request paths into the archive and the entry name, with
+ * {@link Route} and with the split and join parsing the handlers used before it, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteBenchmark {
+
+    private final String jdkPath = "/jdk/17/docs/api/java.base/java/util/concurrent/"
+            + "ConcurrentHashMap.html";
+
+    private final String m2Path = "/m2/org.apache.commons/commons-lang3/3.12.0/org/apache/"
+            + "commons/lang3/StringUtils.html";
+
+    private final String repository = "/home/user/.m2/repository";
+
+    @Benchmark
+    public String jdkRoute() {
+        var route = Route.parse(jdkPath);
+        return route.keyEquals("17") ? route.getEntryName() : null;
+    }
+
+    @Benchmark
+    public String m2Route() {
+        var route = Route.parse(m2Path);
+        return route.isSnapshot() ? null : route.toArchivePath(repository) + route.getEntryName();
+    }
+
+    @Benchmark
+    public String jdkSplitAndJoin() {
+        var pathElements = Arrays.stream(jdkPath.split("/")).filter(pe -> !pe.isEmpty())
+                .collect(Collectors.toList());
+        var sj = new StringJoiner("/");
+        pathElements.subList(2, pathElements.size()).forEach(sj::add);
+        return pathElements.get(1).equals("17") ? sj.toString() : null;
+    }
+
+    @Benchmark
+    public String m2SplitAndJoin() {
+        var pathElements = Arrays.stream(m2Path.split("/")).filter(pe -> !pe.isEmpty())
+                .collect(Collectors.toList());
+        var archive = new StringJoiner("/").add(repository)
+                .add(pathElements.get(1).replace(".", "/")).add(pathElements.get(2))
+                .add(pathElements.get(3)).add(new StringJoiner("-").add(pathElements.get(2))
+                        .add(pathElements.get(3)).add("javadoc.jar").toString())
+                .toString();
+        var sj = new StringJoiner("/");
+        pathElements.subList(4, pathElements.size()).forEach(sj::add);
+        return pathElements.get(3).endsWith("-SNAPSHOT") ? null : archive + sj.toString();
+    }
+}
@@ -0,0 +1,490 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Access log written by a background thread, so that request threads never wait on the disk.
+ *
+ * <p>
+ * Request threads fill in preallocated records of a bounded ring buffer and go on. The writer
+ * thread drains the buffer in batches, formats the records and writes each batch with a single
+ * flush to the log file, which is rolled over when it grows past
+ * {@value #DEFAULT_MAX_BYTES} bytes. When the buffer is full, records are dropped and counted
+ * rather than blocking requests.
+ *
+ * <p>
+ * The log is only written if the {@value #SYS_PROP_FILE} system property names a file. These
+ * system properties configure it:
+ * <ul>
+ * <li>{@value #SYS_PROP_FORMAT}: {@code common}, {@code combined} (the default) or {@code json}
+ * for JSON lines.
+ * <li>{@value #SYS_PROP_BUFFER_SIZE}: number of records in the ring buffer, rounded up to a power
+ * of two (default is {@value #DEFAULT_BUFFER_SIZE}).
+ * <li>{@value #SYS_PROP_MAX_BYTES}: size a log file is rolled over at (default is
+ * {@value #DEFAULT_MAX_BYTES}).
+ * <li>{@value #SYS_PROP_MAX_FILES}: number of rolled over files kept (default is
+ * {@value #DEFAULT_MAX_FILES}).
+ * </ul>
+ */
+class AccessLog implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(AccessLog.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_FILE = "com.github.argherna.javadocserver.access.log.file";
+
+    static final String SYS_PROP_FORMAT = "com.github.argherna.javadocserver.access.log.format";
+
+    static final String SYS_PROP_BUFFER_SIZE =
+            "com.github.argherna.javadocserver.access.log.buffer.size";
+
+    static final String SYS_PROP_MAX_BYTES =
+            "com.github.argherna.javadocserver.access.log.max.bytes";
+
+    static final String SYS_PROP_MAX_FILES =
+            "com.github.argherna.javadocserver.access.log.max.files";
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    static final int DEFAULT_MAX_FILES = 5;
+
+    // How long the writer sleeps when the buffer is empty. Request threads don't wake it up, that
+    // would cost them a system call.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private static final DateTimeFormatter COMMON_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ROOT)
+                    .withZone(ZoneId.systemDefault());
+
+    /**
+     * Formats of the access log.
+     */
+    static enum Format {
+
+        /**
+         * The Common Log Format.
+         */
+        COMMON,
+
+        /**
+         * The Common Log Format followed by the referer and user agent.
+         */
+        COMBINED,
+
+        /**
+         * One JSON object per line, with the latency in microseconds.
+         */
+        JSON;
+
+        static Format fromString(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final Path file;
+
+    private final Format format;
+
+    private final long maxBytes;
+
+    private final int maxFiles;
+
+    private final Record[] records;
+
+    // Sequence of every slot: the position it can be claimed at when it equals the position, the
+    // position + 1 when it holds a record for that position.
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    // Writer thread state.
+    private long head;
+
+    private OutputStream out;
+
+    private long size;
+
+    private long reportedDropped;
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private long commonTimeSecond = Long.MIN_VALUE;
+
+    private String commonTime;
+
+    AccessLog(Path file, Format format, int bufferSize, long maxBytes, int maxFiles) {
+        this.file = file;
+        this.format = format;
+        this.maxBytes = Math.max(1L, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        var capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        records = new Record[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (var i = 0; i < capacity; i++) {
+            records[i] = new Record();
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+        writer = new Thread(this::writeRecords, "access-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LOGGER.log(INFO, "logger.info.accesslogopened", file,
+                format.name().toLowerCase(Locale.ROOT), capacity);
+    }
+
+    /**
+     * Return an access log configured by the system properties, or {@code null} if the
+     * {@value #SYS_PROP_FILE} system property isn't set.
+     *
+     * @return new access log or {@code null}.
+     */
+    static AccessLog fromSystemProperties() {
+        var fileName = Util.getSystemProperty(SYS_PROP_FILE);
+        if (fileName == null || fileName.isBlank()) {
+            return null;
+        }
+        var format = Format.COMBINED;
+        var formatName = Util.getSystemProperty(SYS_PROP_FORMAT);
+        if (formatName != null) {
+            try {
+                format = Format.fromString(formatName.strip());
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(WARNING, "logger.warning.badproperty", SYS_PROP_FORMAT, formatName);
+            }
+        }
+        return new AccessLog(Paths.get(fileName), format,
+                Util.getIntegerProperty(SYS_PROP_BUFFER_SIZE, DEFAULT_BUFFER_SIZE),
+                Util.getLongProperty(SYS_PROP_MAX_BYTES, DEFAULT_MAX_BYTES),
+                Util.getIntegerProperty(SYS_PROP_MAX_FILES, DEFAULT_MAX_FILES));
+    }
+
+    /**
+     * Log a finished exchange. Never blocks: if the buffer is full the record is dropped.
+     *
+     * @param exchange      the exchange.
+     * @param nanos         time taken to handle the exchange.
+     * @param responseBytes bytes of the response body.
+     */
+    void log(HttpExchange exchange, long nanos, long responseBytes) {
+        var position = tail.get();
+        while (true) {
+            var available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        var slot = (int) position & mask;
+        var record = records[slot];
+        record.timeMillis = System.currentTimeMillis();
+        record.nanos = nanos;
+        record.remoteAddress = exchange.getRemoteAddress();
+        record.method = exchange.getRequestMethod();
+        record.uri = exchange.getRequestURI();
+        record.protocol = exchange.getProtocol();
+        record.status = exchange.getResponseCode();
+        record.responseBytes = responseBytes;
+        if (format != Format.COMMON) {
+            record.referer = exchange.getRequestHeaders().getFirst("Referer");
+            record.userAgent = exchange.getRequestHeaders().getFirst("User-Agent");
+        }
+        sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Return the number of records dropped because the buffer was full.
+     *
+     * @return dropped records.
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Return the number of records written to the log.
+     *
+     * @return written records.
+     */
+    long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Write the records in the buffer and close the log file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecords() {
+        while (true) {
+            var stopping = closed;
+            var count = drain();
+            if (count == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.accesslogwrite", file, e);
+        }
+    }
+
+    // Writes every record published so far as one batch, returning how many there were.
+    private int drain() {
+        var count = 0;
+        try {
+            while (true) {
+                var slot = (int) head & mask;
+                if (sequences.get(slot) != head + 1) {
+                    break;
+                }
+                var record = records[slot];
+                format(record);
+                record.clear();
+                sequences.lazySet(slot, head + records.length);
+                head++;
+                count++;
+                write();
+            }
+            if (count > 0) {
+                out.flush();
+                written.add(count);
+                if (size >= maxBytes) {
+                    roll();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.accesslogwrite", file, e);
+            closeQuietly();
+        }
+        var droppedNow = dropped.sum();
+        if (droppedNow != reportedDropped) {
+            LOGGER.log(WARNING, "logger.warning.accesslogdrop", droppedNow - reportedDropped);
+            reportedDropped = droppedNow;
+        }
+        return count;
+    }
+
+    private void write() throws IOException {
+        if (out == null) {
+            var parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND), 64 * 1024);
+            size = Files.size(file);
+        }
+        var bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        size += bytes.length;
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        out = null;
+        for (var i = maxFiles - 1; i >= 1; i--) {
+            var from = rolled(i);
+            if (Files.exists(from)) {
+                Files.move(from, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int i) {
+        return file.resolveSibling(file.getFileName() + "." + i);
+    }
+
+    private void closeQuietly() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            // Already reported the failure that got us here.
+        }
+        out = null;
+    }
+
+    private void format(Record record) {
+        line.setLength(0);
+        if (format == Format.JSON) {
+            line.append("{\"time\":\"").append(Instant.ofEpochMilli(record.timeMillis))
+                    .append("\",\"client\":");
+            jsonString(record.remoteAddress == null ? null
+                    : record.remoteAddress.getAddress().getHostAddress());
+            line.append(",\"method\":");
+            jsonString(record.method);
+            line.append(",\"path\":");
+            jsonString(record.uri.getRawPath());
+            line.append(",\"query\":");
+            jsonString(record.uri.getRawQuery());
+            line.append(",\"protocol\":");
+            jsonString(record.protocol);
+            line.append(",\"status\":").append(record.status).append(",\"bytes\":")
+                    .append(record.responseBytes).append(",\"micros\":")
+                    .append(TimeUnit.NANOSECONDS.toMicros(record.nanos)).append(",\"referer\":");
+            jsonString(record.referer);
+            line.append(",\"userAgent\":");
+            jsonString(record.userAgent);
+            line.append("}\n");
+            return;
+        }
+
+        line.append(record.remoteAddress == null ? "-"
+                : record.remoteAddress.getAddress().getHostAddress()).append(" - - [");
+        var second = record.timeMillis / 1000L;
+        if (second != commonTimeSecond) {
+            commonTime = COMMON_TIME_FORMAT.format(Instant.ofEpochSecond(second));
+            commonTimeSecond = second;
+        }
+        line.append(commonTime).append("] \"").append(record.method).append(' ')
+                .append(record.uri.getRawPath());
+        if (record.uri.getRawQuery() != null) {
+            line.append('?').append(record.uri.getRawQuery());
+        }
+        line.append(' ').append(record.protocol).append("\" ").append(record.status).append(' ');
+        if (record.responseBytes == 0) {
+            line.append('-');
+        } else {
+            line.append(record.responseBytes);
+        }
+        if (format == Format.COMBINED) {
+            line.append(' ');
+            quoted(record.referer);
+            line.append(' ');
+            quoted(record.userAgent);
+        }
+        line.append('\n');
+    }
+
+    private void quoted(String value) {
+        if (value == null) {
+            line.append("\"-\"");
+            return;
+        }
+        line.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\');
+            }
+            line.append(c < ' ' ? ' ' : c);
+        }
+        line.append('"');
+    }
+
+    private void jsonString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < ' ') {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Slot of the ring buffer, filled in by a request thread and read by the writer.
+     */
+    private static final class Record {
+
+        private long timeMillis;
+
+        private long nanos;
+
+        private InetSocketAddress remoteAddress;
+
+        private String method;
+
+        private URI uri;
+
+        private String protocol;
+
+        private int status;
+
+        private long responseBytes;
+
+        private String referer;
+
+        private String userAgent;
+
+        // Lets go of the references so that the buffer doesn't keep requests reachable.
+        private void clear() {
+            remoteAddress = null;
+            method = null;
+            uri = null;
+            protocol = null;
+            referer = null;
+            userAgent = null;
+        }
+    }
+}
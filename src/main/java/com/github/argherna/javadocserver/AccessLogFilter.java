@@ -0,0 +1,35 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Hands every exchange of a context to the {@link AccessLog} once it's done.
+ */
+class AccessLogFilter extends Filter {
+
+    private final AccessLog accessLog;
+
+    AccessLogFilter(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    @Override
+    public String description() {
+        return "Writes the access log";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Filter.Chain chain) throws IOException {
+        var start = System.nanoTime();
+        var out = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(null, out);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            accessLog.log(exchange, System.nanoTime() - start, out.getCount());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.argherna.javadocserver;
+
+import static com.github.argherna.javadocserver.Util.loadResource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Admits requests to a context through the server-wide cap on requests in flight and the
+ * {@link Bulkhead} of the context, and sheds the rest with a fast 503 response.
+ *
+ * <p>
+ * Exchanges run with {@link #runShedding(Runnable)}, the ones a saturated executor hands back to
+ * the server's dispatcher thread, are shed without touching either.
+ */
+class AdmissionFilter extends Filter {
+
+    static final Integer HTTP_SERVICE_UNAVAILABLE = 503;
+
+    static final String SYS_PROP_RETRY_AFTER_SECONDS =
+            "com.github.argherna.javadocserver.retry.after.seconds";
+
+    static final long DEFAULT_RETRY_AFTER_SECONDS = 1L;
+
+    static final String SERVICE_UNAVAILABLE_PAGE = "com.github.argherna.javadocserver.html.503";
+
+    private static final String RETRY_AFTER = Long.toString(Math.max(0L,
+            Util.getLongProperty(SYS_PROP_RETRY_AFTER_SECONDS, DEFAULT_RETRY_AFTER_SECONDS)));
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private static final LongAdder SHED = new LongAdder();
+
+    private final Bulkhead inFlight;
+
+    private final Bulkhead bulkhead;
+
+    private final byte[] content;
+
+    private final String contentTypeHtml;
+
+    /**
+     * Create the filter.
+     *
+     * @param inFlight cap on the requests in flight of the server, or {@code null} for none.
+     * @param bulkhead bulkhead of the context, or {@code null} for none.
+     */
+    AdmissionFilter(Bulkhead inFlight, Bulkhead bulkhead) {
+        this.inFlight = inFlight;
+        this.bulkhead = bulkhead;
+        this.contentTypeHtml = JavadocServerFileNameMap.getInstance().getContentTypeFor(".html");
+        try {
+            content = loadResource(SERVICE_UNAVAILABLE_PAGE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Sheds requests over the limits of the server and the context with a 503 status";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Filter.Chain chain) throws IOException {
+        if (SHEDDING.get() != null) {
+            SHED.increment();
+            serviceUnavailable(exchange);
+            return;
+        }
+        var start = System.nanoTime();
+        if (inFlight != null && !inFlight.tryAcquire()) {
+            serviceUnavailable(exchange);
+            return;
+        }
+        try {
+            if (bulkhead != null && !bulkhead.tryAcquire()) {
+                serviceUnavailable(exchange);
+                return;
+            }
+            // Latency of the request itself, without the time it waited in the queue.
+            var admitted = System.nanoTime();
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                if (bulkhead != null) {
+                    bulkhead.release(System.nanoTime() - admitted);
+                }
+            }
+        } finally {
+            if (inFlight != null) {
+                inFlight.release(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Run a task on the calling thread, shedding every request it passes through this filter.
+     *
+     * @param task task to run, like an exchange the executor had no room for.
+     */
+    static void runShedding(Runnable task) {
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            task.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    /**
+     * Return the number of requests shed because they ran with {@link #runShedding(Runnable)}.
+     */
+    static long getShed() {
+        return SHED.sum();
+    }
+
+    /**
+     * Return the value of the Retry-After header of 503 responses, in seconds.
+     */
+    static String retryAfter() {
+        return RETRY_AFTER;
+    }
+
+    private void serviceUnavailable(HttpExchange exchange) throws IOException {
+        var responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.put("Content-Type", List.of(contentTypeHtml));
+        responseHeaders.set("Retry-After", RETRY_AFTER);
+        responseHeaders.set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(HTTP_SERVICE_UNAVAILABLE, content.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(content);
+        } finally {
+            exchange.close();
+        }
+    }
+}
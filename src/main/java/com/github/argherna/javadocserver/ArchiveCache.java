@@ -0,0 +1,369 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
+
+/**
+ * Bounded cache of open archive handles keyed by archive path.
+ *
+ * <p>
+ * Opening a {@link ZipFile} parses the whole central directory of the archive, which is expensive
+ * for large archives like the JDK documentation zip. This cache keeps the most recently used
+ * handles open and hands out reference-counted leases on them. A handle evicted from the cache is
+ * only closed after the last lease on it is released, so a response that is still streaming from
+ * an archive is never cut short. Concurrent requests for an archive that isn't open yet wait on a
+ * single open instead of each opening the archive themselves.
+ *
+ * <p>
+ * Handles open the archive lazily, as a {@link ZipFile}, a {@link FileChannel} or a
+ * {@link MappedArchive}, depending on how it's read, and each of those is opened once per handle.
+ *
+ * <p>
+ * Handles are checked against the size and last modified time of the archive on disk at most once
+ * per {@value #DEFAULT_REVALIDATE_MILLIS} milliseconds (configurable by setting the
+ * {@value #SYS_PROP_REVALIDATE_MILLIS} system property). A handle whose archive changed is evicted
+ * and the archive is reopened.
+ */
+class ArchiveCache implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(ArchiveCache.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_MAX_ARCHIVES =
+            "com.github.argherna.javadocserver.archive.cache.size";
+
+    static final String SYS_PROP_REVALIDATE_MILLIS =
+            "com.github.argherna.javadocserver.archive.cache.revalidate.millis";
+
+    static final int DEFAULT_MAX_ARCHIVES = 32;
+
+    static final long DEFAULT_REVALIDATE_MILLIS = 1000L;
+
+    private static final class InstanceHolder {
+        private static final ArchiveCache INSTANCE = new ArchiveCache(
+                Util.getIntegerProperty(SYS_PROP_MAX_ARCHIVES, DEFAULT_MAX_ARCHIVES),
+                Util.getLongProperty(SYS_PROP_REVALIDATE_MILLIS, DEFAULT_REVALIDATE_MILLIS));
+    }
+
+    private final Map<String, ArchiveHandle> handles;
+
+    private final Map<String, CompletableFuture<ArchiveHandle>> pendingOpens =
+            new ConcurrentHashMap<>();
+
+    private final int maxArchives;
+
+    private final long revalidateMillis;
+
+    private boolean closed;
+
+    ArchiveCache(int maxArchives, long revalidateMillis) {
+        this.maxArchives = Math.max(1, maxArchives);
+        this.revalidateMillis = Math.max(0L, revalidateMillis);
+        this.handles = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArchiveHandle> eldest) {
+                if (size() > ArchiveCache.this.maxArchives) {
+                    LOGGER.log(DEBUG, "logger.finer.archiveevicted", eldest.getKey());
+                    eldest.getValue().release();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static ArchiveCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Return a lease on an open handle for the named archive. The caller must close the returned
+     * handle when it's done reading from it.
+     *
+     * @param archiveName path to the archive.
+     * @return leased handle for the archive.
+     * @throws IOException if the archive can't be read.
+     */
+    ArchiveHandle acquire(String archiveName) throws IOException {
+        while (true) {
+            ArchiveHandle handle;
+            synchronized (handles) {
+                if (closed) {
+                    throw new IOException("Archive cache is closed");
+                }
+                handle = handles.get(archiveName);
+            }
+            if (handle != null) {
+                if (!isCurrent(handle)) {
+                    evict(archiveName, handle);
+                } else if (handle.retain()) {
+                    return handle;
+                }
+                continue;
+            }
+
+            var opening = new CompletableFuture<ArchiveHandle>();
+            var pending = pendingOpens.putIfAbsent(archiveName, opening);
+            if (pending == null) {
+                try {
+                    handle = open(archiveName);
+                    opening.complete(handle);
+                } catch (IOException | RuntimeException e) {
+                    opening.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    pendingOpens.remove(archiveName, opening);
+                }
+            } else {
+                handle = await(pending);
+            }
+            if (handle.retain()) {
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * Release every handle held by the cache. Handles with outstanding leases are closed when the
+     * last lease is released.
+     */
+    @Override
+    public void close() {
+        var released = new ArrayList<ArchiveHandle>();
+        synchronized (handles) {
+            closed = true;
+            released.addAll(handles.values());
+            handles.clear();
+        }
+        released.forEach(ArchiveHandle::release);
+    }
+
+    private ArchiveHandle open(String archiveName) throws IOException {
+        var path = Paths.get(archiveName);
+        var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        var handle = new ArchiveHandle(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+        handle.checkedAt = System.currentTimeMillis();
+        LOGGER.log(DEBUG, "logger.finer.archiveopened", archiveName);
+        ArchiveHandle replaced;
+        synchronized (handles) {
+            if (closed) {
+                handle.release();
+                throw new IOException("Archive cache is closed");
+            }
+            replaced = handles.put(archiveName, handle);
+        }
+        if (replaced != null) {
+            replaced.release();
+        }
+        return handle;
+    }
+
+    private boolean isCurrent(ArchiveHandle handle) {
+        var now = System.currentTimeMillis();
+        if (now - handle.checkedAt < revalidateMillis) {
+            return true;
+        }
+        try {
+            var attrs = Files.readAttributes(handle.path, BasicFileAttributes.class);
+            if (attrs.size() == handle.size
+                    && attrs.lastModifiedTime().toMillis() == handle.lastModified) {
+                handle.checkedAt = now;
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.archivestat", e);
+        }
+        LOGGER.log(DEBUG, "logger.finer.archivechanged", handle.path.toString());
+        return false;
+    }
+
+    private void evict(String archiveName, ArchiveHandle handle) {
+        boolean removed;
+        synchronized (handles) {
+            removed = handles.remove(archiveName, handle);
+        }
+        if (removed) {
+            handle.release();
+        }
+    }
+
+    private static ArchiveHandle await(CompletableFuture<ArchiveHandle> pending)
+            throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+
+    /**
+     * Reference-counted handle to an open archive.
+     *
+     * <p>
+     * The cache holds one reference for as long as the handle is cached, and every lease handed out
+     * by {@link ArchiveCache#acquire(String)} holds another. The archive is closed when the count
+     * drops to zero.
+     */
+    static class ArchiveHandle implements Closeable {
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private final Path path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final long identity;
+
+        private volatile long checkedAt;
+
+        private volatile ZipFile zipFile;
+
+        private volatile FileChannel channel;
+
+        private volatile MappedArchive mappedArchive;
+
+        ArchiveHandle(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.identity = HttpCaching.archiveIdentity(path.toString(), size, lastModified);
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Return a number that identifies this version of the archive, derived from its path, size
+         * and last modified time.
+         */
+        long getIdentity() {
+            return identity;
+        }
+
+        /**
+         * Return the archive opened as a {@link ZipFile}, opening it the first time it's asked for.
+         */
+        ZipFile getZipFile() throws IOException {
+            var z = zipFile;
+            if (z == null) {
+                synchronized (this) {
+                    z = zipFile;
+                    if (z == null) {
+                        zipFile = z = new ZipFile(path.toFile());
+                    }
+                }
+            }
+            return z;
+        }
+
+        /**
+         * Return a channel open on the archive for positional reads, opening it the first time
+         * it's asked for.
+         */
+        FileChannel getChannel() throws IOException {
+            var c = channel;
+            if (c == null) {
+                synchronized (this) {
+                    c = channel;
+                    if (c == null) {
+                        channel = c = FileChannel.open(path, StandardOpenOption.READ);
+                    }
+                }
+            }
+            return c;
+        }
+
+        /**
+         * Return the archive mapped into memory, mapping it the first time it's asked for.
+         */
+        MappedArchive getMappedArchive() throws IOException {
+            var m = mappedArchive;
+            if (m == null) {
+                synchronized (this) {
+                    m = mappedArchive;
+                    if (m == null) {
+                        mappedArchive = m = MappedArchive.map(getChannel());
+                    }
+                }
+            }
+            return m;
+        }
+
+        /**
+         * Releases the lease on this handle.
+         */
+        @Override
+        public void close() {
+            release();
+        }
+
+        private boolean retain() {
+            while (true) {
+                var count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // The mapping itself is released when the MappedArchive is garbage collected.
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                synchronized (this) {
+                    try {
+                        if (zipFile != null) {
+                            zipFile.close();
+                        }
+                        if (channel != null) {
+                            channel.close();
+                        }
+                    } catch (IOException e) {
+                        LOGGER.log(WARNING, "logger.warning.archiveclose", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.argherna.javadocserver;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link EntryIndex} and the {@link SearchIndex} up to date with every javadoc archive
+ * in the {@link ServerConfig} and the {@link MavenRepositories}.
+ *
+ * <p>
+ * Archives are indexed in the background when the indexer is started and every
+ * {@value #DEFAULT_REFRESH_SECONDS} seconds after that (configurable by setting the
+ * {@value #SYS_PROP_REFRESH_SECONDS} system property). Only archives that are new or changed are
+ * indexed again.
+ */
+class ArchiveIndexer implements Closeable {
+
+    static final String SYS_PROP_REFRESH_SECONDS =
+            "com.github.argherna.javadocserver.index.refresh.seconds";
+
+    static final long DEFAULT_REFRESH_SECONDS = 60L;
+
+    private final MavenRepositories repositories;
+
+    private final long refreshSeconds;
+
+    private final ScheduledExecutorService scheduler;
+
+    ArchiveIndexer(MavenRepositories repositories) {
+        this(repositories, Util.getLongProperty(SYS_PROP_REFRESH_SECONDS, DEFAULT_REFRESH_SECONDS));
+    }
+
+    ArchiveIndexer(MavenRepositories repositories, long refreshSeconds) {
+        this.repositories = repositories;
+        this.refreshSeconds = Math.max(1L, refreshSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "javadoc-server-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start indexing in the background.
+     */
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::refresh, 0L, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        SearchIndex.getInstance().close();
+    }
+
+    private void refresh() {
+        var sources = new ArrayList<SearchIndex.Source>();
+        for (var jdkDocs : ServerConfig.getInstance().reload().getJdkDocs().entrySet()) {
+            sources.add(new SearchIndex.Source(jdkDocs.getValue(), "/jdk/" + jdkDocs.getKey() + "/",
+                    "Java " + jdkDocs.getKey()));
+        }
+        for (var directoryName : repositories.getJavadocArtifactDirectoryNames()) {
+            var archiveName = repositories.getJavadocArchive(directoryName);
+            if (archiveName == null) {
+                continue;
+            }
+            var coordinates = MavenCatalog.toCoordinates(directoryName);
+            sources.add(new SearchIndex.Source(archiveName,
+                    "/m2/" + String.join("/", coordinates) + "/", String.join(":", coordinates)));
+        }
+
+        var archiveNames = new ArrayList<String>(sources.size());
+        for (var source : sources) {
+            archiveNames.add(source.getArchiveName());
+        }
+        EntryIndex.getInstance().indexAll(archiveNames);
+        SearchIndex.getInstance().update(sources);
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many requests of one kind run at once, so that a burst of expensive requests can't
+ * take every worker from the cheap ones.
+ *
+ * <p>
+ * A request over the limit waits in a short queue for at most {@value #DEFAULT_QUEUE_MILLIS} ms
+ * (configurable by setting the {@value #SYS_PROP_QUEUE_MILLIS} system property) and is turned
+ * away if the queue is full or it waits too long, so the caller can answer it right away with a
+ * 503 instead of letting latency grow without bound.
+ *
+ * <p>
+ * When the {@value #SYS_PROP_ADAPTIVE} system property is {@code true}, the limit adapts to the
+ * observed latency between 1 and the configured limit: it's cut by 10% when the smoothed latency
+ * grows past twice the lowest latency seen lately, and grows by about 1 every round of requests
+ * while the bulkhead is saturated and latency stays low.
+ *
+ * <p>
+ * The limit and queue size of a bulkhead named {@code <name>} are set with the
+ * {@code com.github.argherna.javadocserver.bulkhead.<name>.limit} and
+ * {@code com.github.argherna.javadocserver.bulkhead.<name>.queue} system properties. A limit of
+ * 0 turns the bulkhead off.
+ */
+class Bulkhead {
+
+    private static final System.Logger LOGGER = System.getLogger(Bulkhead.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_PREFIX = "com.github.argherna.javadocserver.bulkhead.";
+
+    static final String SYS_PROP_QUEUE_MILLIS = SYS_PROP_PREFIX + "queue.millis";
+
+    static final String SYS_PROP_ADAPTIVE = SYS_PROP_PREFIX + "adaptive";
+
+    static final long DEFAULT_QUEUE_MILLIS = 250L;
+
+    // Completions after which the lowest latency is measured again, so that a lasting change in
+    // latency becomes the new normal.
+    private static final int LATENCY_WINDOW = 1000;
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final double SMOOTHING = 0.1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permits = lock.newCondition();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final String name;
+
+    private final int maxLimit;
+
+    private final int queueSize;
+
+    private final long queueNanos;
+
+    private final boolean adaptive;
+
+    private int limit;
+
+    private int inFlight;
+
+    private int waiting;
+
+    // State of the adaptive limit.
+    private double estimatedLimit;
+
+    private long minLatency;
+
+    private long windowMinLatency = Long.MAX_VALUE;
+
+    private int windowSamples;
+
+    private double smoothedLatency;
+
+    private int sinceDecrease;
+
+    Bulkhead(String name, int limit, int queueSize, long queueMillis, boolean adaptive) {
+        this.name = name;
+        this.maxLimit = Math.max(1, limit);
+        this.limit = maxLimit;
+        this.estimatedLimit = maxLimit;
+        this.queueSize = Math.max(0, queueSize);
+        this.queueNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, queueMillis));
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Return the bulkhead configured by the system properties for the name.
+     *
+     * @param name             name of the bulkhead.
+     * @param defaultLimit     limit if none is configured.
+     * @param defaultQueueSize queue size if none is configured.
+     * @return the bulkhead, or {@code null} if its limit is 0.
+     */
+    static Bulkhead fromSystemProperties(String name, int defaultLimit, int defaultQueueSize) {
+        var limit = Util.getIntegerProperty(SYS_PROP_PREFIX + name + ".limit", defaultLimit);
+        if (limit <= 0) {
+            return null;
+        }
+        var queueSize = Util.getIntegerProperty(SYS_PROP_PREFIX + name + ".queue",
+                defaultQueueSize);
+        var bulkhead = new Bulkhead(name, limit, queueSize,
+                Util.getLongProperty(SYS_PROP_QUEUE_MILLIS, DEFAULT_QUEUE_MILLIS),
+                Boolean.parseBoolean(Util.getSystemProperty(SYS_PROP_ADAPTIVE)));
+        LOGGER.log(DEBUG, "logger.finer.bulkhead", name, bulkhead.maxLimit, bulkhead.queueSize);
+        return bulkhead;
+    }
+
+    /**
+     * Take a place in the bulkhead, waiting in the queue if it's full.
+     *
+     * @return {@code true} if the request can run, it must call {@link #release(long)} when it's
+     *         done. {@code false} if it must be turned away.
+     */
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < limit) {
+                inFlight++;
+                return true;
+            } else if (waiting >= queueSize || queueNanos == 0L) {
+                rejected.increment();
+                return false;
+            }
+            waiting++;
+            try {
+                var nanos = queueNanos;
+                while (inFlight >= limit) {
+                    if (nanos <= 0L) {
+                        rejected.increment();
+                        return false;
+                    }
+                    nanos = permits.awaitNanos(nanos);
+                }
+                inFlight++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.increment();
+                return false;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give up a place taken with {@link #tryAcquire()}.
+     *
+     * @param latencyNanos time the request took.
+     */
+    void release(long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            var previousLimit = limit;
+            if (adaptive) {
+                adapt(latencyNanos);
+            }
+            if (limit > previousLimit) {
+                permits.signalAll();
+            } else if (waiting > 0) {
+                permits.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Return the current limit, lower than the configured one when it adapted to latency.
+     */
+    int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Return the number of requests turned away.
+     */
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    // Additive increase while latency is low and the bulkhead is busy, multiplicative decrease at
+    // most once a round when it's high. Called with the lock held.
+    private void adapt(long latencyNanos) {
+        windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+        if (minLatency == 0L || ++windowSamples >= LATENCY_WINDOW) {
+            minLatency = Math.max(1L, windowMinLatency);
+            windowMinLatency = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        smoothedLatency = smoothedLatency == 0.0 ? latencyNanos
+                : smoothedLatency + SMOOTHING * (latencyNanos - smoothedLatency);
+        sinceDecrease++;
+        if (smoothedLatency > LATENCY_TOLERANCE * minLatency) {
+            if (sinceDecrease >= limit) {
+                estimatedLimit = Math.max(1.0, estimatedLimit * 0.9);
+                sinceDecrease = 0;
+            }
+        } else if (inFlight + 1 >= limit || waiting > 0) {
+            estimatedLimit = Math.min(maxLimit, estimatedLimit + 1.0 / estimatedLimit);
+        }
+        limit = Math.max(1, (int) estimatedLimit);
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.argherna.javadocserver;
+
+/**
+ * Byte ranges of a {@code Range} request header, resolved against the length of the
+ * representation as described in RFC 7233.
+ *
+ * <p>
+ * Ranges are sorted and overlapping or adjacent ranges are merged, so that they can be written in
+ * one pass over the representation.
+ */
+final class ByteRanges {
+
+    /**
+     * Most ranges a request may ask for, requests asking for more get the whole representation.
+     */
+    static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final int size;
+
+    private ByteRanges(long[] starts, long[] ends, int size) {
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+    }
+
+    /**
+     * Parse a {@code Range} header.
+     *
+     * @param header value of the header.
+     * @param length length of the representation.
+     * @return the satisfiable ranges, none if no range can be satisfied, or {@code null} if the
+     *         header should be ignored because it's malformed, isn't in bytes or asks for too many
+     *         ranges.
+     */
+    static ByteRanges parse(String header, long length) {
+        var value = header.strip();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        var starts = new long[MAX_RANGES];
+        var ends = new long[MAX_RANGES];
+        var specs = 0;
+        var size = 0;
+        var from = BYTES_UNIT.length();
+        while (from <= value.length()) {
+            var to = value.indexOf(',', from);
+            if (to < 0) {
+                to = value.length();
+            }
+            var spec = value.substring(from, to).strip();
+            from = to + 1;
+            if (spec.isEmpty()) {
+                continue;
+            }
+            if (++specs > MAX_RANGES) {
+                return null;
+            }
+            var dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long start;
+            long end;
+            try {
+                if (dash == 0) {
+                    var suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    start = Math.max(0L, length - suffixLength);
+                    end = length - 1;
+                    if (suffixLength == 0 || length == 0) {
+                        continue;
+                    }
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = dash == spec.length() - 1 ? Long.MAX_VALUE
+                            : Long.parseLong(spec.substring(dash + 1));
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    if (start >= length) {
+                        continue;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+        if (specs == 0) {
+            return null;
+        }
+        return new ByteRanges(starts, ends, merge(starts, ends, size));
+    }
+
+    // Sorts the ranges by their start and merges the ones that overlap or touch, returning how
+    // many are left.
+    private static int merge(long[] starts, long[] ends, int size) {
+        for (var i = 1; i < size; i++) {
+            var start = starts[i];
+            var end = ends[i];
+            var j = i - 1;
+            for (; j >= 0 && starts[j] > start; j--) {
+                starts[j + 1] = starts[j];
+                ends[j + 1] = ends[j];
+            }
+            starts[j + 1] = start;
+            ends[j + 1] = end;
+        }
+        var merged = 0;
+        for (var i = 0; i < size; i++) {
+            if (merged > 0 && starts[i] <= ends[merged - 1] + 1) {
+                ends[merged - 1] = Math.max(ends[merged - 1], ends[i]);
+            } else {
+                starts[merged] = starts[i];
+                ends[merged] = ends[i];
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Return the number of ranges.
+     *
+     * @return number of ranges, {@code 0} if none can be satisfied.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Return the first byte of a range.
+     *
+     * @param i index of the range.
+     * @return offset of the first byte.
+     */
+    long getStart(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Return the last byte of a range.
+     *
+     * @param i index of the range.
+     * @return offset of the last byte, inclusive.
+     */
+    long getEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Return the number of bytes in a range.
+     *
+     * @param i index of the range.
+     * @return number of bytes.
+     */
+    long getLength(int i) {
+        return ends[i] - starts[i] + 1;
+    }
+
+    /**
+     * Return the {@code Content-Range} header value of a range.
+     *
+     * @param i      index of the range.
+     * @param length length of the representation.
+     * @return header value, like {@code bytes 0-499/1234}.
+     */
+    String getContentRange(int i, long length) {
+        return "bytes " + starts[i] + '-' + ends[i] + '/' + length;
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.argherna.javadocserver;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written through it, for filters that wrap the response body.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * Return the number of bytes written so far.
+     *
+     * @return bytes written.
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,605 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of the entries of every registered archive, held in primitive arrays.
+ *
+ * <p>
+ * Each entry is keyed by a 64-bit fingerprint of its name and the number the index gave its
+ * archive, and is stored in an open-addressed table of parallel {@code long[]}, {@code int[]} and
+ * {@code short[]} arrays with its compression method, CRC-32, sizes, last modification time and
+ * local header offset. No {@link java.util.zip.ZipEntry} or name is kept, so an entry costs a few
+ * dozen bytes however many archives are indexed, and a request can be answered with a 404, or with
+ * the headers of a 304, without opening its archive.
+ *
+ * <p>
+ * Two names with the same fingerprint in the same archive would be confused, which for 64-bit
+ * fingerprints is about as likely as a disk returning the wrong block.
+ *
+ * <p>
+ * Archives are indexed the first time they're looked up or when {@link #indexAll(Collection)} is
+ * called for them, and are checked against their size and last modified time on disk at most once
+ * per {@value #DEFAULT_REVALIDATE_MILLIS} milliseconds (configurable by setting the
+ * {@value #SYS_PROP_REVALIDATE_MILLIS} system property). An archive that changed is indexed again.
+ * Entries of replaced or deleted archives are dropped when the table is next rebuilt.
+ */
+class EntryIndex {
+
+    private static final System.Logger LOGGER = System.getLogger(EntryIndex.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_REVALIDATE_MILLIS =
+            "com.github.argherna.javadocserver.entry.index.revalidate.millis";
+
+    static final long DEFAULT_REVALIDATE_MILLIS = 1000L;
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private static final int NO_TIME = Integer.MIN_VALUE;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final class InstanceHolder {
+        private static final EntryIndex INSTANCE = new EntryIndex(
+                Util.getLongProperty(SYS_PROP_REVALIDATE_MILLIS, DEFAULT_REVALIDATE_MILLIS));
+    }
+
+    private final Map<String, ArchiveRecord> archives = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Indexing in progress by archive, so an archive that's requested by many threads at once is
+    // read once while other archives are indexed in parallel.
+    private final Map<String, CompletableFuture<ArchiveRecord>> pendingIndexes =
+            new ConcurrentHashMap<>();
+
+    private final long revalidateMillis;
+
+    private final BitSet liveArchives = new BitSet();
+
+    private final AtomicInteger nextArchiveNumber = new AtomicInteger(1);
+
+    // A slot is free when its archive number is 0.
+    private int[] archiveNumbers;
+
+    private long[] fingerprints;
+
+    private short[] methods;
+
+    private int[] crcs;
+
+    private long[] compressedSizes;
+
+    private long[] sizes;
+
+    private long[] localHeaderOffsets;
+
+    // In seconds, to halve the cost of the column. Zip times have a resolution of 1 or 2 seconds.
+    private int[] times;
+
+    private int used;
+
+    private int live;
+
+    EntryIndex(long revalidateMillis) {
+        this.revalidateMillis = Math.max(0L, revalidateMillis);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    static EntryIndex getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Return the named entry of the named archive, indexing the archive first if it isn't indexed
+     * or changed on disk.
+     *
+     * @param archiveName path to the archive.
+     * @param entryName   entry name.
+     * @return entry or {@code null} if the archive has no such entry.
+     * @throws NoSuchFileException if the archive doesn't exist.
+     * @throws IOException         if the archive can't be read.
+     */
+    Entry find(String archiveName, String entryName) throws IOException {
+        var path = Paths.get(archiveName);
+        var key = path.toString();
+        while (true) {
+            var record = archives.get(key);
+            if (record == null || !isCurrent(key, record)) {
+                record = index(path, key, null);
+            }
+            var entry = lookup(record, entryName);
+            // A miss is only final if the archive wasn't indexed again in the meantime.
+            if (entry != null || archives.get(key) == record) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Return the named entry of the archive open on the given handle, indexing the archive again if
+     * the index holds a different version of it.
+     *
+     * @param archive   handle to the archive.
+     * @param entryName entry name.
+     * @return entry or {@code null} if the archive has no such entry.
+     * @throws IOException if the archive can't be read.
+     */
+    Entry find(ArchiveCache.ArchiveHandle archive, String entryName) throws IOException {
+        var key = archive.getPath().toString();
+        var record = archives.get(key);
+        if (record == null || record.identity != archive.getIdentity()) {
+            record = index(archive.getPath(), key, archive);
+        }
+        return lookup(record, entryName);
+    }
+
+    /**
+     * Index every archive in the collection that isn't indexed yet or changed. Archives that can't
+     * be read are logged and skipped.
+     *
+     * @param archiveNames paths to the archives.
+     */
+    void indexAll(Collection<String> archiveNames) {
+        var start = System.nanoTime();
+        var indexed = 0;
+        for (var archiveName : archiveNames) {
+            var path = Paths.get(archiveName);
+            var key = path.toString();
+            var record = archives.get(key);
+            try {
+                if (record == null || !isCurrent(key, record)) {
+                    index(path, key, null);
+                    indexed++;
+                }
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "logger.warning.entryindexfail", archiveName);
+            }
+        }
+        if (indexed > 0) {
+            LOGGER.log(INFO, "logger.info.entryindexbuilt", getEntryCount(), archives.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Return the number of entries of current archive versions in the index.
+     */
+    int getEntryCount() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isCurrent(String key, ArchiveRecord record) throws IOException {
+        var now = System.currentTimeMillis();
+        if (now - record.checkedAt < revalidateMillis) {
+            return true;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(Paths.get(key), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            remove(key, record);
+            throw e;
+        }
+        if (record.identity == HttpCaching.archiveIdentity(key, attrs.size(),
+                attrs.lastModifiedTime().toMillis())) {
+            record.checkedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    // Indexes the archive unless another thread is indexing it already, in which case its record
+    // is used if it's for the version of the handle, if there is one.
+    private ArchiveRecord index(Path path, String key, ArchiveCache.ArchiveHandle archive)
+            throws IOException {
+        while (true) {
+            var indexing = new CompletableFuture<ArchiveRecord>();
+            var pending = pendingIndexes.putIfAbsent(key, indexing);
+            if (pending != null) {
+                var record = await(pending);
+                if (archive == null || record.identity == archive.getIdentity()) {
+                    return record;
+                }
+                continue;
+            }
+            try {
+                var record = read(path, key, archive);
+                indexing.complete(record);
+                return record;
+            } catch (IOException | RuntimeException e) {
+                indexing.completeExceptionally(e);
+                throw e;
+            } finally {
+                pendingIndexes.remove(key, indexing);
+            }
+        }
+    }
+
+    // Reads the central directory of the archive, from the handle's channel if there is one, and
+    // adds its entries under a new archive number. Only the merge into the table takes the lock.
+    private ArchiveRecord read(Path path, String key, ArchiveCache.ArchiveHandle archive)
+            throws IOException {
+        long identity;
+        if (archive != null) {
+            identity = archive.getIdentity();
+        } else {
+            var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            identity = HttpCaching.archiveIdentity(key, attrs.size(),
+                    attrs.lastModifiedTime().toMillis());
+        }
+        var current = archives.get(key);
+        if (current != null && current.identity == identity) {
+            current.checkedAt = System.currentTimeMillis();
+            return current;
+        }
+
+        var record = new ArchiveRecord(identity, nextArchiveNumber.getAndIncrement());
+        var batch = new Batch(record.number);
+        if (archive != null) {
+            ZipDirectory.read(archive.getChannel(), batch);
+        } else {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ZipDirectory.read(channel, batch);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (current != null) {
+                retire(current);
+            }
+            liveArchives.set(record.number);
+            batch.addTo(this);
+            record.entryCount = batch.count;
+            live += batch.count;
+            archives.put(key, record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOGGER.log(DEBUG, "logger.finer.archiveindexed", key, batch.count);
+        return record;
+    }
+
+    private static ArchiveRecord await(CompletableFuture<ArchiveRecord> pending)
+            throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof NoSuchFileException) {
+                var missing = new NoSuchFileException(((NoSuchFileException) cause).getFile());
+                missing.initCause(cause);
+                throw missing;
+            } else if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+
+    private void remove(String key, ArchiveRecord record) {
+        if (archives.remove(key, record)) {
+            lock.writeLock().lock();
+            try {
+                retire(record);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Called with the write lock held.
+    private void retire(ArchiveRecord record) {
+        if (liveArchives.get(record.number)) {
+            liveArchives.clear(record.number);
+            live -= record.entryCount;
+        }
+    }
+
+    private Entry lookup(ArchiveRecord record, String entryName) {
+        var fingerprint = fingerprint(record.number, entryName);
+        lock.readLock().lock();
+        try {
+            var mask = archiveNumbers.length - 1;
+            for (var i = (int) fingerprint & mask;; i = (i + 1) & mask) {
+                var number = archiveNumbers[i];
+                if (number == 0) {
+                    return null;
+                }
+                if (number == record.number && fingerprints[i] == fingerprint) {
+                    var time = times[i] == NO_TIME ? -1L : times[i] * 1000L;
+                    return new Entry(entryName, record.identity, methods[i],
+                            Integer.toUnsignedLong(crcs[i]), compressedSizes[i], sizes[i], time,
+                            localHeaderOffsets[i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called with the write lock held.
+    private void put(int archiveNumber, long fingerprint, int method, int crc, long compressedSize,
+            long size, long localHeaderOffset, long time) {
+        var mask = archiveNumbers.length - 1;
+        var i = (int) fingerprint & mask;
+        while (archiveNumbers[i] != 0) {
+            if (archiveNumbers[i] == archiveNumber && fingerprints[i] == fingerprint) {
+                // Duplicate name in the archive, ZipFile would also find the first one.
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        archiveNumbers[i] = archiveNumber;
+        fingerprints[i] = fingerprint;
+        methods[i] = (short) method;
+        crcs[i] = crc;
+        compressedSizes[i] = compressedSize;
+        sizes[i] = size;
+        localHeaderOffsets[i] = localHeaderOffset;
+        times[i] = time < 0 ? NO_TIME : (int) Math.min(Integer.MAX_VALUE, time / 1000L);
+        used++;
+    }
+
+    // Called with the write lock held. Grows the table, or rebuilds it without the entries of
+    // retired archives, so it's never more than three quarters full.
+    private void ensureCapacity(int additional) {
+        var capacity = archiveNumbers.length;
+        if ((long) used + additional <= capacity * 3L / 4L) {
+            return;
+        }
+        var needed = (long) live + additional;
+        var newCapacity = INITIAL_CAPACITY;
+        while (newCapacity * 3L / 4L < needed * 2L && newCapacity < (1 << 30)) {
+            newCapacity <<= 1;
+        }
+        var oldArchiveNumbers = archiveNumbers;
+        var oldFingerprints = fingerprints;
+        var oldMethods = methods;
+        var oldCrcs = crcs;
+        var oldCompressedSizes = compressedSizes;
+        var oldSizes = sizes;
+        var oldLocalHeaderOffsets = localHeaderOffsets;
+        var oldTimes = times;
+        allocate(newCapacity);
+        for (var i = 0; i < oldArchiveNumbers.length; i++) {
+            var number = oldArchiveNumbers[i];
+            if (number != 0 && liveArchives.get(number)) {
+                var mask = newCapacity - 1;
+                var j = (int) oldFingerprints[i] & mask;
+                while (archiveNumbers[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                archiveNumbers[j] = number;
+                fingerprints[j] = oldFingerprints[i];
+                methods[j] = oldMethods[i];
+                crcs[j] = oldCrcs[i];
+                compressedSizes[j] = oldCompressedSizes[i];
+                sizes[j] = oldSizes[i];
+                localHeaderOffsets[j] = oldLocalHeaderOffsets[i];
+                times[j] = oldTimes[i];
+                used++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        archiveNumbers = new int[capacity];
+        fingerprints = new long[capacity];
+        methods = new short[capacity];
+        crcs = new int[capacity];
+        compressedSizes = new long[capacity];
+        sizes = new long[capacity];
+        localHeaderOffsets = new long[capacity];
+        times = new int[capacity];
+        used = 0;
+    }
+
+    // Mixes the archive number into the FNV-1a hash of the UTF-8 encoded name, so entries of
+    // different archives spread over the table.
+    private static long fingerprint(int archiveNumber, String name) {
+        var hash = FNV_OFFSET_BASIS;
+        var length = name.length();
+        for (var i = 0; i < length; i++) {
+            var c = name.charAt(i);
+            if (c >= 0x80) {
+                var bytes = name.getBytes(StandardCharsets.UTF_8);
+                return finish(archiveNumber, fnv(bytes, i, bytes.length, hash));
+            }
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        return finish(archiveNumber, hash);
+    }
+
+    private static long fingerprint(int archiveNumber, ByteBuffer buffer, int offset,
+            int length) {
+        var hash = FNV_OFFSET_BASIS;
+        for (var i = offset; i < offset + length; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return finish(archiveNumber, hash);
+    }
+
+    // Continues hashing from the first non-ASCII character. Characters before it encode to the
+    // same bytes in UTF-8, so they were hashed already.
+    private static long fnv(byte[] bytes, int from, int to, long hash) {
+        for (var i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long finish(int archiveNumber, long hash) {
+        var h = hash ^ (archiveNumber * 0x9e3779b97f4a7c15L);
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static final class ArchiveRecord {
+
+        private final long identity;
+
+        private final int number;
+
+        private int entryCount;
+
+        private volatile long checkedAt = System.currentTimeMillis();
+
+        private ArchiveRecord(long identity, int number) {
+            this.identity = identity;
+            this.number = number;
+        }
+    }
+
+    // Collects the entries of an archive while its central directory is read, so the table is only
+    // locked for the time it takes to copy them in.
+    private static final class Batch implements ZipDirectory.EntryVisitor {
+
+        private final int archiveNumber;
+
+        private long[] columns = new long[16 * 7];
+
+        private int count;
+
+        private Batch(int archiveNumber) {
+            this.archiveNumber = archiveNumber;
+        }
+
+        @Override
+        public void visit(ByteBuffer central, int nameOffset, int nameLength, int method, int crc,
+                long compressedSize, long size, long localHeaderOffset, long time) {
+            if ((count + 1) * 7 > columns.length) {
+                columns = Arrays.copyOf(columns, columns.length * 2);
+            }
+            var base = count * 7;
+            columns[base] = fingerprint(archiveNumber, central, nameOffset, nameLength);
+            columns[base + 1] = method;
+            columns[base + 2] = crc;
+            columns[base + 3] = compressedSize;
+            columns[base + 4] = size;
+            columns[base + 5] = localHeaderOffset;
+            columns[base + 6] = time;
+            count++;
+        }
+
+        private void addTo(EntryIndex index) {
+            index.ensureCapacity(count);
+            for (var i = 0; i < count; i++) {
+                var base = i * 7;
+                index.put(archiveNumber, columns[base], (int) columns[base + 1],
+                        (int) columns[base + 2], columns[base + 3], columns[base + 4],
+                        columns[base + 5], columns[base + 6]);
+            }
+        }
+    }
+
+    /**
+     * Attributes of an archive entry, as found in the index.
+     */
+    static final class Entry {
+
+        private final String name;
+
+        private final long archiveIdentity;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long time;
+
+        private final long localHeaderOffset;
+
+        Entry(String name, long archiveIdentity, int method, long crc, long compressedSize,
+                long size, long time, long localHeaderOffset) {
+            this.name = name;
+            this.archiveIdentity = archiveIdentity;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.time = time;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Return the identity of the version of the archive the entry was indexed from.
+         */
+        long getArchiveIdentity() {
+            return archiveIdentity;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * Return the last modification time of the entry in milliseconds, or -1 if it's unknown.
+         */
+        long getTime() {
+            return time;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+}
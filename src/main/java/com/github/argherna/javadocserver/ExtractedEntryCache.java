@@ -0,0 +1,279 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of archive entries extracted to files on a local disk, for archives on slow
+ * or networked storage where every read from the archive is a round trip.
+ *
+ * <p>
+ * An entry is extracted the first time it's requested, in the form it's served in (as is, or
+ * gzip-encoded for clients that accept gzip), and from then on is served from its file without
+ * opening the archive. Files are content addressed by {@code <archive>/<identity>/<entry>}, the
+ * 64-bit fingerprints of the archive path, of the identity of the archive, which is derived from
+ * its path, size and last modified time, and of the entry name. An archive that changes on disk
+ * gets another identity, so its old files are never served again; they are deleted when the first
+ * entry of the new version is extracted. Files are evicted least recently used first to keep the
+ * cache within its size, and those found in the directory at startup are kept for reuse.
+ *
+ * <p>
+ * The cache is off unless the {@value #SYS_PROP_DIR} system property names its directory. Its size
+ * defaults to {@value #DEFAULT_MAX_BYTES} bytes (configurable by setting the
+ * {@value #SYS_PROP_MAX_BYTES} system property), and entries larger than a quarter of it aren't
+ * cached.
+ */
+class ExtractedEntryCache {
+
+    private static final System.Logger LOGGER = System.getLogger(
+            ExtractedEntryCache.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_DIR = "com.github.argherna.javadocserver.extract.cache.dir";
+
+    static final String SYS_PROP_MAX_BYTES =
+            "com.github.argherna.javadocserver.extract.cache.bytes";
+
+    static final long DEFAULT_MAX_BYTES = 1024L * 1024L * 1024L;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final class InstanceHolder {
+        private static final ExtractedEntryCache INSTANCE = new ExtractedEntryCache(directory(),
+                Util.getLongProperty(SYS_PROP_MAX_BYTES, DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Writes the content of an entry.
+     */
+    @FunctionalInterface
+    static interface Extractor {
+
+        /**
+         * Write the content of the entry.
+         *
+         * @param out stream to write to.
+         * @throws IOException if an I/O error occurs.
+         */
+        void extract(OutputStream out) throws IOException;
+    }
+
+    // Sizes of the files in the cache, least recently used first.
+    private final LinkedHashMap<Path, Long> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Identity of the version of every archive entries were last extracted from in this run.
+    private final Map<String, Long> identities = new HashMap<>();
+
+    private final Path dir;
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    ExtractedEntryCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = dir == null ? 0L : Math.max(0L, maxBytes);
+        if (this.maxBytes > 0L) {
+            load();
+        }
+    }
+
+    static ExtractedEntryCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static Path directory() {
+        var name = Util.getSystemProperty(SYS_PROP_DIR);
+        return name == null || name.isBlank() ? null : Paths.get(name);
+    }
+
+    /**
+     * Return {@code true} if an entry of the given size can be cached.
+     *
+     * @param size size of the entry as it's served.
+     * @return {@code true} if the entry fits.
+     */
+    boolean fits(long size) {
+        return maxBytes > 0L && size <= maxBytes / 4;
+    }
+
+    /**
+     * Return the file the entry was extracted to, or {@code null} if it isn't cached.
+     *
+     * @param archiveName path to the archive.
+     * @param key         the entry.
+     * @return path to the file or {@code null}. The file may be evicted before it's opened.
+     */
+    Path get(String archiveName, HotEntryCache.Key key) {
+        if (maxBytes == 0L) {
+            return null;
+        }
+        var file = fileOf(archiveName, key);
+        synchronized (this) {
+            return files.get(file) == null ? null : file;
+        }
+    }
+
+    /**
+     * Extract an entry to the cache, replacing the files of older versions of its archive.
+     *
+     * @param archiveName path to the archive.
+     * @param key         the entry.
+     * @param extractor   writes the content of the entry.
+     * @return path to the file or {@code null} if it couldn't be written.
+     */
+    Path extract(String archiveName, HotEntryCache.Key key, Extractor extractor) {
+        var file = fileOf(archiveName, key);
+        long size;
+        try {
+            Files.createDirectories(file.getParent());
+            var temp = Files.createTempFile(file.getParent(), file.getFileName().toString(),
+                    TEMP_SUFFIX);
+            try {
+                try (var out = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                    extractor.extract(out);
+                }
+                size = Files.size(temp);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.extractfail", key.getEntryName(), archiveName, e);
+            return null;
+        }
+
+        var evicted = new ArrayList<Path>();
+        synchronized (this) {
+            var previous = identities.put(archiveName, key.getArchiveIdentity());
+            if (previous == null || previous != key.getArchiveIdentity()) {
+                // Drops the files of other versions of the archive, from this run or earlier ones.
+                var identityDir = file.getParent();
+                var archiveDir = identityDir.getParent();
+                var staleDirs = new HashSet<Path>();
+                var stale = files.entrySet().iterator();
+                while (stale.hasNext()) {
+                    var staleFile = stale.next();
+                    var staleDir = staleFile.getKey().getParent();
+                    if (staleDir.getParent().equals(archiveDir) && !staleDir.equals(identityDir)) {
+                        bytes -= staleFile.getValue();
+                        evicted.add(staleFile.getKey());
+                        staleDirs.add(staleDir);
+                        stale.remove();
+                    }
+                }
+                evicted.addAll(staleDirs);
+            }
+            var replaced = files.put(file, size);
+            bytes += size - (replaced == null ? 0L : replaced);
+            var it = files.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                var lru = it.next();
+                if (lru.getKey().equals(file)) {
+                    continue;
+                }
+                bytes -= lru.getValue();
+                evicted.add(lru.getKey());
+                it.remove();
+            }
+        }
+        delete(evicted);
+        return file;
+    }
+
+    private Path fileOf(String archiveName, HotEntryCache.Key key) {
+        var entry = hex(fingerprint(key.getEntryName()));
+        return dir.resolve(hex(fingerprint(archiveName))).resolve(hex(key.getArchiveIdentity()))
+                .resolve(key.acceptsGzip() ? entry + GZIP_SUFFIX : entry);
+    }
+
+    private static long fingerprint(String name) {
+        var fingerprint = FNV_OFFSET_BASIS;
+        for (var i = 0; i < name.length(); i++) {
+            fingerprint = (fingerprint ^ name.charAt(i)) * FNV_PRIME;
+        }
+        return fingerprint;
+    }
+
+    private static String hex(long value) {
+        var hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    // Deletes evicted files, and directories once they're empty.
+    private void delete(List<Path> evicted) {
+        for (var path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.log(DEBUG, "logger.finer.extractdelete", path.toString());
+            }
+        }
+    }
+
+    // Adds the files of earlier runs in the order they were written, dropping partial ones.
+    private void load() {
+        var found = new ArrayList<Map.Entry<Path, BasicFileAttributes>>();
+        var partial = new ArrayList<Path>();
+        try {
+            Files.createDirectories(dir);
+            try (var paths = Files.find(dir, 3, (path, attrs) -> attrs.isRegularFile())) {
+                for (var path : paths.collect(Collectors.toList())) {
+                    if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                        partial.add(path);
+                    } else {
+                        found.add(Map.entry(path,
+                                Files.readAttributes(path, BasicFileAttributes.class)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.extractload", dir.toString(), e);
+        }
+        delete(partial);
+        found.sort(Comparator.comparing(f -> f.getValue().lastModifiedTime()));
+        var evicted = new ArrayList<Path>();
+        synchronized (this) {
+            for (var f : found) {
+                files.put(f.getKey(), f.getValue().size());
+                bytes += f.getValue().size();
+            }
+            var it = files.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                var lru = it.next();
+                bytes -= lru.getValue();
+                evicted.add(lru.getKey());
+                it.remove();
+            }
+        }
+        delete(evicted);
+        LOGGER.log(INFO, "logger.info.extractcache", dir.toString(), files.size(), bytes);
+    }
+}
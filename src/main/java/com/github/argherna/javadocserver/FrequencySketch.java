@@ -0,0 +1,98 @@
+package com.github.argherna.javadocserver;
+
+/**
+ * Count-min sketch of 4-bit counters that estimates how often keys have been seen recently.
+ *
+ * <p>
+ * This is the TinyLFU frequency filter. Each key increments one counter in each of four rows and
+ * its frequency is the smallest of those counters. Counters saturate at 15, and once the number of
+ * increments reaches ten times the capacity every counter is halved so that old popularity fades.
+ *
+ * <p>
+ * The sketch isn't thread safe; callers synchronize access.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Create a sketch sized for the given number of keys.
+     *
+     * @param capacity expected number of distinct keys held by the cache.
+     */
+    FrequencySketch(int capacity) {
+        var size = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * Math.max(16, capacity);
+    }
+
+    /**
+     * Return the estimated number of times the key was seen, from 0 to 15.
+     *
+     * @param hashCode hash code of the key.
+     * @return estimated frequency.
+     */
+    int frequency(int hashCode) {
+        var frequency = Integer.MAX_VALUE;
+        for (var i = 0; i < SEEDS.length; i++) {
+            var h = spread(hashCode, i);
+            var shift = counterShift(h);
+            var count = (int) ((table[tableIndex(h)] >>> shift) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an occurrence of the key.
+     *
+     * @param hashCode hash code of the key.
+     */
+    void increment(int hashCode) {
+        var added = false;
+        for (var i = 0; i < SEEDS.length; i++) {
+            var h = spread(hashCode, i);
+            var index = tableIndex(h);
+            var shift = counterShift(h);
+            if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (var i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int tableIndex(long h) {
+        return (int) (h >>> 32) & tableMask;
+    }
+
+    private static int counterShift(long h) {
+        return ((int) h & 0xf) << 2;
+    }
+
+    private static long spread(int hashCode, int row) {
+        var h = (hashCode + SEEDS[row]) * SEEDS[(row + 1) & 3];
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Sends DEFLATED archive entries to clients as {@code Content-Encoding: gzip} without inflating
+ * them.
+ *
+ * <p>
+ * A gzip member is a DEFLATE stream framed by a 10 byte header and an 8 byte trailer holding the
+ * CRC-32 and the size of the uncompressed data. Zip archives store the same DEFLATE stream and
+ * record the CRC-32 and size in the central directory, so the response is the header, the raw
+ * bytes copied from the archive and a trailer built from the central directory.
+ *
+ * <p>
+ * {@code Content-Encoding: deflate} isn't offered. It means a zlib stream, whose trailer is an
+ * Adler-32 checksum of the uncompressed data that can't be had without inflating the entry, and
+ * sending a bare DEFLATE stream instead is misread by some clients.
+ */
+class GzipPassthrough {
+
+    static final int HEADER_SIZE = 10;
+
+    static final int TRAILER_SIZE = 8;
+
+    // Magic, CM=8 (deflate), no flags, no mtime, no extra flags, OS=255 (unknown).
+    private static final byte[] HEADER =
+            {0x1f, (byte) 0x8b, 0x08, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff};
+
+    // Empty private constructor to prevent instantiation.
+    private GzipPassthrough() {
+    }
+
+    /**
+     * Return {@code true} if the {@code Accept-Encoding} request header allows a gzip response. A
+     * {@code gzip} or {@code x-gzip} coding decides it when there is one, {@code *} only when
+     * there isn't, so {@code gzip;q=0, *} refuses gzip.
+     *
+     * @param requestHeaders request headers.
+     * @return {@code true} if the client accepts gzip.
+     */
+    static boolean acceptsGzip(Headers requestHeaders) {
+        var values = requestHeaders.get("Accept-Encoding");
+        if (values == null) {
+            return false;
+        }
+        var gzipNamed = false;
+        var gzip = false;
+        var any = false;
+        for (var value : values) {
+            var start = 0;
+            var length = value.length();
+            while (start < length) {
+                var end = value.indexOf(',', start);
+                if (end < 0) {
+                    end = length;
+                }
+                var coding = value.substring(start, end).trim();
+                var params = coding.indexOf(';');
+                var name = (params < 0 ? coding : coding.substring(0, params)).trim();
+                if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+                    gzipNamed = true;
+                    gzip = gzip || !isZeroQuality(coding, params);
+                } else if (name.equals("*")) {
+                    any = any || !isZeroQuality(coding, params);
+                }
+                start = end + 1;
+            }
+        }
+        return gzipNamed ? gzip : any;
+    }
+
+    /**
+     * Return the length of the gzip response for an entry of the given compressed size.
+     *
+     * @param compressedSize compressed size of the entry.
+     * @return length of the gzip response.
+     */
+    static long contentLength(long compressedSize) {
+        return HEADER_SIZE + compressedSize + TRAILER_SIZE;
+    }
+
+    /**
+     * Write the raw DEFLATE data of an entry framed as a gzip member.
+     *
+     * @param out     stream to write to.
+     * @param channel channel open on the archive.
+     * @param entry   entry to write.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void write(OutputStream out, FileChannel channel, EntryIndex.Entry entry)
+            throws IOException {
+        out.write(HEADER);
+        var target = Channels.newChannel(out);
+        var position = ZipDirectory.dataOffset(channel, entry.getLocalHeaderOffset());
+        var remaining = entry.getCompressedSize();
+        while (remaining > 0) {
+            var n = channel.transferTo(position, remaining, target);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += n;
+            remaining -= n;
+        }
+        writeTrailer(out, entry);
+    }
+
+    /**
+     * Write the raw DEFLATE data of an entry in a mapped archive framed as a gzip member.
+     *
+     * @param out     stream to write to.
+     * @param archive mapped archive.
+     * @param entry   entry to write.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void write(OutputStream out, MappedArchive archive, EntryIndex.Entry entry)
+            throws IOException {
+        out.write(HEADER);
+        archive.writeRaw(entry, out);
+        writeTrailer(out, entry);
+    }
+
+    private static void writeTrailer(OutputStream out, EntryIndex.Entry entry)
+            throws IOException {
+        var trailer = new byte[TRAILER_SIZE];
+        putIntLE(trailer, 0, entry.getCrc());
+        putIntLE(trailer, 4, entry.getSize());
+        out.write(trailer);
+    }
+
+    private static void putIntLE(byte[] b, int off, long v) {
+        b[off] = (byte) v;
+        b[off + 1] = (byte) (v >>> 8);
+        b[off + 2] = (byte) (v >>> 16);
+        b[off + 3] = (byte) (v >>> 24);
+    }
+
+    // Looks for a q parameter among the ;-separated parameters of the coding, its name is case
+    // insensitive.
+    private static boolean isZeroQuality(String coding, int params) {
+        while (params >= 0) {
+            var start = params + 1;
+            params = coding.indexOf(';', start);
+            var param = (params < 0 ? coding.substring(start) : coding.substring(start, params));
+            var eq = param.indexOf('=');
+            if (eq >= 0 && param.substring(0, eq).trim().equalsIgnoreCase("q")) {
+                try {
+                    return Double.parseDouble(param.substring(eq + 1).trim()) <= 0.0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
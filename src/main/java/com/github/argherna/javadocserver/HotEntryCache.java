@@ -0,0 +1,371 @@
+package com.github.argherna.javadocserver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Byte-budgeted, in-memory cache of archive entries that are requested over and over, like the
+ * stylesheets, scripts and search indexes every javadoc page loads.
+ *
+ * <p>
+ * The cache follows the W-TinyLFU design. New entries go into a small LRU window. Entries pushed
+ * out of the window only make it into the main LRU region if a {@link FrequencySketch} says they
+ * have been requested more often than the entries they would displace, so a one-off crawl through
+ * an archive can't flush the entries everybody uses.
+ *
+ * <p>
+ * Lookups don't lock. Entries are read from a concurrent map, and the keys looked up are recorded
+ * in a small lossy buffer that is drained into the sketch and the LRU order of the regions by
+ * whichever thread gets the lock without waiting, so under contention some reads go uncounted
+ * rather than holding up the request. Adding entries and evicting them takes the lock.
+ *
+ * <p>
+ * The size of the cache defaults to {@value #DEFAULT_MAX_BYTES} bytes and entries larger than
+ * {@value #DEFAULT_MAX_ENTRY_BYTES} bytes aren't cached (configurable by setting the
+ * {@value #SYS_PROP_MAX_BYTES} and {@value #SYS_PROP_MAX_ENTRY_BYTES} system properties). Setting
+ * the size to 0 disables the cache.
+ */
+class HotEntryCache {
+
+    static final String SYS_PROP_MAX_BYTES = "com.github.argherna.javadocserver.entry.cache.bytes";
+
+    static final String SYS_PROP_MAX_ENTRY_BYTES =
+            "com.github.argherna.javadocserver.entry.cache.max.entry.bytes";
+
+    static final long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+
+    static final long DEFAULT_MAX_ENTRY_BYTES = 1024L * 1024L;
+
+    // Sizes the frequency sketch from the budget, assuming entries of about this size.
+    private static final long TYPICAL_ENTRY_BYTES = 8L * 1024L;
+
+    private static final class InstanceHolder {
+        private static final HotEntryCache INSTANCE =
+                new HotEntryCache(Util.getLongProperty(SYS_PROP_MAX_BYTES, DEFAULT_MAX_BYTES),
+                        Util.getLongProperty(SYS_PROP_MAX_ENTRY_BYTES, DEFAULT_MAX_ENTRY_BYTES));
+    }
+
+    // Size of the read buffer, a power of 2, and how many reads are recorded between drains.
+    private static final int READ_BUFFER_SIZE = 128;
+
+    private static final int DRAIN_THRESHOLD = 16;
+
+    private final ConcurrentHashMap<Key, CachedEntry> data = new ConcurrentHashMap<>(256);
+
+    private final AtomicReferenceArray<Key> readBuffer =
+            new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    // Guards the regions, their sizes and the sketch.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LinkedHashMap<Key, CachedEntry> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<Key, CachedEntry> main = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final long maxEntryBytes;
+
+    private final long maxWindowBytes;
+
+    private final long maxMainBytes;
+
+    private long windowBytes;
+
+    private long mainBytes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    HotEntryCache(long maxBytes, long maxEntryBytes) {
+        maxBytes = Math.max(0L, maxBytes);
+        this.maxEntryBytes = Math.min(maxBytes, Math.max(0L, maxEntryBytes));
+        this.maxWindowBytes = Math.min(maxBytes, Math.max(maxBytes / 100, this.maxEntryBytes));
+        this.maxMainBytes = maxBytes - maxWindowBytes;
+        this.sketch = new FrequencySketch(
+                (int) Math.min(1 << 20, Math.max(16L, maxBytes / TYPICAL_ENTRY_BYTES)));
+    }
+
+    static HotEntryCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Return the cached entry for the key or {@code null} if it isn't cached. Every call counts
+     * towards the key's popularity.
+     *
+     * @param key cache key.
+     * @return cached entry or {@code null}.
+     */
+    CachedEntry get(Key key) {
+        if (maxEntryBytes == 0) {
+            return null;
+        }
+        var entry = data.get(key);
+        recordRead(key);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Return a stream to capture the content of an entry of the given size while it's sent, or
+     * {@code null} if entries of that size aren't cached.
+     *
+     * @param size size of the content that will be sent.
+     * @return capture stream or {@code null}.
+     */
+    Capture newCapture(long size) {
+        return (size > 0 && size <= maxEntryBytes) ? new Capture((int) size) : null;
+    }
+
+    /**
+     * Add an entry to the cache.
+     *
+     * @param key   cache key.
+     * @param entry entry to cache.
+     */
+    void put(Key key, CachedEntry entry) {
+        var size = entry.getContent().length;
+        if (size > maxEntryBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            drainReads();
+            var previous = window.remove(key);
+            if (previous != null) {
+                windowBytes -= previous.getContent().length;
+            }
+            previous = main.remove(key);
+            if (previous != null) {
+                mainBytes -= previous.getContent().length;
+            }
+            window.put(key, entry);
+            data.put(key, entry);
+            windowBytes += size;
+            while (windowBytes > maxWindowBytes) {
+                var eldest = window.entrySet().iterator().next();
+                window.remove(eldest.getKey());
+                windowBytes -= eldest.getValue().getContent().length;
+                admit(eldest.getKey(), eldest.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    long getSize() {
+        lock.lock();
+        try {
+            return windowBytes + mainBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getEntryCount() {
+        return data.size();
+    }
+
+    // Records a lookup, overwriting one that wasn't drained yet if the buffer is full, and drains
+    // the buffer every few lookups unless another thread holds the lock.
+    private void recordRead(Key key) {
+        var n = reads.getAndIncrement();
+        readBuffer.lazySet(n & (READ_BUFFER_SIZE - 1), key);
+        if ((n & (DRAIN_THRESHOLD - 1)) == DRAIN_THRESHOLD - 1 && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Counts the recorded lookups in the sketch and moves the entries found to the end of their
+    // region's LRU order. Called with the lock held.
+    private void drainReads() {
+        for (var i = 0; i < READ_BUFFER_SIZE; i++) {
+            var key = readBuffer.getAndSet(i, null);
+            if (key != null) {
+                sketch.increment(key.hashCode());
+                if (window.get(key) == null) {
+                    main.get(key);
+                }
+            }
+        }
+    }
+
+    // Moves a candidate from the window into the main region if it's more popular than every entry
+    // that would have to be evicted to make room for it. Otherwise the candidate is dropped. Called
+    // with the lock held.
+    private void admit(Key candidate, CachedEntry entry) {
+        var size = entry.getContent().length;
+        if (size > maxMainBytes) {
+            data.remove(candidate);
+            evictions.increment();
+            return;
+        }
+        var candidateFrequency = sketch.frequency(candidate.hashCode());
+        var needed = mainBytes + size - maxMainBytes;
+        var victims = 0;
+        var it = main.entrySet().iterator();
+        while (needed > 0) {
+            var victim = it.next();
+            if (sketch.frequency(victim.getKey().hashCode()) >= candidateFrequency) {
+                data.remove(candidate);
+                evictions.increment();
+                return;
+            }
+            needed -= victim.getValue().getContent().length;
+            victims++;
+        }
+        it = main.entrySet().iterator();
+        for (var i = 0; i < victims; i++) {
+            var victim = it.next();
+            mainBytes -= victim.getValue().getContent().length;
+            data.remove(victim.getKey());
+            it.remove();
+            evictions.increment();
+        }
+        main.put(candidate, entry);
+        mainBytes += size;
+    }
+
+    /**
+     * Identifies a cached response: the version of the archive, the entry and whether the client
+     * accepts gzip.
+     */
+    static final class Key {
+
+        private final long archiveIdentity;
+
+        private final String entryName;
+
+        private final boolean acceptsGzip;
+
+        private final int hashCode;
+
+        Key(long archiveIdentity, String entryName, boolean acceptsGzip) {
+            this.archiveIdentity = archiveIdentity;
+            this.entryName = entryName;
+            this.acceptsGzip = acceptsGzip;
+            this.hashCode = 31 * (31 * Long.hashCode(archiveIdentity) + entryName.hashCode())
+                    + Boolean.hashCode(acceptsGzip);
+        }
+
+        long getArchiveIdentity() {
+            return archiveIdentity;
+        }
+
+        String getEntryName() {
+            return entryName;
+        }
+
+        boolean acceptsGzip() {
+            return acceptsGzip;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            var other = (Key) obj;
+            return archiveIdentity == other.archiveIdentity && acceptsGzip == other.acceptsGzip
+                    && entryName.equals(other.entryName);
+        }
+    }
+
+    /**
+     * Response body and headers of a cached entry.
+     */
+    static final class CachedEntry {
+
+        private final byte[] content;
+
+        private final String etag;
+
+        private final long lastModified;
+
+        private final boolean gzip;
+
+        private final boolean varyByEncoding;
+
+        CachedEntry(byte[] content, String etag, long lastModified, boolean gzip,
+                boolean varyByEncoding) {
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.gzip = gzip;
+            this.varyByEncoding = varyByEncoding;
+        }
+
+        byte[] getContent() {
+            return content;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        boolean isGzip() {
+            return gzip;
+        }
+
+        boolean isVaryByEncoding() {
+            return varyByEncoding;
+        }
+    }
+
+    /**
+     * Buffer sized for the content it captures, so the captured bytes are usually cached without
+     * being copied.
+     */
+    static final class Capture extends ByteArrayOutputStream {
+
+        Capture(int size) {
+            super(size);
+        }
+
+        byte[] toContent() {
+            return count == buf.length ? buf : Arrays.copyOf(buf, count);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.argherna.javadocserver.HotEntryCache.CachedEntry;
+
+/**
+ * The archive entries requested most, kept across restarts so that a restarted server can read
+ * them again before its first users ask for them.
+ *
+ * <p>
+ * Requests for archive entries are counted in memory. Once {@link #start()} is called, the
+ * {@value #DEFAULT_SIZE} most requested entries are saved to a state file every
+ * {@value #DEFAULT_SAVE_SECONDS} seconds and when the server stops, and counts are halved after
+ * every save so that the set follows what is requested lately. {@code prewarm} reads the saved
+ * entries on a pool of background threads: it opens and indexes their archives and loads the
+ * entries into the {@link HotEntryCache}, and the {@link ExtractedEntryCache} when it's on, the
+ * way the requests for them would.
+ *
+ * <p>
+ * These system properties configure it:
+ * <ul>
+ * <li>{@value #SYS_PROP_FILE}: the state file (default is {@code .javadocserver/hotset.txt} in
+ * the user's home directory), set it to an empty value to turn the hot set off.
+ * <li>{@value #SYS_PROP_SIZE}: number of entries saved (default is {@value #DEFAULT_SIZE}).
+ * <li>{@value #SYS_PROP_SAVE_SECONDS}: seconds between saves (default is
+ * {@value #DEFAULT_SAVE_SECONDS}).
+ * <li>{@value #SYS_PROP_PREWARM_THREADS}: threads reading entries at startup (default is
+ * {@value #DEFAULT_PREWARM_THREADS}).
+ * </ul>
+ */
+class HotSet implements AutoCloseable {
+
+    private static final System.Logger LOGGER = System.getLogger(HotSet.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_FILE = "com.github.argherna.javadocserver.hotset.file";
+
+    static final String SYS_PROP_SIZE = "com.github.argherna.javadocserver.hotset.size";
+
+    static final String SYS_PROP_SAVE_SECONDS =
+            "com.github.argherna.javadocserver.hotset.save.seconds";
+
+    static final String SYS_PROP_PREWARM_THREADS =
+            "com.github.argherna.javadocserver.prewarm.threads";
+
+    static final int DEFAULT_SIZE = 256;
+
+    static final long DEFAULT_SAVE_SECONDS = 300L;
+
+    static final int DEFAULT_PREWARM_THREADS = 4;
+
+    // Entries counted between saves, as a multiple of the size. Entries first requested once the
+    // limit is reached aren't counted until the next save makes room.
+    private static final int TRACKED_FACTOR = 8;
+
+    private static final class InstanceHolder {
+        private static final HotSet INSTANCE = new HotSet(stateFile(),
+                Util.getIntegerProperty(SYS_PROP_SIZE, DEFAULT_SIZE),
+                Util.getLongProperty(SYS_PROP_SAVE_SECONDS, DEFAULT_SAVE_SECONDS),
+                Util.getIntegerProperty(SYS_PROP_PREWARM_THREADS, DEFAULT_PREWARM_THREADS));
+    }
+
+    private final Map<Key, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private final Path file;
+
+    private final int size;
+
+    private final int maxTracked;
+
+    private final long saveSeconds;
+
+    private final int prewarmThreads;
+
+    private ScheduledExecutorService saver;
+
+    HotSet(Path file, int size, long saveSeconds, int prewarmThreads) {
+        this.file = file;
+        this.size = Math.max(0, size);
+        this.maxTracked = this.size * TRACKED_FACTOR;
+        this.saveSeconds = Math.max(1L, saveSeconds);
+        this.prewarmThreads = Math.max(1, prewarmThreads);
+    }
+
+    static HotSet getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    private static Path stateFile() {
+        var name = Util.getSystemProperty(SYS_PROP_FILE);
+        if (name == null) {
+            return Paths.get(Util.getSystemProperty("user.home"), ".javadocserver", "hotset.txt");
+        }
+        return name.isBlank() ? null : Paths.get(name);
+    }
+
+    /**
+     * Count a request for an archive entry.
+     *
+     * @param archiveName path to the archive.
+     * @param entryName   name of the entry.
+     * @param gzip        {@code true} if the client accepts a gzip response.
+     */
+    void record(String archiveName, String entryName, boolean gzip) {
+        if (maxTracked == 0) {
+            return;
+        }
+        var key = new Key(archiveName, entryName, gzip);
+        var count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxTracked) {
+                return;
+            }
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Load the saved entries and start saving them periodically.
+     */
+    synchronized void start() {
+        if (file == null || saver != null) {
+            return;
+        }
+        for (var saved : load()) {
+            counts.computeIfAbsent(saved.key, k -> new LongAdder()).add(saved.count);
+        }
+        saver = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "hotset-saver");
+            t.setDaemon(true);
+            return t;
+        });
+        saver.scheduleWithFixedDelay(this::save, saveSeconds, saveSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Read the saved entries in the background, most requested first.
+     *
+     * @param archiveReader how to read the archives, the way the handlers do.
+     * @return future completed when every entry was read, whether it could be or not.
+     */
+    CompletableFuture<Void> prewarm(JavadocHandler.ArchiveReader archiveReader) {
+        var entries = file == null ? List.<Saved>of() : load();
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var archives = new HashSet<String>();
+        for (var saved : entries) {
+            archives.add(saved.key.archiveName);
+        }
+        LOGGER.log(INFO, "logger.info.prewarmstart", entries.size(), archives.size(),
+                prewarmThreads);
+
+        var startNanos = System.nanoTime();
+        var pool = Executors.newFixedThreadPool(prewarmThreads, r -> {
+            var t = new Thread(r, "prewarm");
+            t.setDaemon(true);
+            return t;
+        });
+        var done = new AtomicInteger();
+        var bytes = new AtomicLong();
+        var futures = new CompletableFuture<?>[entries.size()];
+        for (var i = 0; i < futures.length; i++) {
+            var key = entries.get(i).key;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    bytes.addAndGet(warm(key, archiveReader));
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(DEBUG, "Failed to prewarm " + key.entryName, e);
+                }
+                var n = done.incrementAndGet();
+                // Logs every quarter of the way.
+                if (n * 4 / futures.length > (n - 1) * 4 / futures.length
+                        && n < futures.length) {
+                    LOGGER.log(INFO, "logger.info.prewarmprogress", n, futures.length);
+                }
+            }, pool);
+        }
+        return CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+            pool.shutdown();
+            LOGGER.log(INFO, "logger.info.prewarmdone", done.get(), bytes.get(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        });
+    }
+
+    // Reads an entry as a request for it would, returning the number of bytes read.
+    private static long warm(Key key, JavadocHandler.ArchiveReader archiveReader)
+            throws IOException {
+        var entryIndex = EntryIndex.getInstance();
+        EntryIndex.Entry entry;
+        try {
+            entry = entryIndex.find(key.archiveName, key.entryName);
+        } catch (NoSuchFileException e) {
+            return 0L;
+        }
+        if (entry == null) {
+            return 0L;
+        }
+        var hotEntries = HotEntryCache.getInstance();
+        var gzip = key.gzip && entry.getMethod() == ZipDirectory.DEFLATED;
+        var cacheKey = new HotEntryCache.Key(entry.getArchiveIdentity(), entry.getName(),
+                key.gzip);
+        try (var archive = ArchiveCache.getInstance().acquire(key.archiveName)) {
+            if (archive.getIdentity() != entry.getArchiveIdentity()) {
+                return 0L;
+            }
+            var contentLength = gzip ? GzipPassthrough.contentLength(entry.getCompressedSize())
+                    : entry.getSize();
+            var capture = hotEntries.newCapture(contentLength);
+            var out = capture == null ? new CountingOutputStream(OutputStream.nullOutputStream())
+                    : new CountingOutputStream(capture);
+            var extractedEntries = ExtractedEntryCache.getInstance();
+            if (extractedEntries.fits(contentLength)
+                    && extractedEntries.get(key.archiveName, cacheKey) == null) {
+                // Reads the entry once for both caches.
+                var extracted = extractedEntries.extract(key.archiveName, cacheKey,
+                        file -> write(archive, entry, gzip, archiveReader,
+                                new TeeOutputStream(file, out)));
+                if (extracted == null) {
+                    return 0L;
+                }
+            } else {
+                write(archive, entry, gzip, archiveReader, out);
+            }
+            if (capture != null) {
+                var etag = HttpCaching.entityTag(entry.getArchiveIdentity(), entry.getCrc(),
+                        entry.getSize());
+                hotEntries.put(cacheKey,
+                        new CachedEntry(capture.toContent(),
+                                gzip ? HttpCaching.gzipEntityTag(etag) : etag, entry.getTime(),
+                                gzip, entry.getMethod() == ZipDirectory.DEFLATED));
+            }
+            return out.getCount();
+        }
+    }
+
+    private static void write(ArchiveCache.ArchiveHandle archive, EntryIndex.Entry entry,
+            boolean gzip, JavadocHandler.ArchiveReader archiveReader, OutputStream out)
+            throws IOException {
+        if (archiveReader == JavadocHandler.ArchiveReader.MAPPED) {
+            var mapped = archive.getMappedArchive();
+            if (gzip) {
+                GzipPassthrough.write(out, mapped, entry);
+            } else {
+                mapped.writeEntry(entry, out);
+            }
+        } else if (gzip) {
+            GzipPassthrough.write(out, archive.getChannel(), entry);
+        } else {
+            var zf = archive.getZipFile();
+            try (InputStream in = zf.getInputStream(zf.getEntry(entry.getName()))) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    // Saves the most requested entries and ages the counts.
+    private void save() {
+        var top = new ArrayList<Saved>(counts.size());
+        for (var count : counts.entrySet()) {
+            top.add(new Saved(count.getKey(), count.getValue().sum()));
+        }
+        top.sort(Comparator.comparingLong((Saved s) -> s.count).reversed());
+        if (top.size() > size) {
+            for (var dropped : top.subList(size, top.size())) {
+                counts.remove(dropped.key);
+            }
+            top = new ArrayList<>(top.subList(0, size));
+        }
+        var sb = new StringBuilder(top.size() * 96);
+        for (var saved : top) {
+            sb.append(saved.count).append('\t').append(saved.key.gzip ? "gzip" : "identity")
+                    .append('\t').append(saved.key.archiveName).append('\t')
+                    .append(saved.key.entryName).append('\n');
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.hotsetsave", file, e);
+        }
+        for (var count : counts.values()) {
+            var halved = count.sum() / 2;
+            count.reset();
+            count.add(halved);
+        }
+    }
+
+    private List<Saved> load() {
+        var saved = new ArrayList<Saved>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return saved;
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.hotsetload", file, e);
+            return saved;
+        }
+        for (var line : lines) {
+            var fields = line.split("\t", 4);
+            if (fields.length < 4) {
+                continue;
+            }
+            try {
+                saved.add(new Saved(new Key(fields[2], fields[3], fields[1].equals("gzip")),
+                        Long.parseLong(fields[0])));
+            } catch (NumberFormatException e) {
+                LOGGER.log(DEBUG, "Ignoring hot set line " + line);
+            }
+        }
+        return saved.size() > size ? saved.subList(0, size) : saved;
+    }
+
+    /**
+     * Stop saving, saving the entries one last time.
+     */
+    @Override
+    public synchronized void close() {
+        if (saver != null) {
+            saver.shutdownNow();
+            saver = null;
+            save();
+        }
+    }
+
+    private static final class Key {
+
+        private final String archiveName;
+
+        private final String entryName;
+
+        private final boolean gzip;
+
+        private Key(String archiveName, String entryName, boolean gzip) {
+            this.archiveName = archiveName;
+            this.entryName = entryName;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Key)) {
+                return false;
+            }
+            var other = (Key) o;
+            return gzip == other.gzip && entryName.equals(other.entryName)
+                    && archiveName.equals(other.archiveName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * archiveName.hashCode() + entryName.hashCode())
+                    + Boolean.hashCode(gzip);
+        }
+    }
+
+    private static final class Saved {
+
+        private final Key key;
+
+        private final long count;
+
+        private Saved(Key key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
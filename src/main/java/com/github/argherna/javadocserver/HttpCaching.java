@@ -0,0 +1,232 @@
+package com.github.argherna.javadocserver;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.zip.ZipEntry;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * Validators, conditional request handling and cache policies for content served from archives.
+ */
+class HttpCaching {
+
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+            DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    /**
+     * How long clients may reuse a response without revalidating it.
+     */
+    static enum CachePolicy {
+
+        /**
+         * Content never changes for a URL, like released Maven artifacts and JDK documentation.
+         */
+        IMMUTABLE("public, max-age=31536000, immutable"),
+
+        /**
+         * Content can change for a URL, like SNAPSHOT Maven artifacts, and clients must revalidate
+         * before reusing it.
+         */
+        REVALIDATE("no-cache");
+
+        private final String cacheControl;
+
+        private CachePolicy(String cacheControl) {
+            this.cacheControl = cacheControl;
+        }
+
+        String getCacheControl() {
+            return cacheControl;
+        }
+    }
+
+    // Empty private constructor to prevent instantiation.
+    private HttpCaching() {
+    }
+
+    /**
+     * Return a strong entity tag for an archive entry. The tag combines the identity of the archive
+     * with the CRC and size of the entry so that it changes whenever either the archive or the
+     * entry is replaced.
+     *
+     * @param archiveIdentity identity of the archive.
+     * @param entry           archive entry.
+     * @return quoted entity tag.
+     */
+    static String entityTag(long archiveIdentity, ZipEntry entry) {
+        return entityTag(archiveIdentity, entry.getCrc(), entry.getSize());
+    }
+
+    /**
+     * Return a strong entity tag for an archive entry with the given CRC and size.
+     *
+     * @param archiveIdentity identity of the archive.
+     * @param crc             CRC-32 of the entry.
+     * @param size            uncompressed size of the entry.
+     * @return quoted entity tag.
+     */
+    static String entityTag(long archiveIdentity, long crc, long size) {
+        return new StringBuilder(40).append('"').append(Long.toHexString(archiveIdentity))
+                .append('-').append(Long.toHexString(crc)).append('-')
+                .append(Long.toHexString(size)).append('"').toString();
+    }
+
+    /**
+     * Return the entity tag of the gzip encoded representation of an entry with the given entity
+     * tag.
+     *
+     * @param etag quoted entity tag of the unencoded entry.
+     * @return quoted entity tag of the gzip encoded entry.
+     */
+    static String gzipEntityTag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+
+    /**
+     * Return an identity for an archive from its path, size and last modified time.
+     *
+     * @param path         path to the archive.
+     * @param size         size of the archive.
+     * @param lastModified last modified time of the archive in milliseconds.
+     * @return archive identity.
+     */
+    static long archiveIdentity(String path, long size, long lastModified) {
+        var h = 1125899906842597L;
+        for (var i = 0; i < path.length(); i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        h = 31 * h + size;
+        h = 31 * h + lastModified;
+        // Spread the bits so that similar paths don't give similar tags.
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    /**
+     * Return the given time as an HTTP date.
+     *
+     * @param millis time in milliseconds since the epoch.
+     * @return HTTP date.
+     */
+    static String formatHttpDate(long millis) {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Set the validators and the {@code Cache-Control} header on a response.
+     *
+     * @param responseHeaders response headers.
+     * @param etag            entity tag, may be {@code null}.
+     * @param lastModified    last modified time in milliseconds, or {@code -1} if not known.
+     * @param policy          cache policy.
+     */
+    static void setCacheHeaders(Headers responseHeaders, String etag, long lastModified,
+            CachePolicy policy) {
+        if (etag != null) {
+            responseHeaders.set("ETag", etag);
+        }
+        if (lastModified >= 0) {
+            responseHeaders.set("Last-Modified", formatHttpDate(lastModified));
+        }
+        responseHeaders.set("Cache-Control", policy.getCacheControl());
+    }
+
+    /**
+     * Return {@code true} if the conditional headers of the request show that the client already
+     * has the current representation.
+     *
+     * <p>
+     * {@code If-None-Match} takes precedence over {@code If-Modified-Since} as described in RFC
+     * 7232.
+     *
+     * @param requestHeaders request headers.
+     * @param etag           current entity tag, may be {@code null}.
+     * @param lastModified   current last modified time in milliseconds, or {@code -1}.
+     * @return {@code true} if a {@code 304} response should be sent.
+     */
+    static boolean isNotModified(Headers requestHeaders, String etag, long lastModified) {
+        var ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && matchesAny(ifNoneMatch, etag);
+        }
+        var ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null && lastModified >= 0) {
+            var since = parseHttpDate(ifModifiedSince);
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * Return {@code true} if the ranges a request asks for should be sent, that is if it has no
+     * {@code If-Range} header or the header matches the current representation. Entity tags are
+     * compared with the strong comparison RFC 7233 requires, dates must be the last modified time.
+     *
+     * @param requestHeaders request headers.
+     * @param etag           current entity tag, may be {@code null}.
+     * @param lastModified   current last modified time in milliseconds, or {@code -1}.
+     * @return {@code false} if the whole representation should be sent instead.
+     */
+    static boolean isRangeCurrent(Headers requestHeaders, String etag, long lastModified) {
+        var ifRange = requestHeaders.getFirst("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("W/")) {
+            // If-Range uses the strong comparison, weak tags never match.
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        var date = parseHttpDate(ifRange);
+        return date >= 0 && lastModified >= 0 && date / 1000 == lastModified / 1000;
+    }
+
+    /**
+     * Return the time of an HTTP date in milliseconds since the epoch, or {@code -1} if it can't
+     * be parsed.
+     *
+     * @param value HTTP date.
+     * @return time in milliseconds or {@code -1}.
+     */
+    static long parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    // Uses the weak comparison RFC 7232 requires for If-None-Match.
+    private static boolean matchesAny(String headerValue, String etag) {
+        var start = 0;
+        var length = headerValue.length();
+        while (start < length) {
+            var end = headerValue.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            var candidate = headerValue.substring(start, end).trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+}
@@ -1,97 +1,192 @@
 package com.github.argherna.javadocserver;
 
-import static java.lang.String.format;
 import static java.lang.System.Logger.Level.DEBUG;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.StringJoiner;
-import java.util.prefs.BackingStoreException;
-import java.util.prefs.Preferences;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
  * Renders the index page or a page of documentation explaining how to get started.
+ *
+ * <p>
+ * The page is rendered once and kept as UTF-8 and gzip encoded bytes until the
+ * {@link MavenRepositories} or the {@link ServerConfig} change.
  */
 class IndexHandler extends JavadocHandler {
 
-    private static final String HTML_LIST_ITEM_TEMPLATE =
-            "<li><a href=\"/m2/%1$s/%2$s/%3$s/index.html\">%1$s:%2$s:%3$s</a></li>";
-
-    private static final String INDEX_HTML_TEMPLATE = "<!DOCTYPE html><html><h"
+    private static final String INDEX_HTML_HEAD = "<!DOCTYPE html><html><h"
             + "ead><link href=\"https://stackpath.bootstrapcdn.com/bootstrap/4.1.0/c"
             + "ss/bootstrap.min.css\" rel=\"stylesheet\" integrity=\"sha384-9gVQ4dYF"
             + "wwWSjIDZnLEWnxCjeSWFphJiwGPXr1jddIhOegiu1FwO5qRGvFXOdJZ4\" crossorigi"
             + "n=\"anonymous\"><title>Available Local Javadoc</title></head><body><d"
             + "iv class=\"container\"><h1>Avaliable Local Javadoc</h1><h2>JDK API</h"
-            + "2><ul>%s</ul><h2>Maven Repository</h2><ul>%s</ul></div><script src=\""
+            + "2><ul>";
+
+    private static final String INDEX_HTML_MIDDLE = "</ul><h2>Maven Repository</h2><ul>";
+
+    private static final String INDEX_HTML_TAIL = "</ul></div><script src=\""
             + "https://stackpath.bootstrapcdn.com/bootstrap/4.1.0/js/bootstrap.min.j"
             + "s\" integrity=\"sha384-uefMccjFJAIv6A+rW+L4AHf99KvxDjWSu1z9VI8SKNVmz4"
             + "sk7buKt/6v9KI65qnm\" crossorigin=\"anonymous\"></script></body></html" + ">";
 
     private static final System.Logger LOGGER = System.getLogger(IndexHandler.class.getName());
 
+    private final MavenRepositories repositories;
+
+    private volatile Page page;
+
+    IndexHandler(MavenRepositories repositories) {
+        this.repositories = repositories;
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        var content = new byte[0];
-        var status = HTTP_OK;
-        var javadocServer = Preferences.userNodeForPackage(ServerMain.class);
-        try {
-            if (javadocServer.childrenNames().length == 0) {
-                content = gettingStarted;
-            } else if (exchange.getRequestURI().getPath().equals("/favicon.ico")) {
-                status = HTTP_NOT_FOUND;
-                content = notFound;
-            } else {
-                var m2Repos = javadocServer.node("m2-repos");
-                var m2RepoPath = m2Repos.get("default", "");
-                var artifactDirs = getMavenJavadocArtifactDirectoryNames(m2RepoPath);
-                LOGGER.log(DEBUG, artifactDirs.toString());
-                content = format(INDEX_HTML_TEMPLATE,
-                        renderJdkDocsListItems(javadocServer.node("jdk-docs").keys()),
-                        toHtmlListElements(artifactDirs)).getBytes();
+        var current = currentPage();
+        if (!current.gettingStarted && exchange.getRequestURI().getPath().equals("/favicon.ico")) {
+            doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
+            return;
+        }
+
+        var h = exchange.getResponseHeaders();
+        var gzip = GzipPassthrough.acceptsGzip(exchange.getRequestHeaders());
+        var etag = gzip ? current.gzipEtag : current.etag;
+        h.set("Vary", "Accept-Encoding");
+        HttpCaching.setCacheHeaders(h, etag, -1L, CachePolicy.REVALIDATE);
+        if (HttpCaching.isNotModified(exchange.getRequestHeaders(), etag, -1L)) {
+            exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+        if (gzip) {
+            h.set("Content-Encoding", "gzip");
+        }
+        doSend(exchange, contentTypeHtml, gzip ? current.gzipContent : current.content, HTTP_OK);
+    }
+
+    private Page currentPage() {
+        var current = page;
+        // Only compares generations, changes made by other processes show up when the indexer
+        // reloads the preferences.
+        var snapshot = config.get();
+        var catalogGeneration = repositories.getGeneration();
+        if (current != null && current.catalogGeneration == catalogGeneration
+                && current.configGeneration == snapshot.getGeneration()) {
+            return current;
+        }
+        synchronized (this) {
+            current = page;
+            snapshot = config.get();
+            catalogGeneration = repositories.getGeneration();
+            if (current == null || current.catalogGeneration != catalogGeneration
+                    || current.configGeneration != snapshot.getGeneration()) {
+                current = render(catalogGeneration, snapshot);
+                page = current;
             }
-            doSend(exchange, contentTypeHtml, content, status);
-        } catch (BackingStoreException e) {
-            throw new RuntimeException(e);
+            return current;
+        }
+    }
+
+    private Page render(long catalogGeneration, ServerConfig.Snapshot snapshot) {
+        var content = gettingStarted;
+        if (snapshot.isConfigured()) {
+            var artifactDirs = repositories.getJavadocArtifactDirectoryNames();
+            LOGGER.log(DEBUG, artifactDirs::toString);
+            content = renderIndexPage(snapshot.getJdkDocs().keySet(), artifactDirs);
         }
+        return new Page(catalogGeneration, snapshot.getGeneration(), !snapshot.isConfigured(),
+                content);
+    }
+
+    /**
+     * Render the index page.
+     *
+     * @param jdkDocsKeys            keys of the JDK documentation archives.
+     * @param artifactDirectoryNames directory names of the javadoc archives in the Maven
+     *                               repositories.
+     * @return the page as UTF-8 bytes.
+     */
+    static byte[] renderIndexPage(Collection<String> jdkDocsKeys,
+            Collection<String> artifactDirectoryNames) {
+        var sb = new StringBuilder(INDEX_HTML_HEAD.length() + INDEX_HTML_TAIL.length()
+                + 80 * (jdkDocsKeys.size() + artifactDirectoryNames.size()));
+        sb.append(INDEX_HTML_HEAD);
+        renderJdkDocsListItems(sb, jdkDocsKeys);
+        sb.append(INDEX_HTML_MIDDLE);
+        renderMavenListItems(sb, artifactDirectoryNames);
+        sb.append(INDEX_HTML_TAIL);
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
     }
 
-    private String renderJdkDocsListItems(String[] keys) throws BackingStoreException {
-        var sb = new StringBuilder();
+    private static void renderJdkDocsListItems(StringBuilder sb, Iterable<String> keys) {
         for (var key : keys) {
             sb.append("<li><a href=\"/jdk/").append(key).append("/docs/api/index.html\">Java ")
                     .append(key).append("</a></li>");
         }
-        return sb.toString();
     }
 
-    private Iterable<String> getMavenJavadocArtifactDirectoryNames(String repoDir)
-            throws IOException {
-        var mavenRepoDir = Paths.get(repoDir);
-        var dirnames = new ArrayList<String>();
-        if (mavenRepoDir.toFile().exists()) {
-            var finder = new JavadocArchiveFinder(mavenRepoDir);
-            Files.walkFileTree(mavenRepoDir, finder);
-            dirnames.addAll(finder.getJavadocArtifactDirectoryNames());
+    private static void renderMavenListItems(StringBuilder sb,
+            Iterable<String> javadocArchiveNames) {
+        for (var javadocArchiveName : javadocArchiveNames) {
+            var coordinates = MavenCatalog.toCoordinates(javadocArchiveName);
+            sb.append("<li><a href=\"/m2/").append(coordinates[0]).append('/')
+                    .append(coordinates[1]).append('/').append(coordinates[2])
+                    .append("/index.html\">").append(coordinates[0]).append(':')
+                    .append(coordinates[1]).append(':').append(coordinates[2])
+                    .append("</a></li>");
         }
-        return dirnames;
     }
 
-    private String toHtmlListElements(Iterable<String> javadocArchiveNames) {
-        var listJoiner = new StringJoiner("");
-        for (var javadocArchivename : javadocArchiveNames) {
-            var parts = Arrays.asList(javadocArchivename.split(SYSPROP_FILE_SEP));
-            var dotJoiner = new StringJoiner(".");
-            parts.subList(0, parts.size() - 2).stream().forEach(part -> dotJoiner.add(part));
-            var listElement = format(HTML_LIST_ITEM_TEMPLATE, dotJoiner.toString(),
-                    parts.get(parts.size() - 2), parts.get(parts.size() - 1));
-            listJoiner.add(listElement);
+    /**
+     * Rendered page, with the generations of the catalog and the configuration it was rendered
+     * from.
+     */
+    private static final class Page {
+
+        private final long catalogGeneration;
+
+        private final long configGeneration;
+
+        private final boolean gettingStarted;
+
+        private final byte[] content;
+
+        private final byte[] gzipContent;
+
+        private final String etag;
+
+        private final String gzipEtag;
+
+        private Page(long catalogGeneration, long configGeneration, boolean gettingStarted,
+                byte[] content) {
+            this.catalogGeneration = catalogGeneration;
+            this.configGeneration = configGeneration;
+            this.gettingStarted = gettingStarted;
+            this.content = content;
+            this.gzipContent = gzip(content);
+            // Tag the content rather than the generations, so that the tags stay the same when the
+            // page is rendered again with the same content, or by a restarted server.
+            var crc = new CRC32();
+            crc.update(content);
+            this.etag = HttpCaching.entityTag(0L, crc.getValue(), content.length);
+            this.gzipEtag = HttpCaching.gzipEntityTag(etag);
+        }
+
+        private static byte[] gzip(byte[] content) {
+            var bytes = new ByteArrayOutputStream(content.length / 4 + 32);
+            try (var out = new GZIPOutputStream(bytes)) {
+                out.write(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
         }
-        return listJoiner.toString();
     }
 }
@@ -0,0 +1,80 @@
+package com.github.argherna.javadocserver;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Byte-budgeted LRU cache of the inflated content of large compressed entries, so that range
+ * requests into them don't inflate the entry from the start every time.
+ *
+ * <p>
+ * Small entries are served from the {@link HotEntryCache}, this cache takes the ones too large for
+ * it, like search indexes, up to half of its size. The size defaults to
+ * {@value #DEFAULT_MAX_BYTES} bytes (configurable by setting the {@value #SYS_PROP_MAX_BYTES}
+ * system property), setting it to 0 disables the cache.
+ */
+class InflatedEntryCache {
+
+    static final String SYS_PROP_MAX_BYTES =
+            "com.github.argherna.javadocserver.inflated.cache.bytes";
+
+    static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+
+    private static final class InstanceHolder {
+        private static final InflatedEntryCache INSTANCE = new InflatedEntryCache(
+                Util.getLongProperty(SYS_PROP_MAX_BYTES, DEFAULT_MAX_BYTES));
+    }
+
+    private final LinkedHashMap<HotEntryCache.Key, byte[]> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxBytes;
+
+    private long bytes;
+
+    InflatedEntryCache(long maxBytes) {
+        this.maxBytes = Math.max(0L, maxBytes);
+    }
+
+    static InflatedEntryCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Return {@code true} if an entry of the given size can be cached.
+     *
+     * @param size inflated size of the entry.
+     * @return {@code true} if the entry fits.
+     */
+    boolean fits(long size) {
+        return size > 0 && size <= maxBytes / 2;
+    }
+
+    /**
+     * Return the inflated content for the key or {@code null} if it isn't cached.
+     *
+     * @param key cache key.
+     * @return inflated content or {@code null}.
+     */
+    synchronized byte[] get(HotEntryCache.Key key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Add inflated content to the cache, evicting the least recently used entries to make room.
+     *
+     * @param key     cache key.
+     * @param content inflated content.
+     */
+    synchronized void put(HotEntryCache.Key key, byte[] content) {
+        if (!fits(content.length)) {
+            return;
+        }
+        var previous = entries.put(key, content);
+        bytes += content.length - (previous == null ? 0 : previous.length);
+        var it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+}
@@ -26,7 +26,7 @@ class JavadocArchiveFinder extends SimpleFileVisitor<Path> {
 
   private final List<String> javadocArtifactDirectoryNames = new ArrayList<>();
 
-  private final PathMatcher matcher =
+  private static final PathMatcher MATCHER =
       FileSystems.getDefault().getPathMatcher("regex:.*-javadoc.jar$");
 
   private final Path basePath;
@@ -44,7 +44,7 @@ class JavadocArchiveFinder extends SimpleFileVisitor<Path> {
   @Override
   public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
     var name = file.getFileName();
-    if (name != null && matcher.matches(name)) {
+    if (isJavadocArchive(name)) {
       var subpath = file.subpath(basePath.getNameCount(), file.getNameCount() - 1);
       LOGGER.log(TRACE, "logger.finer.adding", subpath.toString());
       javadocArtifactDirectoryNames.add(subpath.toString());
@@ -58,6 +58,13 @@ class JavadocArchiveFinder extends SimpleFileVisitor<Path> {
     return super.visitFileFailed(file, exc);
   }
 
+  /**
+   * Return {@code true} if the given file name is the name of a javadoc archive.
+   */
+  static boolean isJavadocArchive(Path name) {
+    return name != null && MATCHER.matches(name);
+  }
+
   Collection<String> getJavadocArtifactDirectoryNames() {
     return javadocArtifactDirectoryNames;
   }
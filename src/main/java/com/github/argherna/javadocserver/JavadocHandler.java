@@ -1,17 +1,23 @@
 package com.github.argherna.javadocserver;
 
 import static com.github.argherna.javadocserver.Util.loadResource;
-import static java.lang.String.format;
 import static java.lang.System.Logger.Level.DEBUG;
 
-import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
-import java.util.zip.ZipFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
 
+import com.github.argherna.javadocserver.HotEntryCache.CachedEntry;
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
@@ -22,10 +28,18 @@ abstract class JavadocHandler implements HttpHandler {
 
     static final Integer HTTP_OK = 200;
 
+    static final Integer HTTP_PARTIAL_CONTENT = 206;
+
+    static final Integer HTTP_NOT_MODIFIED = 304;
+
     static final Integer HTTP_BAD_REQUEST = 400;
 
     static final Integer HTTP_NOT_FOUND = 404;
 
+    static final Integer HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    static final Integer HTTP_SERVICE_UNAVAILABLE = AdmissionFilter.HTTP_SERVICE_UNAVAILABLE;
+
     private static final System.Logger LOGGER = System.getLogger(JavadocHandler.class.getName());
 
     private static final String DOCS_PAGE = "com.github.argherna.javadocserver.html.docs";
@@ -34,8 +48,43 @@ abstract class JavadocHandler implements HttpHandler {
 
     private static final String NOT_FOUND_PAGE = "com.github.argherna.javadocserver.html.404";
 
-    static final String SYSPROP_FILE_SEP = AccessController
-            .doPrivileged((PrivilegedAction<String>) () -> System.getProperty("file.separator"));
+    /**
+     * Ways of reading entries from archives.
+     */
+    static enum ArchiveReader {
+
+        /**
+         * Read entries through {@link java.util.zip.ZipFile}.
+         */
+        ZIPFILE,
+
+        /**
+         * Read entries from archives mapped into memory with {@link MappedArchive}.
+         */
+        MAPPED;
+
+        static ArchiveReader fromString(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    final HotEntryCache hotEntries = HotEntryCache.getInstance();
+
+    final EntryIndex entryIndex = EntryIndex.getInstance();
+
+    final ExtractedEntryCache extractedEntries = ExtractedEntryCache.getInstance();
+
+    final HotSet hotSet = HotSet.getInstance();
+
+    final ServerConfig config = ServerConfig.getInstance();
+
+    final ArchiveReader archiveReader;
+
+    // Limits the entries too large for the hot entry cache that are read at once, or null.
+    final Bulkhead largeEntries;
+
+    final long largeEntryBytes = Util.getLongProperty(HotEntryCache.SYS_PROP_MAX_ENTRY_BYTES,
+            HotEntryCache.DEFAULT_MAX_ENTRY_BYTES);
 
     final byte[] badRequest;
 
@@ -43,52 +92,383 @@ abstract class JavadocHandler implements HttpHandler {
 
     final byte[] notFound;
 
+    final byte[] serviceUnavailable;
+
     final String contentTypeHtml = JavadocServerFileNameMap.getInstance().getContentTypeFor(".html");
 
     JavadocHandler() {
+        this(ArchiveReader.ZIPFILE);
+    }
+
+    JavadocHandler(ArchiveReader archiveReader) {
+        this(archiveReader, null);
+    }
+
+    JavadocHandler(ArchiveReader archiveReader, Bulkhead largeEntries) {
+        this.archiveReader = archiveReader;
+        this.largeEntries = largeEntries;
         try {
             badRequest = loadResource(BAD_REQUEST_PAGE);
             gettingStarted = loadResource(DOCS_PAGE);
             notFound = loadResource(NOT_FOUND_PAGE);
+            serviceUnavailable = loadResource(AdmissionFilter.SERVICE_UNAVAILABLE_PAGE);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    void doSend(HttpExchange exchange, String contentType, String archiveName, String entryName)
-            throws IOException {
+    // Returns the decoded path of the request, only decoding it when there is something to decode.
+    static String requestPath(HttpExchange exchange) {
+        var uri = exchange.getRequestURI();
+        var rawPath = uri.getRawPath();
+        return rawPath.indexOf('%') < 0 ? rawPath : uri.getPath();
+    }
+
+    void doSend(HttpExchange exchange, String contentType, String archiveName, String entryName,
+            CachePolicy cachePolicy) throws IOException {
+        EntryIndex.Entry entry;
+        try {
+            entry = entryIndex.find(archiveName, entryName);
+        } catch (NoSuchFileException e) {
+            entry = null;
+        }
+        if (entry == null) {
+            doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
+        } else {
+            doSend(exchange, contentType, archiveName, entry, cachePolicy, true);
+        }
+    }
+
+    private void doSend(HttpExchange exchange, String contentType, String archiveName,
+            EntryIndex.Entry entry, CachePolicy cachePolicy, boolean retry) throws IOException {
+        var requestHeaders = exchange.getRequestHeaders();
+        var range = requestHeaders.getFirst("Range");
+        // Ranges are ranges of the unencoded entry, requests for them never get gzip.
+        var acceptsGzip = range == null && GzipPassthrough.acceptsGzip(requestHeaders);
+        if (retry) {
+            hotSet.record(archiveName, entry.getName(), acceptsGzip);
+        }
+        var key = new HotEntryCache.Key(entry.getArchiveIdentity(), entry.getName(), acceptsGzip);
+        var cached = hotEntries.get(key);
+        if (cached != null) {
+            doSendCached(exchange, contentType, cached, cachePolicy);
+            return;
+        }
+
         var h = exchange.getResponseHeaders();
-        h.add("Content-Type", contentType);
-        var contentLength = -1;
-        InputStream source;
-        var status = HTTP_OK;
-        try (var zf = new ZipFile(archiveName)) {
-            var ze = zf.getEntry(entryName);
-            if (ze != null) {
-                contentLength = Long.valueOf(ze.getSize()).intValue();
-                source = zf.getInputStream(ze);
+        var etag = HttpCaching.entityTag(entry.getArchiveIdentity(), entry.getCrc(),
+                entry.getSize());
+        var lastModified = entry.getTime();
+        var deflated = entry.getMethod() == ZipDirectory.DEFLATED;
+        var gzip = deflated && acceptsGzip;
+        if (deflated) {
+            h.set("Vary", "Accept-Encoding");
+        }
+        if (gzip) {
+            etag = HttpCaching.gzipEntityTag(etag);
+        }
+        h.set("Accept-Ranges", "bytes");
+        HttpCaching.setCacheHeaders(h, etag, lastModified, cachePolicy);
+        if (HttpCaching.isNotModified(requestHeaders, etag, lastModified)) {
+            exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+
+        var extracted = extractedEntries.get(archiveName, key);
+        if (extracted != null && doSendExtracted(exchange, contentType, extracted, key, etag,
+                lastModified, gzip, deflated, range)) {
+            return;
+        }
+
+        // Only reads from the archive count against the bulkhead of large entries, a retry runs
+        // under the place of the first attempt.
+        var admittedAt = -1L;
+        if (retry && largeEntries != null && entry.getSize() > largeEntryBytes) {
+            if (!largeEntries.tryAcquire()) {
+                doSendServiceUnavailable(exchange);
+                return;
+            }
+            admittedAt = System.nanoTime();
+        }
+        try (var archive = ArchiveCache.getInstance().acquire(archiveName)) {
+            if (archive.getIdentity() != entry.getArchiveIdentity()) {
+                // The archive changed after it was indexed, index the version that is open.
+                var current = entryIndex.find(archive, entry.getName());
+                if (current == null) {
+                    clearEntryHeaders(exchange);
+                    doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
+                } else if (retry) {
+                    doSend(exchange, contentType, archiveName, current, cachePolicy, false);
+                } else {
+                    clearEntryHeaders(exchange);
+                    throw new IOException("Archive " + archiveName + " keeps changing");
+                }
+                return;
+            }
+
+            if (extractedEntries.fits(gzip ? GzipPassthrough.contentLength(
+                    entry.getCompressedSize()) : entry.getSize())) {
+                extracted = extractedEntries.extract(archiveName, key,
+                        out -> writeEntry(archive, entry, gzip, out));
+                if (extracted != null && doSendExtracted(exchange, contentType, extracted, key,
+                        etag, lastModified, gzip, deflated, range)) {
+                    return;
+                }
+            }
+
+            if (range != null && HttpCaching.isRangeCurrent(requestHeaders, etag, lastModified)) {
+                var ranges = ByteRanges.parse(range, entry.getSize());
+                if (ranges != null) {
+                    try (var writer = newRangeWriter(archive, entry, key)) {
+                        doSendRanges(exchange, contentType, entry.getSize(), ranges, writer);
+                    }
+                    return;
+                }
+            }
+
+            h.add("Content-Type", contentType);
+            var contentLength = gzip ? GzipPassthrough.contentLength(entry.getCompressedSize())
+                    : entry.getSize();
+            var capture = hotEntries.newCapture(contentLength);
+            if (gzip) {
+                h.set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(HTTP_OK, contentLength == 0 ? -1 : contentLength);
+            try (var out = capture == null ? exchange.getResponseBody()
+                    : new TeeOutputStream(exchange.getResponseBody(), capture)) {
+                writeEntry(archive, entry, gzip, out);
+            }
+            exchange.close();
+            if (capture != null) {
+                hotEntries.put(key, new CachedEntry(capture.toContent(), etag, lastModified,
+                        gzip, deflated));
+            }
+        } finally {
+            if (admittedAt >= 0L) {
+                largeEntries.release(System.nanoTime() - admittedAt);
+            }
+        }
+    }
+
+    // Turns a request away with a 503, without the validators and cache headers of the entry.
+    private void doSendServiceUnavailable(HttpExchange exchange) throws IOException {
+        clearEntryHeaders(exchange);
+        exchange.getResponseHeaders().set("Retry-After", AdmissionFilter.retryAfter());
+        doSend(exchange, contentTypeHtml, serviceUnavailable, HTTP_SERVICE_UNAVAILABLE);
+    }
+
+    // Drops the headers already set for the entry so an error response is not cached in its place.
+    private static void clearEntryHeaders(HttpExchange exchange) {
+        var h = exchange.getResponseHeaders();
+        h.remove("ETag");
+        h.remove("Last-Modified");
+        h.remove("Accept-Ranges");
+        h.remove("Vary");
+        h.set("Cache-Control", "no-store");
+    }
+
+    // Writes the entry as it's served, gzip-encoded or as is.
+    private void writeEntry(ArchiveCache.ArchiveHandle archive, EntryIndex.Entry entry,
+            boolean gzip, OutputStream out) throws IOException {
+        if (archiveReader == ArchiveReader.MAPPED) {
+            var mapped = archive.getMappedArchive();
+            if (gzip) {
+                GzipPassthrough.write(out, mapped, entry);
             } else {
-                h.remove("Content-Type");
-                h.add("Content-Type", contentTypeHtml);
-                status = HTTP_NOT_FOUND;
-                byte[] content = notFound;
-                source = new ByteArrayInputStream(content);
-                contentLength = content.length;
+                mapped.writeEntry(entry, out);
+            }
+        } else if (gzip) {
+            GzipPassthrough.write(out, archive.getChannel(), entry);
+        } else {
+            var zf = archive.getZipFile();
+            try (var in = zf.getInputStream(zf.getEntry(entry.getName()))) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    // Sends the entry from the file it was extracted to, returns false if the file was evicted
+    // before it could be opened. The response headers other than the content's are already set.
+    private boolean doSendExtracted(HttpExchange exchange, String contentType, Path extracted,
+            HotEntryCache.Key key, String etag, long lastModified, boolean gzip, boolean deflated,
+            String range) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(extracted, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try (channel) {
+            var length = channel.size();
+            if (range != null && HttpCaching.isRangeCurrent(exchange.getRequestHeaders(), etag,
+                    lastModified)) {
+                var ranges = ByteRanges.parse(range, length);
+                if (ranges != null) {
+                    doSendRanges(exchange, contentType, length, ranges,
+                            (start, end, out) -> transfer(channel, start, end - start + 1, out));
+                    return true;
+                }
+            }
+            var h = exchange.getResponseHeaders();
+            h.add("Content-Type", contentType);
+            if (gzip) {
+                h.set("Content-Encoding", "gzip");
+            }
+            var capture = hotEntries.newCapture(length);
+            exchange.sendResponseHeaders(HTTP_OK, length == 0 ? -1 : length);
+            try (var out = capture == null ? exchange.getResponseBody()
+                    : new TeeOutputStream(exchange.getResponseBody(), capture)) {
+                transfer(channel, 0L, length, out);
+            }
+            exchange.close();
+            if (capture != null) {
+                hotEntries.put(key, new CachedEntry(capture.toContent(), etag, lastModified,
+                        gzip, deflated));
+            }
+        }
+        return true;
+    }
+
+    private void doSendCached(HttpExchange exchange, String contentType, CachedEntry cached,
+            CachePolicy cachePolicy) throws IOException {
+        var h = exchange.getResponseHeaders();
+        if (cached.isVaryByEncoding()) {
+            h.set("Vary", "Accept-Encoding");
+        }
+        h.set("Accept-Ranges", "bytes");
+        HttpCaching.setCacheHeaders(h, cached.getEtag(), cached.getLastModified(), cachePolicy);
+        var requestHeaders = exchange.getRequestHeaders();
+        if (HttpCaching.isNotModified(requestHeaders, cached.getEtag(),
+                cached.getLastModified())) {
+            exchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+            exchange.close();
+            return;
+        }
+        var range = requestHeaders.getFirst("Range");
+        if (range != null && !cached.isGzip() && HttpCaching.isRangeCurrent(requestHeaders,
+                cached.getEtag(), cached.getLastModified())) {
+            var content = cached.getContent();
+            var ranges = ByteRanges.parse(range, content.length);
+            if (ranges != null) {
+                doSendRanges(exchange, contentType, content.length, ranges,
+                        new ContentRangeWriter(content));
+                return;
             }
-            exchange.sendResponseHeaders(status, contentLength);
-            source.transferTo(exchange.getResponseBody());
+        }
+        h.add("Content-Type", contentType);
+        if (cached.isGzip()) {
+            h.set("Content-Encoding", "gzip");
+        }
+        var content = cached.getContent();
+        exchange.sendResponseHeaders(HTTP_OK, content.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(content);
         }
         exchange.close();
     }
 
+    // Returns the fastest way to write ranges of the entry: stored entries are read where they
+    // are, compressed entries from an inflated copy if it fits in memory.
+    private RangeWriter newRangeWriter(ArchiveCache.ArchiveHandle archive, EntryIndex.Entry entry,
+            HotEntryCache.Key key) throws IOException {
+        if (entry.getMethod() == ZipDirectory.STORED) {
+            var channel = archive.getChannel();
+            var dataOffset = ZipDirectory.dataOffset(channel, entry.getLocalHeaderOffset());
+            return (start, end, out) -> transfer(channel, dataOffset + start, end - start + 1, out);
+        }
+
+        var inflatedEntries = InflatedEntryCache.getInstance();
+        var zf = archive.getZipFile();
+        if (inflatedEntries.fits(entry.getSize())) {
+            var inflated = inflatedEntries.get(key);
+            if (inflated == null) {
+                try (var in = zf.getInputStream(zf.getEntry(entry.getName()))) {
+                    inflated = in.readNBytes((int) entry.getSize());
+                }
+                inflatedEntries.put(key, inflated);
+            }
+            return new ContentRangeWriter(inflated);
+        }
+        return new InflatingRangeWriter(zf.getInputStream(zf.getEntry(entry.getName())));
+    }
+
+    // Sends a 206 response with one range or a multipart/byteranges of several, or a 416 if no
+    // range can be satisfied.
+    private void doSendRanges(HttpExchange exchange, String contentType, long length,
+            ByteRanges ranges, RangeWriter writer) throws IOException {
+        var h = exchange.getResponseHeaders();
+        if (ranges.size() == 0) {
+            h.set("Content-Range", "bytes */" + length);
+            exchange.sendResponseHeaders(HTTP_RANGE_NOT_SATISFIABLE, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[][] partHeaders = null;
+        byte[] closeDelimiter = null;
+        long contentLength;
+        if (ranges.size() == 1) {
+            h.add("Content-Type", contentType);
+            h.set("Content-Range", ranges.getContentRange(0, length));
+            contentLength = ranges.getLength(0);
+        } else {
+            var boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            h.add("Content-Type", "multipart/byteranges; boundary=" + boundary);
+            partHeaders = new byte[ranges.size()][];
+            contentLength = 0L;
+            for (var i = 0; i < ranges.size(); i++) {
+                partHeaders[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: " + ranges.getContentRange(i, length) + "\r\n\r\n")
+                                .getBytes(StandardCharsets.ISO_8859_1);
+                contentLength += partHeaders[i].length + ranges.getLength(i);
+            }
+            closeDelimiter = ("\r\n--" + boundary + "--\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1);
+            contentLength += closeDelimiter.length;
+        }
+        LOGGER.log(DEBUG, () -> "[status=206, ranges=" + ranges.size() + ", length=" + length
+                + "]");
+        exchange.sendResponseHeaders(HTTP_PARTIAL_CONTENT, contentLength);
+        try (var out = exchange.getResponseBody()) {
+            for (var i = 0; i < ranges.size(); i++) {
+                if (partHeaders != null) {
+                    out.write(partHeaders[i]);
+                }
+                writer.write(ranges.getStart(i), ranges.getEnd(i), out);
+            }
+            if (closeDelimiter != null) {
+                out.write(closeDelimiter);
+            }
+        }
+        exchange.close();
+    }
+
+    // Copies part of a file to the response body. The body is a stream wrapped by the filters, not
+    // the socket, so transferTo can't send the file without copying it: it reads the file through a
+    // heap buffer into the stream. It's used for its positional reads, which leave the position of
+    // the channel alone so every range of a response can read from the same channel.
+    private static void transfer(FileChannel channel, long position, long count, OutputStream out)
+            throws IOException {
+        var target = Channels.newChannel(out);
+        while (count > 0) {
+            var n = channel.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
     void doSend(HttpExchange exchange, String contentType, byte[] content, int status)
             throws IOException {
         var h = exchange.getResponseHeaders();
         h.add("Content-Type", contentType);
 
         var contentLength = (content.length == 0) ? -1 : content.length;
-        LOGGER.log(DEBUG, format("[status=%d, contentType=%s, contentLength=%d]", status,
-                contentType, contentLength));
+        LOGGER.log(DEBUG, () -> "[status=" + status + ", contentType=" + contentType
+                + ", contentLength=" + contentLength + "]");
         exchange.sendResponseHeaders(status, contentLength);
         if (contentLength > 0) {
             try (OutputStream out = exchange.getResponseBody()) {
@@ -98,4 +478,72 @@ abstract class JavadocHandler implements HttpHandler {
         }
         exchange.close();
     }
+
+    /**
+     * Writes ranges of an entry, in ascending order.
+     */
+    private interface RangeWriter extends Closeable {
+
+        /**
+         * Write a range of the entry.
+         *
+         * @param start first byte of the range.
+         * @param end   last byte of the range, inclusive.
+         * @param out   stream to write to.
+         * @throws IOException if an I/O error occurs.
+         */
+        void write(long start, long end, OutputStream out) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    private static final class ContentRangeWriter implements RangeWriter {
+
+        private final byte[] content;
+
+        private ContentRangeWriter(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public void write(long start, long end, OutputStream out) throws IOException {
+            out.write(content, (int) start, (int) (end - start + 1));
+        }
+    }
+
+    // Inflates the entry once for all the ranges, skipping what's between them.
+    private static final class InflatingRangeWriter implements RangeWriter {
+
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[8192];
+
+        private long position;
+
+        private InflatingRangeWriter(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void write(long start, long end, OutputStream out) throws IOException {
+            in.skipNBytes(start - position);
+            var remaining = end - start + 1;
+            while (remaining > 0) {
+                var n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of entry data");
+                }
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+            position = end + 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
 }
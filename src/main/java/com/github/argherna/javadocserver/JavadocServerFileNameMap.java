@@ -3,22 +3,32 @@ package com.github.argherna.javadocserver;
 import static java.lang.System.Logger.Level.DEBUG;
 import static java.lang.System.Logger.Level.INFO;
 import static java.util.Objects.nonNull;
-import static java.util.Objects.isNull;
+import static java.util.Objects.requireNonNullElse;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.FileNameMap;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.ResourceBundle;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Resolves content types from file extensions with a table built once from
+ * {@code content-types.properties} (or the file named by the {@value #SYS_PROP_CONTENT_TYPES}
+ * system property).
+ *
+ * <p>
+ * Lookups don't allocate. Extensions are matched case-insensitively against the end of the file
+ * name in an open-addressing table. Unknown extensions resolve to {@value #DEFAULT_CONTENT_TYPE}
+ * and are remembered in a small table so that each is only logged once. Text types get a
+ * {@code charset} parameter, {@value #DEFAULT_CHARSET} unless the
+ * {@value #SYS_PROP_CHARSET} system property says otherwise (set it empty to leave the parameter
+ * off).
+ */
 class JavadocServerFileNameMap implements FileNameMap {
 
     private static final System.Logger LOGGER = System.getLogger(
@@ -28,61 +38,94 @@ class JavadocServerFileNameMap implements FileNameMap {
     private static final String SYS_PROP_CONTENT_TYPES =
             "com.github.argherna.javadocserver.content.types.user.table";
 
+    static final String SYS_PROP_CHARSET =
+            "com.github.argherna.javadocserver.content.types.charset";
+
+    static final String DEFAULT_CHARSET = "utf-8";
+
+    static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
     private static final String DEFAULT_CONTENT_TYPES_STREAM_NAME =
             "/com/github/argherna/javadocserver/content-types.properties";
 
-    private static JavadocServerFileNameMap instance;
+    private static final List<String> TEXT_TYPES = List.of("application/javascript",
+            "application/json", "application/xml", "image/svg+xml");
 
-    private final Map<String, ContentTypeEntry> contentTypes;
+    private static final int UNKNOWN_EXTENSIONS_SIZE = 256;
+
+    private static final class InstanceHolder {
+        private static final JavadocServerFileNameMap INSTANCE = new JavadocServerFileNameMap(
+                requireNonNullElse(Util.getSystemProperty(SYS_PROP_CHARSET), DEFAULT_CHARSET));
+    }
 
-    private JavadocServerFileNameMap() {
-        contentTypes = new ConcurrentHashMap<>();
+    // Open-addressing table of lower case extensions without the dot, and their content types.
+    private final String[] extensions;
+
+    private final String[] contentTypes;
+
+    // Direct-mapped table of the unknown extensions that have been logged. Entries are replaced
+    // when another one maps to the same slot, so it stays bounded.
+    private final String[] unknownExtensions = new String[UNKNOWN_EXTENSIONS_SIZE];
+
+    private JavadocServerFileNameMap(String charset) {
+        var contentTypesByExtension = new LinkedHashMap<String, String>();
         try (var is = getContentTypesInputStream()) {
             var props = new Properties();
             props.load(is);
             for (var key : props.stringPropertyNames()) {
                 var contentTypeEntry = toContentTypeEntry(key, props.getProperty(key));
                 for (var extension : contentTypeEntry.getExtensions()) {
-                    contentTypes.put(extension, contentTypeEntry);
+                    contentTypesByExtension.put(extension, contentTypeEntry.getMimetype());
                 }
             }
         } catch (IOException e) {
             LOGGER.log(INFO, "logger.info.filetypesloadfail", e);
-            contentTypes.put(".css", new ContentTypeEntry("text/css", null, List.of(".css"), null,
-                    ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".gif", new ContentTypeEntry("image/gif", null, List.of(".gif"), null,
-                    ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".html", new ContentTypeEntry("text/html", null, List.of(".html"),
-                    null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".jpg", new ContentTypeEntry("image/jpeg", null, List.of(".jpg"), null,
-                    ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".js", new ContentTypeEntry("application/javascript", null,
-                    List.of(".js"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".png", new ContentTypeEntry("image/png", null, List.of(".png"), null,
-                    ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".svg", new ContentTypeEntry("image/svg+xml", null, List.of(".svg"),
-                    null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".woff", new ContentTypeEntry("font/woff", null,
-                    List.of(".woff"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".woff2", new ContentTypeEntry("font/woff2", null,
-                    List.of(".woff2"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".eot", new ContentTypeEntry("application/vnd.ms-fontobject", null,
-                    List.of(".eot"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".ttf", new ContentTypeEntry("font/ttf", null,
-                    List.of(".ttf"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".otf", new ContentTypeEntry("font/otf", null,
-                    List.of(".otf"), null, ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".xml", new ContentTypeEntry("text/xml", null, List.of(".xml"), null,
-                    ContentTypeEntry.Action.UNKNOWN, null));
-            contentTypes.put(".zip", new ContentTypeEntry("application/zip", null, List.of(".zip"),
-                    null, ContentTypeEntry.Action.UNKNOWN, null));
-            LOGGER.log(INFO, "logger.info.filetypes.fallback", contentTypes.toString());
+            contentTypesByExtension.put(".css", "text/css");
+            contentTypesByExtension.put(".gif", "image/gif");
+            contentTypesByExtension.put(".html", "text/html");
+            contentTypesByExtension.put(".jpg", "image/jpeg");
+            contentTypesByExtension.put(".js", "application/javascript");
+            contentTypesByExtension.put(".json", "application/json");
+            contentTypesByExtension.put(".png", "image/png");
+            contentTypesByExtension.put(".svg", "image/svg+xml");
+            contentTypesByExtension.put(".woff", "font/woff");
+            contentTypesByExtension.put(".woff2", "font/woff2");
+            contentTypesByExtension.put(".eot", "application/vnd.ms-fontobject");
+            contentTypesByExtension.put(".ttf", "font/ttf");
+            contentTypesByExtension.put(".otf", "font/otf");
+            contentTypesByExtension.put(".xml", "text/xml");
+            contentTypesByExtension.put(".zip", "application/zip");
+            LOGGER.log(INFO, "logger.info.filetypesfallback", contentTypesByExtension.toString());
+        }
+
+        var capacity = Integer.highestOneBit(Math.max(4, contentTypesByExtension.size() * 2)) * 2;
+        extensions = new String[capacity];
+        contentTypes = new String[capacity];
+        for (var entry : contentTypesByExtension.entrySet()) {
+            var extension = entry.getKey().strip();
+            if (extension.startsWith(".")) {
+                extension = extension.substring(1);
+            }
+            if (extension.isEmpty()) {
+                continue;
+            }
+            var mimetype = entry.getValue();
+            if (!charset.isEmpty()
+                    && (mimetype.startsWith("text/") || TEXT_TYPES.contains(mimetype))) {
+                mimetype = mimetype + "; charset=" + charset;
+            }
+            extension = lowerCase(extension);
+            var slot = slotFor(hash(extension));
+            while (extensions[slot] != null && !extensions[slot].equals(extension)) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            extensions[slot] = extension;
+            contentTypes[slot] = mimetype;
         }
     }
 
     private InputStream getContentTypesInputStream() throws IOException {
-        var userTableFilename = AccessController.doPrivileged(
-                (PrivilegedAction<String>) () -> System.getProperty(SYS_PROP_CONTENT_TYPES));
+        var userTableFilename = Util.getSystemProperty(SYS_PROP_CONTENT_TYPES);
         if (LOGGER.isLoggable(DEBUG)) {
             var fname = nonNull(userTableFilename) ? userTableFilename
                     : DEFAULT_CONTENT_TYPES_STREAM_NAME;
@@ -129,24 +172,88 @@ class JavadocServerFileNameMap implements FileNameMap {
     }
 
     static FileNameMap getInstance() {
-        if (isNull(instance)) {
-            instance = new JavadocServerFileNameMap();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
+    /**
+     * Return the content type for a file name, or {@value #DEFAULT_CONTENT_TYPE} if the extension
+     * of the file name isn't known.
+     *
+     * @param fileName file name or path, like {@code docs/api/index.html}.
+     * @return content type, with a {@code charset} parameter for text types.
+     */
     @Override
     public String getContentTypeFor(String fileName) {
-        if (fileName.lastIndexOf(".") == -1) {
-            LOGGER.log(INFO, "logger.finer.nofileext", fileName);
-            return "application/octet-stream";
+        // Scans back from the end of the name to the dot, hashing the extension on the way.
+        var start = fileName.length();
+        var hash = 0;
+        while (true) {
+            var c = start == 0 ? '/' : fileName.charAt(start - 1);
+            if (c == '.') {
+                break;
+            } else if (c == '/') {
+                if (LOGGER.isLoggable(DEBUG)) {
+                    LOGGER.log(DEBUG, "logger.finer.nofileext", fileName);
+                }
+                return DEFAULT_CONTENT_TYPE;
+            }
+            hash = 31 * hash + toLowerCase(c);
+            start--;
         }
-        var ext = fileName.substring(fileName.lastIndexOf("."));
-        var contentTypeEntry = contentTypes.get(ext);
-        if (isNull(contentTypeEntry)) {
+
+        for (var slot = slotFor(hash); extensions[slot] != null;
+                slot = (slot + 1) & (extensions.length - 1)) {
+            if (matches(fileName, start, extensions[slot])) {
+                return contentTypes[slot];
+            }
+        }
+        var unknownSlot = (hash ^ (hash >>> 16)) & (UNKNOWN_EXTENSIONS_SIZE - 1);
+        var unknown = unknownExtensions[unknownSlot];
+        if (unknown == null || !matches(fileName, start, unknown)) {
+            unknownExtensions[unknownSlot] = lowerCase(fileName.substring(start));
             LOGGER.log(INFO, "logger.info.nocontenttype", fileName);
         }
-        return nonNull(contentTypeEntry) ? contentTypeEntry.getMimetype() : null;
+        return DEFAULT_CONTENT_TYPE;
+    }
+
+    private int slotFor(int hash) {
+        return (hash ^ (hash >>> 16)) & (extensions.length - 1);
     }
 
+    // Returns true if the file name ends with the lower case extension, in any case.
+    private static boolean matches(String fileName, int start, String extension) {
+        var length = extension.length();
+        if (fileName.length() - start != length) {
+            return false;
+        }
+        for (var i = 0; i < length; i++) {
+            if (toLowerCase(fileName.charAt(start + i)) != extension.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Hashes the extension from its last character to its first, the order getContentTypeFor
+    // reads it in.
+    private static int hash(String extension) {
+        var h = 0;
+        for (var i = extension.length() - 1; i >= 0; i--) {
+            h = 31 * h + toLowerCase(extension.charAt(i));
+        }
+        return h;
+    }
+
+    private static String lowerCase(String extension) {
+        var chars = extension.toCharArray();
+        for (var i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    // Extensions are ASCII, lower cases only ASCII letters so that no locale gets in the way.
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
 }
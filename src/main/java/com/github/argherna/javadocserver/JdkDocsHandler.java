@@ -1,11 +1,8 @@
 package com.github.argherna.javadocserver;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.StringJoiner;
-import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
@@ -13,28 +10,46 @@ import com.sun.net.httpserver.HttpExchange;
  */
 class JdkDocsHandler extends JavadocHandler {
 
-    private static final int AFTER_PATH_AND_KEY_IDX = 2;
+    JdkDocsHandler() {
+        this(ArchiveReader.ZIPFILE);
+    }
 
-    private static final int MIN_PATH_ELEMENTS = 3;
+    JdkDocsHandler(ArchiveReader archiveReader) {
+        super(archiveReader);
+    }
+
+    JdkDocsHandler(ArchiveReader archiveReader, Bulkhead largeEntries) {
+        super(archiveReader, largeEntries);
+    }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        var pathElements = Arrays.asList(exchange.getRequestURI().getPath().split(SYSPROP_FILE_SEP))
-                .stream().filter(pe -> pe != null && !pe.isEmpty()).collect(Collectors.toList());
-        var contentType = contentTypeHtml;
-        var javadocArchiveName = Preferences.userNodeForPackage(ServerMain.class)
-                .node("jdk-docs").get(pathElements.get(1), "");
-        if (javadocArchiveName.isEmpty()) {
-            doSend(exchange, contentType, notFound, HTTP_NOT_FOUND);
-        } else if (pathElements.size() < MIN_PATH_ELEMENTS) {
-            doSend(exchange, contentType, badRequest, HTTP_BAD_REQUEST);
+        var route = Route.parse(requestPath(exchange));
+        if (route == null || route.getKind() != Route.Kind.JDK) {
+            doSend(exchange, contentTypeHtml, badRequest, HTTP_BAD_REQUEST);
+            return;
+        }
+        var javadocArchiveName = findArchive(config.get(), route);
+        if (javadocArchiveName == null) {
+            javadocArchiveName = findArchive(config.refresh(), route);
+        }
+        if (javadocArchiveName == null) {
+            doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
         } else {
-            var sj = new StringJoiner(SYSPROP_FILE_SEP);
-            pathElements.subList(AFTER_PATH_AND_KEY_IDX, pathElements.size()).stream()
-                    .forEach(p -> sj.add(p));
-            var filename = sj.toString();
-            contentType = JavadocServerFileNameMap.getInstance().getContentTypeFor(filename);
-            doSend(exchange, contentType, javadocArchiveName, filename);
+            var entryName = route.getEntryName();
+            doSend(exchange, JavadocServerFileNameMap.getInstance().getContentTypeFor(entryName),
+                    javadocArchiveName, entryName, CachePolicy.IMMUTABLE);
+        }
+    }
+
+    // Compares the keys with the route rather than looking the key up, so that the key doesn't
+    // have to be cut out of the path. There are only ever a few keys.
+    private static String findArchive(ServerConfig.Snapshot snapshot, Route route) {
+        for (var jdkDocs : snapshot.getJdkDocs().entrySet()) {
+            if (route.keyEquals(jdkDocs.getKey())) {
+                return jdkDocs.getValue();
+            }
         }
+        return null;
     }
 }
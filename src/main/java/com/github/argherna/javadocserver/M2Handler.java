@@ -1,55 +1,77 @@
 package com.github.argherna.javadocserver;
 
-import static java.lang.String.format;
 import static java.lang.System.Logger.Level.DEBUG;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.StringJoiner;
-import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
+import com.github.argherna.javadocserver.HttpCaching.CachePolicy;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
  * Renders Javadoc pages from archives in the maven repositories.
+ *
+ * <p>
+ * Besides an actual version, the version of a route can be {@code latest}, {@code latest-release}
+ * or a Maven version range like {@code [1.0,2.0)}, resolved to the highest matching version in
+ * the repositories.
  */
 class M2Handler extends JavadocHandler {
 
-    private static final Integer MIN_PATH_ELEMENTS = 4;
-
     private static final System.Logger LOGGER = System.getLogger(M2Handler.class.getName());
 
+    private final MavenRepositories repositories;
+
+    M2Handler(MavenRepositories repositories) {
+        this(repositories, ArchiveReader.ZIPFILE);
+    }
+
+    M2Handler(MavenRepositories repositories, ArchiveReader archiveReader) {
+        this(repositories, archiveReader, null);
+    }
+
+    M2Handler(MavenRepositories repositories, ArchiveReader archiveReader,
+            Bulkhead largeEntries) {
+        super(archiveReader, largeEntries);
+        this.repositories = repositories;
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        var m2Repos = Preferences.userNodeForPackage(ServerMain.class).node("m2-repos");
-        var m2RepoPath = m2Repos.get("default", "");
-        var pathElements = Arrays.stream(exchange.getRequestURI().getPath().split(SYSPROP_FILE_SEP))
-                .filter(pe -> pe != null && !pe.isEmpty()).collect(Collectors.toList());
+        var route = Route.parse(requestPath(exchange));
 
-        if (m2RepoPath.isEmpty()) {
+        if (!repositories.hasRepositories()) {
             doSend(exchange, contentTypeHtml, gettingStarted, HTTP_OK);
-        } else if (pathElements.size() < MIN_PATH_ELEMENTS) {
+        } else if (route == null || route.getKind() != Route.Kind.M2) {
             doSend(exchange, contentTypeHtml, badRequest, HTTP_BAD_REQUEST);
         } else {
-            var filename =
-                    toMavenCoordinates(m2RepoPath, pathElements.subList(1, pathElements.size()));
-            var fpJoiner = new StringJoiner(SYSPROP_FILE_SEP);
-            pathElements.subList(MIN_PATH_ELEMENTS, pathElements.size()).stream()
-                    .forEach(pe -> fpJoiner.add(pe));
-            var docPath = fpJoiner.toString();
-            LOGGER.log(DEBUG, () -> format("[filename=%s, docPath=%s]", filename, docPath));
-            doSend(exchange, JavadocServerFileNameMap.getInstance().getContentTypeFor(docPath), filename, docPath);
+            var cachePolicy = route.isSnapshot() ? CachePolicy.REVALIDATE : CachePolicy.IMMUTABLE;
+            MavenVersion.Selector selector;
+            try {
+                selector = MavenVersion.Selector.parse(route.getVersion());
+            } catch (IllegalArgumentException e) {
+                doSend(exchange, contentTypeHtml, badRequest, HTTP_BAD_REQUEST);
+                return;
+            }
+            if (selector != null) {
+                // Served from the resolved version in place, what it resolves to changes.
+                var version = repositories.resolveVersion(route.getArtifact(), selector);
+                LOGGER.log(DEBUG, () -> "[selector=" + selector + ", version=" + version + "]");
+                if (version == null) {
+                    doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
+                    return;
+                }
+                route = route.withVersion(version);
+                cachePolicy = CachePolicy.REVALIDATE;
+            }
+            var filename = repositories.resolve(route);
+            var docPath = route.getEntryName();
+            LOGGER.log(DEBUG, () -> "[filename=" + filename + ", docPath=" + docPath + "]");
+            if (filename == null) {
+                doSend(exchange, contentTypeHtml, notFound, HTTP_NOT_FOUND);
+                return;
+            }
+            doSend(exchange, JavadocServerFileNameMap.getInstance().getContentTypeFor(docPath),
+                    filename, docPath, cachePolicy);
         }
     }
-
-    private String toMavenCoordinates(String baseDirname, List<String> components) {
-        return new StringJoiner(SYSPROP_FILE_SEP).add(baseDirname)
-                .add(components.get(0).replace(".", SYSPROP_FILE_SEP)).add(components.get(1))
-                .add(components.get(2)).add(new StringJoiner("-").add(components.get(1))
-                        .add(components.get(2)).add("javadoc.jar").toString())
-                .toString();
-    }
-
 }
@@ -0,0 +1,137 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Zip archive mapped into memory and read without locks.
+ *
+ * <p>
+ * {@link java.util.zip.ZipFile} serializes readers of an archive on an internal lock and copies
+ * entries through heap buffers. A mapped archive is shared by every request thread: entries are
+ * read with absolute gets on the mapping, which don't touch the buffer's position, so any number of
+ * threads can read the same archive at once. STORED entries are copied from the mapping to the
+ * response, and DEFLATED entries are inflated straight from the mapping. Inflaters and copy buffers
+ * are pooled, so serving an entry doesn't allocate beyond the response.
+ *
+ * <p>
+ * Archives are mapped whole, so archives larger than 2 GiB can't be mapped.
+ */
+class MappedArchive {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 4;
+
+    private static final ObjectPool<Inflater> INFLATERS =
+            new ObjectPool<>(POOL_SIZE, () -> new Inflater(true), Inflater::end);
+
+    private static final ObjectPool<byte[]> BUFFERS =
+            new ObjectPool<>(POOL_SIZE, () -> new byte[BUFFER_SIZE], b -> {
+            });
+
+    // Inflating with nowrap may need one extra byte after the end of the compressed data.
+    private static final byte[] DUMMY_INPUT = new byte[1];
+
+    private final ByteBuffer buffer;
+
+    private MappedArchive(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map the archive open on the given channel into memory.
+     *
+     * @param channel channel open on the archive.
+     * @return mapped archive.
+     * @throws IOException if the archive can't be mapped.
+     */
+    static MappedArchive map(FileChannel channel) throws IOException {
+        var size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Archive is too large to map");
+        }
+        var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+        return new MappedArchive(buffer);
+    }
+
+    /**
+     * Write the entry's data as it's stored in the archive.
+     *
+     * @param entry entry to write.
+     * @param out   stream to write to.
+     * @throws IOException if an I/O error occurs or the entry is malformed.
+     */
+    void writeRaw(EntryIndex.Entry entry, OutputStream out) throws IOException {
+        var offset = dataOffset(entry);
+        var remaining = entry.getCompressedSize();
+        var chunk = BUFFERS.take();
+        try {
+            while (remaining > 0) {
+                var n = (int) Math.min(chunk.length, remaining);
+                buffer.get((int) offset, chunk, 0, n);
+                out.write(chunk, 0, n);
+                offset += n;
+                remaining -= n;
+            }
+        } finally {
+            BUFFERS.give(chunk);
+        }
+    }
+
+    /**
+     * Write the entry's uncompressed data.
+     *
+     * @param entry entry to write.
+     * @param out   stream to write to.
+     * @throws IOException if an I/O error occurs or the entry is malformed.
+     */
+    void writeEntry(EntryIndex.Entry entry, OutputStream out) throws IOException {
+        var method = entry.getMethod();
+        if (method == ZipDirectory.STORED) {
+            writeRaw(entry, out);
+            return;
+        } else if (method != ZipDirectory.DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method);
+        }
+
+        var offset = (int) dataOffset(entry);
+        var input = buffer.slice(offset, (int) entry.getCompressedSize());
+        var inflater = INFLATERS.take();
+        var chunk = BUFFERS.take();
+        try {
+            inflater.setInput(input);
+            var dummyGiven = false;
+            while (!inflater.finished()) {
+                var n = inflater.inflate(chunk);
+                if (n > 0) {
+                    out.write(chunk, 0, n);
+                } else if (inflater.needsInput() && !dummyGiven) {
+                    inflater.setInput(DUMMY_INPUT);
+                    dummyGiven = true;
+                } else if (inflater.needsInput() || inflater.needsDictionary()) {
+                    throw new ZipException("Unexpected end of entry data");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.reset();
+            INFLATERS.give(inflater);
+            BUFFERS.give(chunk);
+        }
+    }
+
+    private long dataOffset(EntryIndex.Entry entry) throws IOException {
+        var offset = ZipDirectory.dataOffset(buffer, entry.getLocalHeaderOffset());
+        if (offset + entry.getCompressedSize() > buffer.capacity()) {
+            throw new ZipException("Entry data extends past the end of the archive");
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,400 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Long-lived, in-memory catalog of the javadoc archives in a Maven repository.
+ *
+ * <p>
+ * The catalog scans the repository once when it's started and then keeps itself up to date from
+ * {@link WatchService} events for every directory in the repository. Watch events can be lost (the
+ * event queue overflows, or the platform limits the number of watched directories), so the whole
+ * repository is also rescanned every {@value #DEFAULT_RECONCILE_SECONDS} seconds (configurable by
+ * setting the {@value #SYS_PROP_RECONCILE_SECONDS} system property) and the catalog is reconciled
+ * with the result.
+ *
+ * <p>
+ * Entries in the catalog are the directory names relative to the repository that contain a
+ * javadoc archive, the same names {@link JavadocArchiveFinder} reports. Scans are run on a
+ * {@link ParallelJavadocArchiveScanner}. The versions of every artifact are kept sorted as entries
+ * come and go, so symbolic versions are resolved without listing any directory.
+ */
+class MavenCatalog implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(MavenCatalog.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_RECONCILE_SECONDS =
+            "com.github.argherna.javadocserver.catalog.reconcile.seconds";
+
+    static final long DEFAULT_RECONCILE_SECONDS = 300L;
+
+    // Descending Maven order, versions Maven considers the same (1.0 and 1.0.0) are both kept.
+    private static final Comparator<MavenVersion> VERSION_ORDER =
+            Comparator.<MavenVersion>reverseOrder().thenComparing(MavenVersion::toString);
+
+    private final NavigableSet<String> directoryNames = new ConcurrentSkipListSet<>();
+
+    private final Collection<String> readOnlyDirectoryNames =
+            Collections.unmodifiableCollection(directoryNames);
+
+    // Versions of every artifact by <groupId>/<artifactId>, highest first.
+    private final Map<String, NavigableSet<MavenVersion>> versions = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    private final Set<Path> watchedPaths = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final CountDownLatch initialScan = new CountDownLatch(1);
+
+    private final Path repositoryDir;
+
+    private final long reconcileSeconds;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ParallelJavadocArchiveScanner scanner;
+
+    private WatchService watchService;
+
+    private volatile boolean closed;
+
+    MavenCatalog(String repositoryDir) {
+        this(repositoryDir, Util.getLongProperty(SYS_PROP_RECONCILE_SECONDS,
+                DEFAULT_RECONCILE_SECONDS));
+    }
+
+    MavenCatalog(String repositoryDir, long reconcileSeconds) {
+        this.repositoryDir = repositoryDir.isEmpty() ? null : Paths.get(repositoryDir);
+        this.reconcileSeconds = Math.max(1L, reconcileSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "javadoc-server-catalog");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scanner = new ParallelJavadocArchiveScanner();
+    }
+
+    /**
+     * Start the initial scan, the watcher and the periodic reconciliation in the background.
+     */
+    void start() {
+        if (repositoryDir == null) {
+            initialScan.countDown();
+            return;
+        }
+        try {
+            watchService = repositoryDir.getFileSystem().newWatchService();
+            var watcher = new Thread(this::watch, "javadoc-server-catalog-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "logger.warning.catalognowatch", e);
+        }
+        scheduler.execute(() -> {
+            try {
+                reconcile();
+            } finally {
+                initialScan.countDown();
+            }
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcile, reconcileSeconds, reconcileSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Return the directory names of the javadoc archives in the repository in sorted order, waiting
+     * for the initial scan to finish if it hasn't yet.
+     *
+     * @return read-only, live view of the directory names.
+     */
+    Collection<String> getJavadocArtifactDirectoryNames() {
+        try {
+            initialScan.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return readOnlyDirectoryNames;
+    }
+
+    /**
+     * Return the directory names of the javadoc archives in the repository in sorted order, waiting
+     * at most the given time for the initial scan to finish.
+     *
+     * @param timeout longest time to wait.
+     * @param unit    unit of the timeout.
+     * @return read-only, live view of the directory names, partial if the initial scan is still
+     *         running.
+     */
+    Collection<String> getJavadocArtifactDirectoryNames(long timeout, TimeUnit unit) {
+        try {
+            initialScan.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return readOnlyDirectoryNames;
+    }
+
+    /**
+     * Return the generation of the catalog, a number that is incremented every time a javadoc
+     * archive is added to or removed from the catalog.
+     *
+     * @return generation of the catalog.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Return the versions of an artifact that have a javadoc archive.
+     *
+     * @param artifact {@code <groupId>/<artifactId>} of the artifact.
+     * @return read-only, live view of the versions, highest first.
+     */
+    Collection<MavenVersion> getVersions(String artifact) {
+        var artifactVersions = versions.get(artifact);
+        return artifactVersions == null ? List.of()
+                : Collections.unmodifiableCollection(artifactVersions);
+    }
+
+    /**
+     * Return the path to the javadoc archive in the named directory.
+     *
+     * @param directoryName directory name as returned from
+     *                      {@link #getJavadocArtifactDirectoryNames()}.
+     * @return path to the javadoc archive.
+     */
+    Path getJavadocArchive(String directoryName) {
+        var dir = repositoryDir.resolve(directoryName);
+        var version = dir.getFileName().toString();
+        var artifactId = dir.getParent().getFileName().toString();
+        return dir.resolve(artifactId + "-" + version + "-javadoc.jar");
+    }
+
+    /**
+     * Return the group id, artifact id and version of the javadoc archive in the named directory.
+     *
+     * @param directoryName directory name as returned from
+     *                      {@link #getJavadocArtifactDirectoryNames()}.
+     * @return group id, artifact id and version.
+     */
+    static String[] toCoordinates(String directoryName) {
+        var parts = directoryName.split(Pattern.quote(File.separator));
+        var groupId = String.join(".", Arrays.asList(parts).subList(0, parts.length - 2));
+        return new String[] {groupId, parts[parts.length - 2], parts[parts.length - 1]};
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        scanner.close();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "logger.warning.catalogclose", e);
+            }
+        }
+    }
+
+    /**
+     * Rescan the whole repository, watch any directory that isn't watched yet and bring the catalog
+     * in line with what's on disk.
+     */
+    void reconcile() {
+        if (closed || repositoryDir == null) {
+            return;
+        }
+        var start = System.nanoTime();
+        var found = new HashSet<String>();
+        if (Files.isDirectory(repositoryDir)) {
+            found.addAll(scan(repositoryDir));
+        }
+        var changed = false;
+        for (var directoryName : directoryNames) {
+            if (!found.contains(directoryName)) {
+                changed |= remove(directoryName);
+            }
+        }
+        changed(addAll(found) | changed);
+        LOGGER.log(DEBUG, "logger.finer.catalogreconciled", directoryNames.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Collection<String> scan(Path dir) {
+        return scanner.scan(repositoryDir, dir, this::register);
+    }
+
+    private void register(Path dir) {
+        if (watchService == null || closed) {
+            return;
+        }
+        if (!watchedPaths.add(dir)) {
+            return;
+        }
+        try {
+            var key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchedDirectories.put(key, dir);
+        } catch (ClosedWatchServiceException e) {
+            // Closing down.
+        } catch (IOException e) {
+            watchedPaths.remove(dir);
+            LOGGER.log(DEBUG, "logger.finer.catalogwatchfail", dir.toString());
+        }
+    }
+
+    private void watch() {
+        LOGGER.log(INFO, "logger.info.catalogwatching", repositoryDir.toString());
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            var dir = watchedDirectories.get(key);
+            if (dir != null) {
+                for (var event : key.pollEvents()) {
+                    handleEvent(dir, event);
+                }
+            }
+            if (!key.reset()) {
+                var removed = watchedDirectories.remove(key);
+                if (removed != null) {
+                    watchedPaths.remove(removed);
+                }
+            }
+        }
+    }
+
+    private void handleEvent(Path dir, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            LOGGER.log(DEBUG, "logger.finer.catalogoverflow");
+            scheduler.execute(this::reconcile);
+            return;
+        }
+        var child = dir.resolve((Path) event.context());
+        var isArchive = JavadocArchiveFinder.isJavadocArchive(child.getFileName())
+                && dir.getNameCount() > repositoryDir.getNameCount();
+        if (event.kind() == ENTRY_DELETE) {
+            if (isArchive) {
+                changed(remove(relativeName(dir)));
+            } else {
+                removeSubtree(child);
+            }
+        } else if (isArchive) {
+            changed(add(relativeName(dir)));
+        } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+            changed(addAll(scan(child)));
+        }
+    }
+
+    private void removeSubtree(Path dir) {
+        if (dir.getNameCount() <= repositoryDir.getNameCount()) {
+            return;
+        }
+        // Forget the watches of the deleted directories so they're watched again if they come back.
+        watchedDirectories.entrySet().removeIf(watched -> {
+            if (!watched.getValue().startsWith(dir)) {
+                return false;
+            }
+            watched.getKey().cancel();
+            watchedPaths.remove(watched.getValue());
+            return true;
+        });
+        var name = relativeName(dir);
+        var removed = remove(name);
+        var prefix = name + dir.getFileSystem().getSeparator();
+        for (var directoryName : directoryNames.subSet(prefix, true,
+                prefix + Character.MAX_VALUE, false)) {
+            removed |= remove(directoryName);
+        }
+        changed(removed);
+    }
+
+    private boolean add(String directoryName) {
+        if (!directoryNames.add(directoryName)) {
+            return false;
+        }
+        var coordinates = toCoordinates(directoryName);
+        var version = MavenVersion.parse(coordinates[2]);
+        versions.compute(coordinates[0] + "/" + coordinates[1], (artifact, artifactVersions) -> {
+            if (artifactVersions == null) {
+                artifactVersions = new ConcurrentSkipListSet<>(VERSION_ORDER);
+            }
+            artifactVersions.add(version);
+            return artifactVersions;
+        });
+        return true;
+    }
+
+    private boolean addAll(Collection<String> directoryNames) {
+        var added = false;
+        for (var directoryName : directoryNames) {
+            added |= add(directoryName);
+        }
+        return added;
+    }
+
+    private boolean remove(String directoryName) {
+        if (!directoryNames.remove(directoryName)) {
+            return false;
+        }
+        var coordinates = toCoordinates(directoryName);
+        var version = MavenVersion.parse(coordinates[2]);
+        versions.computeIfPresent(coordinates[0] + "/" + coordinates[1],
+                (artifact, artifactVersions) -> {
+                    artifactVersions.remove(version);
+                    return artifactVersions.isEmpty() ? null : artifactVersions;
+                });
+        return true;
+    }
+
+    private void changed(boolean changed) {
+        if (changed) {
+            generation.incrementAndGet();
+        }
+    }
+
+    private String relativeName(Path dir) {
+        return dir.subpath(repositoryDir.getNameCount(), dir.getNameCount()).toString();
+    }
+}
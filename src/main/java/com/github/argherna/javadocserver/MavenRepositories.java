@@ -0,0 +1,327 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Maven repositories of the {@link ServerConfig}, federated into one catalog of javadoc
+ * archives.
+ *
+ * <p>
+ * Every repository has its own {@link MavenCatalog}, so repositories are scanned, watched and
+ * reconciled concurrently and independently of each other, and a repository on a slow mount
+ * can't hold up the others. When several repositories have an archive for the same coordinates,
+ * the one of the repository that comes first in the configured precedence wins.
+ *
+ * <p>
+ * Coordinates are resolved to the winning archive in constant time from an index that is rebuilt
+ * when a catalog or the configuration changes. Archives that aren't indexed yet, like ones that
+ * were just installed, are looked for in every repository in order.
+ */
+class MavenRepositories implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(
+            MavenRepositories.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    // Longest time listing the archives waits for the initial scans, a repository that takes
+    // longer is listed once its scan finishes.
+    private static final long INITIAL_SCAN_WAIT_SECONDS = 5L;
+
+    private final ServerConfig config;
+
+    // Catalogs in precedence order, replaced when the configured repositories change.
+    private volatile List<MavenCatalog> catalogs = List.of();
+
+    private volatile List<String> repositories = List.of();
+
+    private volatile long configGeneration = -1L;
+
+    // Generations of the catalogs that were closed and of the changes to the repositories, so
+    // that the generation keeps growing when a catalog goes away.
+    private volatile long retiredGenerations;
+
+    private volatile CoordinateIndex index = new CoordinateIndex(-1L, Map.of());
+
+    private boolean started;
+
+    private boolean closed;
+
+    MavenRepositories(ServerConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Start a catalog for every configured repository.
+     */
+    synchronized void start() {
+        started = true;
+        update(config.get());
+    }
+
+    /**
+     * Return {@code true} if at least one repository is configured, reading the configuration
+     * again if none was.
+     *
+     * @return {@code true} if there are repositories.
+     */
+    boolean hasRepositories() {
+        if (repositories.isEmpty()) {
+            config.refresh();
+            updateIfChanged();
+        }
+        return !repositories.isEmpty();
+    }
+
+    /**
+     * Return the generation of the federated catalog, a number that grows every time a javadoc
+     * archive or a repository is added or removed.
+     *
+     * @return generation of the catalog.
+     */
+    long getGeneration() {
+        updateIfChanged();
+        return generation(catalogs);
+    }
+
+    private long generation(List<MavenCatalog> current) {
+        var generation = retiredGenerations;
+        for (var catalog : current) {
+            generation += catalog.getGeneration();
+        }
+        return generation;
+    }
+
+    /**
+     * Return the directory names of the javadoc archives in every repository, each once and in
+     * sorted order. Waits up to {@value #INITIAL_SCAN_WAIT_SECONDS} seconds for the initial scans.
+     *
+     * @return read-only directory names.
+     */
+    Collection<String> getJavadocArtifactDirectoryNames() {
+        updateIfChanged();
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(INITIAL_SCAN_WAIT_SECONDS);
+        var current = catalogs;
+        if (current.size() == 1) {
+            return current.get(0).getJavadocArtifactDirectoryNames(
+                    Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        var names = new TreeSet<String>();
+        for (var catalog : current) {
+            names.addAll(catalog.getJavadocArtifactDirectoryNames(
+                    Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+        }
+        return Collections.unmodifiableCollection(names);
+    }
+
+    /**
+     * Return the winning javadoc archive for a directory name.
+     *
+     * @param directoryName directory name as returned from
+     *                      {@link #getJavadocArtifactDirectoryNames()}.
+     * @return path to the archive, or {@code null} if no repository has it.
+     */
+    String getJavadocArchive(String directoryName) {
+        var coordinates = MavenCatalog.toCoordinates(directoryName);
+        return currentIndex().get(String.join("/", coordinates));
+    }
+
+    /**
+     * Return the winning javadoc archive for the coordinates of a Maven route.
+     *
+     * @param route route of kind {@link Route.Kind#M2}.
+     * @return path to the archive, or {@code null} if no repository has it.
+     */
+    String resolve(Route route) {
+        var archive = currentIndex().find(route);
+        if (archive != null) {
+            return archive;
+        }
+        // Not indexed yet, the watcher may not have seen it.
+        for (var repository : repositories) {
+            var path = route.toArchivePath(repository);
+            if (Files.isRegularFile(Paths.get(path))) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the highest version of an artifact a selector selects, in any repository.
+     *
+     * @param artifact {@code <groupId>/<artifactId>} of the artifact.
+     * @param selector symbolic version to resolve.
+     * @return the version, or {@code null} if no repository has a matching version.
+     */
+    String resolveVersion(String artifact, MavenVersion.Selector selector) {
+        updateIfChanged();
+        MavenVersion highest = null;
+        for (var catalog : catalogs) {
+            var version = selector.select(catalog.getVersions(artifact));
+            if (version != null && (highest == null || version.compareTo(highest) > 0)) {
+                highest = version;
+            }
+        }
+        return highest == null ? null : highest.toString();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (var catalog : catalogs) {
+            catalog.close();
+        }
+        catalogs = List.of();
+    }
+
+    private CoordinateIndex currentIndex() {
+        updateIfChanged();
+        var current = index;
+        var currentCatalogs = catalogs;
+        var generation = generation(currentCatalogs);
+        if (current.generation == generation) {
+            return current;
+        }
+        synchronized (this) {
+            current = index;
+            if (current.generation != generation(catalogs)) {
+                current = build(catalogs);
+                index = current;
+            }
+            return current;
+        }
+    }
+
+    // Indexes the archives of every catalog, the first catalog with an archive wins.
+    private CoordinateIndex build(List<MavenCatalog> current) {
+        var start = System.nanoTime();
+        var generation = generation(current);
+        var archives = new HashMap<String, String>();
+        for (var catalog : current) {
+            for (var directoryName : catalog.getJavadocArtifactDirectoryNames(0L,
+                    TimeUnit.NANOSECONDS)) {
+                archives.putIfAbsent(String.join("/", MavenCatalog.toCoordinates(directoryName)),
+                        catalog.getJavadocArchive(directoryName).toString());
+            }
+        }
+        LOGGER.log(DEBUG, "logger.finer.reposindexed", archives.size(), current.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new CoordinateIndex(generation, archives);
+    }
+
+    private void updateIfChanged() {
+        var snapshot = config.get();
+        if (snapshot.getGeneration() != configGeneration) {
+            synchronized (this) {
+                if (snapshot.getGeneration() != configGeneration) {
+                    update(snapshot);
+                }
+            }
+        }
+    }
+
+    // Brings the catalogs in line with the configured repositories, keeping the ones that are
+    // still configured.
+    private synchronized void update(ServerConfig.Snapshot snapshot) {
+        if (!started || closed) {
+            return;
+        }
+        configGeneration = snapshot.getGeneration();
+        var paths = snapshot.getM2Repos();
+        if (paths.equals(repositories)) {
+            return;
+        }
+        var existing = new LinkedHashMap<String, MavenCatalog>();
+        for (var i = 0; i < repositories.size(); i++) {
+            existing.put(repositories.get(i), catalogs.get(i));
+        }
+        var updated = new ArrayList<MavenCatalog>(paths.size());
+        for (var path : paths) {
+            var catalog = existing.remove(path);
+            if (catalog == null) {
+                catalog = new MavenCatalog(path);
+                catalog.start();
+            }
+            updated.add(catalog);
+        }
+        for (var removed : existing.values()) {
+            retiredGenerations += removed.getGeneration();
+            removed.close();
+        }
+        // Precedence may have changed without any archive changing.
+        retiredGenerations++;
+        repositories = paths;
+        catalogs = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * Immutable open-addressing table of archive paths by the coordinates
+     * {@code <groupId>/<artifactId>/<version>}, looked up without creating the key of a route.
+     */
+    private static final class CoordinateIndex {
+
+        private final long generation;
+
+        private final String[] keys;
+
+        private final String[] archives;
+
+        private final int mask;
+
+        private CoordinateIndex(long generation, Map<String, String> entries) {
+            this.generation = generation;
+            var capacity = Integer.highestOneBit(Math.max(2, entries.size() * 2 - 1)) << 1;
+            this.keys = new String[capacity];
+            this.archives = new String[capacity];
+            this.mask = capacity - 1;
+            for (var entry : entries.entrySet()) {
+                var slot = spread(entry.getKey().hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = entry.getKey();
+                archives[slot] = entry.getValue();
+            }
+        }
+
+        private String find(Route route) {
+            var slot = spread(route.keyHashCode()) & mask;
+            for (var key = keys[slot]; key != null; key = keys[slot]) {
+                if (route.keyEquals(key)) {
+                    return archives[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private String get(String coordinates) {
+            var slot = spread(coordinates.hashCode()) & mask;
+            for (var key = keys[slot]; key != null; key = keys[slot]) {
+                if (key.equals(coordinates)) {
+                    return archives[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.github.argherna.javadocserver;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maven artifact version, ordered the way Maven orders versions.
+ *
+ * <p>
+ * Versions are split into numbers and qualifiers on {@code .}, {@code -} and on changes between
+ * digits and letters. Numbers compare numerically, trailing zeros and release qualifiers are
+ * ignored ({@code 1 == 1.0 == 1.0.0 == 1-ga}), and known qualifiers are ordered
+ * {@code alpha < beta < milestone < rc < snapshot < release < sp}, with unknown qualifiers after
+ * them in lexical order. So {@code 1.0-alpha1 < 1.0-SNAPSHOT < 1.0 < 1.0-sp < 1.0.1}.
+ */
+final class MavenVersion implements Comparable<MavenVersion> {
+
+    private static final List<String> QUALIFIERS =
+            List.of("alpha", "beta", "milestone", "rc", "snapshot", "", "sp");
+
+    private static final Map<String, String> ALIASES =
+            Map.of("ga", "", "final", "", "release", "", "cr", "rc");
+
+    private static final String RELEASE_QUALIFIER = Integer.toString(QUALIFIERS.indexOf(""));
+
+    private final String version;
+
+    private final ListItem items;
+
+    private MavenVersion(String version) {
+        this.version = version;
+        this.items = parseItems(version.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Parse a version.
+     *
+     * @param version version as it appears in a repository.
+     * @return the version.
+     */
+    static MavenVersion parse(String version) {
+        return new MavenVersion(version);
+    }
+
+    /**
+     * Return {@code true} if this is a SNAPSHOT version.
+     *
+     * @return {@code true} for SNAPSHOT versions.
+     */
+    boolean isSnapshot() {
+        return version.endsWith("-SNAPSHOT");
+    }
+
+    @Override
+    public int compareTo(MavenVersion other) {
+        return items.compareTo(other.items);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MavenVersion && compareTo((MavenVersion) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return items.toString().hashCode();
+    }
+
+    /**
+     * Return the version as it was parsed.
+     */
+    @Override
+    public String toString() {
+        return version;
+    }
+
+    private static ListItem parseItems(String version) {
+        var list = new ListItem();
+        var items = list;
+        var stack = new ArrayDeque<ListItem>();
+        stack.push(list);
+        var isDigit = false;
+        var start = 0;
+        for (var i = 0; i < version.length(); i++) {
+            var c = version.charAt(i);
+            if (c == '.') {
+                list.add(parseItem(isDigit, version, start, i));
+                start = i + 1;
+            } else if (c == '-') {
+                list.add(parseItem(isDigit, version, start, i));
+                start = i + 1;
+                list.add(list = new ListItem());
+                stack.push(list);
+            } else if (Character.isDigit(c)) {
+                if (!isDigit && i > start) {
+                    // A qualifier followed by a number, like the 1 of alpha1.
+                    list.add(new StringItem(version.substring(start, i), true));
+                    start = i;
+                    list.add(list = new ListItem());
+                    stack.push(list);
+                }
+                isDigit = true;
+            } else {
+                if (isDigit && i > start) {
+                    list.add(parseItem(true, version, start, i));
+                    start = i;
+                    list.add(list = new ListItem());
+                    stack.push(list);
+                }
+                isDigit = false;
+            }
+        }
+        if (version.length() > start) {
+            list.add(parseItem(isDigit, version, start, version.length()));
+        }
+        while (!stack.isEmpty()) {
+            stack.pop().normalize();
+        }
+        return items;
+    }
+
+    // Parses a number or qualifier, an empty one, like in 1..2 or 1-, is 0.
+    private static Item parseItem(boolean isDigit, String version, int start, int end) {
+        if (start == end) {
+            return IntItem.ZERO;
+        }
+        var value = version.substring(start, end);
+        return isDigit ? new IntItem(value) : new StringItem(value, false);
+    }
+
+    /**
+     * Part of a version, compared with other parts or with a missing part ({@code null}).
+     */
+    private static interface Item {
+
+        int compareTo(Item other);
+
+        boolean isNull();
+    }
+
+    private static final class IntItem implements Item {
+
+        private static final IntItem ZERO = new IntItem("0");
+
+        private final BigInteger value;
+
+        private IntItem(String value) {
+            this.value = new BigInteger(value);
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return value.signum() == 0 ? 0 : 1;
+            } else if (other instanceof IntItem) {
+                return value.compareTo(((IntItem) other).value);
+            }
+            // Numbers come after qualifiers and lists, 1.1 > 1-1 > 1-sp.
+            return 1;
+        }
+
+        @Override
+        public boolean isNull() {
+            return value.signum() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return value.toString();
+        }
+    }
+
+    private static final class StringItem implements Item {
+
+        private final String value;
+
+        private StringItem(String value, boolean followedByDigit) {
+            if (followedByDigit && value.length() == 1) {
+                // a1, b1 and m1 are short for alpha1, beta1 and milestone1.
+                switch (value.charAt(0)) {
+                    case 'a':
+                        value = "alpha";
+                        break;
+                    case 'b':
+                        value = "beta";
+                        break;
+                    case 'm':
+                        value = "milestone";
+                        break;
+                    default:
+                        break;
+                }
+            }
+            this.value = ALIASES.getOrDefault(value, value);
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return comparableQualifier(value).compareTo(RELEASE_QUALIFIER);
+            } else if (other instanceof StringItem) {
+                return comparableQualifier(value)
+                        .compareTo(comparableQualifier(((StringItem) other).value));
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean isNull() {
+            return value.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+        // Known qualifiers compare by their position, unknown ones after them by name.
+        private static String comparableQualifier(String qualifier) {
+            var index = QUALIFIERS.indexOf(qualifier);
+            return index < 0 ? QUALIFIERS.size() + "-" + qualifier : Integer.toString(index);
+        }
+    }
+
+    private static final class ListItem extends ArrayList<Item> implements Item {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compareTo(Item other) {
+            if (other == null) {
+                return isEmpty() ? 0 : get(0).compareTo(null);
+            } else if (other instanceof IntItem) {
+                return -1;
+            } else if (other instanceof StringItem) {
+                return 1;
+            }
+            var left = iterator();
+            var right = ((ListItem) other).iterator();
+            while (left.hasNext() || right.hasNext()) {
+                var l = left.hasNext() ? left.next() : null;
+                var r = right.hasNext() ? right.next() : null;
+                var result = l == null ? (r == null ? 0 : -r.compareTo(null)) : l.compareTo(r);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean isNull() {
+            return isEmpty();
+        }
+
+        // Drops trailing zeros and release qualifiers, so 1.0.0 is the same as 1.
+        private void normalize() {
+            for (var i = size() - 1; i >= 0; i--) {
+                var item = get(i);
+                if (item.isNull()) {
+                    remove(i);
+                } else if (!(item instanceof ListItem)) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder();
+            for (var item : this) {
+                if (sb.length() > 0) {
+                    sb.append(item instanceof ListItem ? '-' : '.');
+                }
+                sb.append(item);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Symbolic version in a Maven route, {@value #LATEST} for the highest version,
+     * {@value #LATEST_RELEASE} for the highest version that isn't a SNAPSHOT, or a Maven version
+     * range like {@code [1.0,2.0)}, {@code [1.5,)} or {@code (,1.0],[1.2,)}.
+     */
+    static final class Selector {
+
+        static final String LATEST = "latest";
+
+        static final String LATEST_RELEASE = "latest-release";
+
+        private final String spec;
+
+        private final boolean releasesOnly;
+
+        // Bounds of the restrictions of a range, null when unbounded, empty for latest.
+        private final List<MavenVersion[]> bounds;
+
+        private final List<boolean[]> inclusive;
+
+        private Selector(String spec, boolean releasesOnly, List<MavenVersion[]> bounds,
+                List<boolean[]> inclusive) {
+            this.spec = spec;
+            this.releasesOnly = releasesOnly;
+            this.bounds = bounds;
+            this.inclusive = inclusive;
+        }
+
+        /**
+         * Parse the version of a route as a symbolic version.
+         *
+         * @param version version of a route.
+         * @return the selector, or {@code null} if the version is an actual version.
+         * @throws IllegalArgumentException if the version is a malformed range.
+         */
+        static Selector parse(String version) {
+            if (version.equals(LATEST)) {
+                return new Selector(version, false, List.of(), List.of());
+            } else if (version.equals(LATEST_RELEASE)) {
+                return new Selector(version, true, List.of(), List.of());
+            } else if (version.isEmpty()
+                    || (version.charAt(0) != '[' && version.charAt(0) != '(')) {
+                return null;
+            }
+            var bounds = new ArrayList<MavenVersion[]>();
+            var inclusive = new ArrayList<boolean[]>();
+            var start = 0;
+            while (start < version.length()) {
+                var open = version.charAt(start);
+                var end = start + 1;
+                while (end < version.length() && version.charAt(end) != ']'
+                        && version.charAt(end) != ')') {
+                    end++;
+                }
+                if ((open != '[' && open != '(') || end == version.length()) {
+                    throw new IllegalArgumentException("Malformed version range " + version);
+                }
+                var close = version.charAt(end);
+                var restriction = version.substring(start + 1, end);
+                var comma = restriction.indexOf(',');
+                if (comma < 0) {
+                    // [1.0] is exactly 1.0.
+                    if (open != '[' || close != ']' || restriction.isEmpty()) {
+                        throw new IllegalArgumentException("Malformed version range " + version);
+                    }
+                    var exact = MavenVersion.parse(restriction.trim());
+                    bounds.add(new MavenVersion[] {exact, exact});
+                    inclusive.add(new boolean[] {true, true});
+                } else {
+                    var lower = restriction.substring(0, comma).trim();
+                    var upper = restriction.substring(comma + 1).trim();
+                    if (upper.indexOf(',') >= 0) {
+                        throw new IllegalArgumentException("Malformed version range " + version);
+                    }
+                    bounds.add(new MavenVersion[] {
+                        lower.isEmpty() ? null : MavenVersion.parse(lower),
+                        upper.isEmpty() ? null : MavenVersion.parse(upper)});
+                    inclusive.add(new boolean[] {open == '[', close == ']'});
+                }
+                start = end + 1;
+                if (start < version.length()) {
+                    // Another restriction must follow the comma.
+                    if (version.charAt(start) != ',' || start + 1 == version.length()) {
+                        throw new IllegalArgumentException("Malformed version range " + version);
+                    }
+                    start++;
+                }
+            }
+            return new Selector(version, false, bounds, inclusive);
+        }
+
+        /**
+         * Return {@code true} if a version is selected.
+         *
+         * @param version version to test.
+         * @return {@code true} if the version matches.
+         */
+        boolean matches(MavenVersion version) {
+            if (releasesOnly && version.isSnapshot()) {
+                return false;
+            } else if (bounds.isEmpty()) {
+                return true;
+            }
+            for (var i = 0; i < bounds.size(); i++) {
+                var bound = bounds.get(i);
+                var incl = inclusive.get(i);
+                if (bound[0] != null) {
+                    var c = version.compareTo(bound[0]);
+                    if (c < 0 || (c == 0 && !incl[0])) {
+                        continue;
+                    }
+                }
+                if (bound[1] != null) {
+                    var c = version.compareTo(bound[1]);
+                    if (c > 0 || (c == 0 && !incl[1])) {
+                        continue;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return the highest selected version of a sorted set of versions.
+         *
+         * @param versions versions in descending order.
+         * @return the highest matching version, or {@code null} if none matches.
+         */
+        MavenVersion select(Iterable<MavenVersion> versions) {
+            for (var version : versions) {
+                if (matches(version)) {
+                    return version;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return spec;
+        }
+    }
+}
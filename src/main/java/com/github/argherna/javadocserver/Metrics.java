@@ -0,0 +1,327 @@
+package com.github.argherna.javadocserver;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Request metrics of the server by context: latency histograms and response bytes by status code,
+ * and requests in flight.
+ *
+ * <p>
+ * Recording is lock-free and doesn't allocate once a context has seen a status code. Latencies go
+ * into log-linear buckets, 8 per power of two from 1 microsecond to about a minute, so that every
+ * latency is kept within 12.5% whatever the distribution is. {@link #toPrometheus()} renders the
+ * metrics, along with the counters of the {@link HotEntryCache} and {@link EntryIndex}, in the
+ * Prometheus text format.
+ */
+class Metrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Bounds of the histogram buckets in the exposition, in seconds. They are cumulative counts of
+    // the log-linear buckets that end at or below the bound.
+    private static final double[] EXPOSED_BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025,
+            0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0};
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    private final List<Counter> counters = new CopyOnWriteArrayList<>();
+
+    private final List<Bulkhead> bulkheads = new CopyOnWriteArrayList<>();
+
+    /**
+     * Return the metrics of a context, created on first use.
+     *
+     * @param route context path, like {@code /jdk}.
+     * @return metrics of the context.
+     */
+    RouteMetrics forRoute(String route) {
+        return routes.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /**
+     * Add a counter to the metrics, read when they are rendered.
+     *
+     * @param name  metric name, like {@code javadocserver_things_total}.
+     * @param help  description of the metric.
+     * @param value supplier of the current value.
+     */
+    void addCounter(String name, String help, LongSupplier value) {
+        counters.add(new Counter(name, help, value));
+    }
+
+    /**
+     * Add a bulkhead to the metrics, its limit and the requests it turned away are read when they
+     * are rendered.
+     *
+     * @param bulkhead the bulkhead.
+     */
+    void addBulkhead(Bulkhead bulkhead) {
+        bulkheads.add(bulkhead);
+    }
+
+    /**
+     * Render all metrics in the Prometheus text format.
+     *
+     * @return metrics as text.
+     */
+    String toPrometheus() {
+        var sb = new StringBuilder(8 * 1024);
+        var sorted = new TreeMap<>(routes);
+
+        sb.append("# HELP javadocserver_http_requests_in_flight Requests being handled.\n");
+        sb.append("# TYPE javadocserver_http_requests_in_flight gauge\n");
+        for (var route : sorted.values()) {
+            sb.append("javadocserver_http_requests_in_flight{route=\"").append(route.route)
+                    .append("\"} ").append(route.inFlight.sum()).append('\n');
+        }
+
+        sb.append("# HELP javadocserver_http_response_bytes_total Response body bytes sent.\n");
+        sb.append("# TYPE javadocserver_http_response_bytes_total counter\n");
+        for (var route : sorted.values()) {
+            for (var status = 0; status < RouteMetrics.STATUS_SLOTS; status++) {
+                var statusMetrics = route.byStatus.get(status);
+                if (statusMetrics != null) {
+                    sb.append("javadocserver_http_response_bytes_total");
+                    labels(sb, route.route, status).append("} ")
+                            .append(statusMetrics.responseBytes.sum()).append('\n');
+                }
+            }
+        }
+
+        sb.append("# HELP javadocserver_http_request_duration_seconds Time to handle requests.\n");
+        sb.append("# TYPE javadocserver_http_request_duration_seconds histogram\n");
+        for (var route : sorted.values()) {
+            for (var status = 0; status < RouteMetrics.STATUS_SLOTS; status++) {
+                var statusMetrics = route.byStatus.get(status);
+                if (statusMetrics != null) {
+                    statusMetrics.latency.appendTo(sb,
+                            "javadocserver_http_request_duration_seconds", route.route, status);
+                }
+            }
+        }
+
+        var cache = HotEntryCache.getInstance();
+        counter(sb, "javadocserver_entry_cache_hits_total", "Entry cache hits.", cache.getHits());
+        counter(sb, "javadocserver_entry_cache_misses_total", "Entry cache misses.",
+                cache.getMisses());
+        counter(sb, "javadocserver_entry_cache_evictions_total", "Entry cache evictions.",
+                cache.getEvictions());
+        gauge(sb, "javadocserver_entry_cache_bytes", "Bytes held by the entry cache.",
+                cache.getSize());
+        gauge(sb, "javadocserver_entry_cache_entries", "Entries held by the entry cache.",
+                cache.getEntryCount());
+        gauge(sb, "javadocserver_entry_index_entries", "Archive entries in the entry index.",
+                EntryIndex.getInstance().getEntryCount());
+        if (!bulkheads.isEmpty()) {
+            sb.append("# HELP javadocserver_bulkhead_limit Requests a bulkhead runs at once.\n");
+            sb.append("# TYPE javadocserver_bulkhead_limit gauge\n");
+            for (var bulkhead : bulkheads) {
+                sb.append("javadocserver_bulkhead_limit{bulkhead=\"").append(bulkhead.getName())
+                        .append("\"} ").append(bulkhead.getLimit()).append('\n');
+            }
+            sb.append("# HELP javadocserver_bulkhead_rejected_total Requests turned away by a ")
+                    .append("bulkhead.\n");
+            sb.append("# TYPE javadocserver_bulkhead_rejected_total counter\n");
+            for (var bulkhead : bulkheads) {
+                sb.append("javadocserver_bulkhead_rejected_total{bulkhead=\"")
+                        .append(bulkhead.getName()).append("\"} ").append(bulkhead.getRejected())
+                        .append('\n');
+            }
+        }
+        for (var c : counters) {
+            counter(sb, c.name, c.help, c.value.getAsLong());
+        }
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Appends the labels of a series without the closing brace, so that more can follow.
+    private static StringBuilder labels(StringBuilder sb, String route, int status) {
+        sb.append("{route=\"").append(route).append("\",code=\"");
+        if (status == 0) {
+            sb.append("unknown");
+        } else {
+            sb.append(status);
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Metrics of one context.
+     */
+    static final class RouteMetrics {
+
+        // Status codes 100 to 599 by their value, anything else in slot 0.
+        private static final int STATUS_SLOTS = 600;
+
+        private final String route;
+
+        private final LongAdder inFlight = new LongAdder();
+
+        private final AtomicReferenceArray<StatusMetrics> byStatus =
+                new AtomicReferenceArray<>(STATUS_SLOTS);
+
+        private RouteMetrics(String route) {
+            this.route = route;
+        }
+
+        /**
+         * Count a request as started.
+         */
+        void started() {
+            inFlight.increment();
+        }
+
+        /**
+         * Count a request as done and record how it went.
+         *
+         * @param status        response status, or a negative number if none was sent.
+         * @param nanos         time taken to handle the request.
+         * @param responseBytes bytes of the response body.
+         */
+        void finished(int status, long nanos, long responseBytes) {
+            inFlight.decrement();
+            var slot = status >= 100 && status < STATUS_SLOTS ? status : 0;
+            var statusMetrics = byStatus.get(slot);
+            if (statusMetrics == null) {
+                byStatus.compareAndSet(slot, null, new StatusMetrics());
+                statusMetrics = byStatus.get(slot);
+            }
+            statusMetrics.latency.record(nanos);
+            statusMetrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    private static final class Counter {
+
+        private final String name;
+
+        private final String help;
+
+        private final LongSupplier value;
+
+        private Counter(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private static final class StatusMetrics {
+
+        private final Histogram latency = new Histogram();
+
+        private final LongAdder responseBytes = new LongAdder();
+    }
+
+    /**
+     * Log-linear latency histogram. Bucket 0 holds everything below 1024 ns, then every power of
+     * two is split in {@value #SUB_BUCKETS} buckets of equal width up to 2<sup>36</sup> ns, the
+     * last bucket holds everything above.
+     */
+    static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 3;
+
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private static final int MIN_EXPONENT = 10;
+
+        private static final int MAX_EXPONENT = 36;
+
+        static final int BUCKETS = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+        // For every exposed bound, the last bucket that ends at or below it.
+        private static final int[] EXPOSED_LAST_BUCKETS = new int[EXPOSED_BOUNDS.length];
+
+        static {
+            for (var i = 0; i < EXPOSED_BOUNDS.length; i++) {
+                var boundNanos = (long) (EXPOSED_BOUNDS[i] * 1_000_000_000L);
+                var last = -1;
+                while (last + 1 < BUCKETS - 1 && upperBoundNanos(last + 1) <= boundNanos) {
+                    last++;
+                }
+                EXPOSED_LAST_BUCKETS[i] = last;
+            }
+        }
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            counts.getAndIncrement(bucketOf(nanos));
+            sumNanos.add(nanos);
+        }
+
+        static int bucketOf(long nanos) {
+            if (nanos < (1L << MIN_EXPONENT)) {
+                return 0;
+            }
+            var exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            if (exponent > MAX_EXPONENT) {
+                return BUCKETS - 1;
+            }
+            return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS
+                    + (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        }
+
+        // Exclusive upper bound of a bucket.
+        static long upperBoundNanos(int bucket) {
+            if (bucket == 0) {
+                return 1L << MIN_EXPONENT;
+            }
+            var exponent = MIN_EXPONENT + (bucket - 1) / SUB_BUCKETS;
+            var subBucket = (bucket - 1) % SUB_BUCKETS;
+            return (1L << exponent) + ((long) (subBucket + 1) << (exponent - SUB_BUCKET_BITS));
+        }
+
+        private void appendTo(StringBuilder sb, String name, String route, int status) {
+            // Reads the buckets once so that the cumulative counts add up.
+            var snapshot = new long[BUCKETS];
+            for (var i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            var cumulative = 0L;
+            var bucket = 0;
+            for (var i = 0; i < EXPOSED_BOUNDS.length; i++) {
+                for (; bucket <= EXPOSED_LAST_BUCKETS[i]; bucket++) {
+                    cumulative += snapshot[bucket];
+                }
+                sb.append(name).append("_bucket");
+                labels(sb, route, status).append(",le=\"").append(EXPOSED_BOUNDS[i])
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            for (; bucket < BUCKETS; bucket++) {
+                cumulative += snapshot[bucket];
+            }
+            sb.append(name).append("_bucket");
+            labels(sb, route, status).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+            sb.append(name).append("_sum");
+            labels(sb, route, status).append("} ")
+                    .append(String.format(Locale.ROOT, "%.9f", sumNanos.sum() / 1e9)).append('\n');
+            sb.append(name).append("_count");
+            labels(sb, route, status).append("} ").append(cumulative).append('\n');
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Records the latency, status and response bytes of every request to a context in its
+ * {@link Metrics.RouteMetrics}.
+ */
+class MetricsFilter extends Filter {
+
+    private final Metrics.RouteMetrics routeMetrics;
+
+    MetricsFilter(Metrics.RouteMetrics routeMetrics) {
+        this.routeMetrics = routeMetrics;
+    }
+
+    @Override
+    public String description() {
+        return "Records request metrics";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Filter.Chain chain) throws IOException {
+        var start = System.nanoTime();
+        routeMetrics.started();
+        var out = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(null, out);
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            routeMetrics.finished(exchange.getResponseCode(), System.nanoTime() - start,
+                    out.getCount());
+        }
+    }
+}
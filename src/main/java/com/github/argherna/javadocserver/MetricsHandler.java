@@ -0,0 +1,25 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Answers {@code /metrics} with the {@link Metrics} of the server in the Prometheus text format.
+ */
+class MetricsHandler extends JavadocHandler {
+
+    private final Metrics metrics;
+
+    MetricsHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        doSend(exchange, Metrics.CONTENT_TYPE,
+                metrics.toPrometheus().getBytes(StandardCharsets.UTF_8), HTTP_OK);
+    }
+}
@@ -0,0 +1,413 @@
+package com.github.argherna.javadocserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * Exchange of the {@link NioHttpServer}, with the semantics of the JDK's exchanges: the response
+ * length given to {@link #sendResponseHeaders(int, long)} is a fixed length when positive, chunked
+ * when {@code 0} and no body when {@code -1}, and closing the exchange or its response body ends
+ * the response.
+ *
+ * <p>
+ * The status line, headers and body are collected in one buffer, so that small responses go out
+ * in a single write and larger ones in gathering writes of the buffer and the bytes written to the
+ * body.
+ */
+final class NioHttpExchange extends HttpExchange {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    // Date header value and the second it was formatted for.
+    private static volatile String date = "";
+
+    private static volatile long dateSecond;
+
+    private final NioHttpServer.Connection connection;
+
+    private final HttpContext context;
+
+    private final String method;
+
+    private final URI uri;
+
+    private final String protocol;
+
+    private final Headers requestHeaders;
+
+    private final Headers responseHeaders = new Headers();
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final ResponseBody rawResponseBody = new ResponseBody();
+
+    private InputStream requestBody;
+
+    private OutputStream responseBody = rawResponseBody;
+
+    private boolean keepAlive;
+
+    private int responseCode = -1;
+
+    private boolean closed;
+
+    NioHttpExchange(NioHttpServer.Connection connection, HttpContext context, String method,
+            URI uri, String protocol, Headers requestHeaders, byte[] body, boolean keepAlive) {
+        this.connection = connection;
+        this.context = context;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = new ByteArrayInputStream(body);
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (responseCode == -1) {
+                // Nothing was sent, the client can't tell where the response ends.
+                connection.finish(false);
+            } else {
+                rawResponseBody.close();
+            }
+        } catch (IOException e) {
+            connection.finish(false);
+        }
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("Response headers already sent");
+        }
+        responseCode = rCode;
+        var bodiless = rCode < 200 || rCode == 204 || rCode == 304;
+        var head = method.equals("HEAD");
+        if (responseLength > 0) {
+            if (!bodiless) {
+                responseHeaders.set("Content-Length", Long.toString(responseLength));
+            }
+            rawResponseBody.remaining = head || bodiless ? 0L : responseLength;
+            rawResponseBody.discard = head || bodiless;
+        } else if (responseLength == 0) {
+            if (head || bodiless) {
+                rawResponseBody.discard = true;
+            } else if (protocol.equals("HTTP/1.1")) {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+                rawResponseBody.chunked = true;
+            } else {
+                // HTTP/1.0 bodies of unknown length end when the connection closes.
+                keepAlive = false;
+            }
+            rawResponseBody.remaining = -1L;
+        } else {
+            if (!bodiless) {
+                responseHeaders.set("Content-Length", "0");
+            }
+            rawResponseBody.discard = true;
+        }
+        if (!keepAlive) {
+            responseHeaders.set("Connection", "close");
+        }
+        if (!responseHeaders.containsKey("Date")) {
+            responseHeaders.set("Date", date());
+        }
+
+        var sb = new StringBuilder(256);
+        sb.append("HTTP/1.1 ").append(rCode).append(' ').append(reasonPhrase(rCode)).append("\r\n");
+        for (var header : responseHeaders.entrySet()) {
+            for (var value : header.getValue()) {
+                sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        sb.append("\r\n");
+        rawResponseBody.buffer(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (rawResponseBody.discard) {
+            rawResponseBody.close();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Return {@code true} if the response headers were sent.
+     *
+     * @return {@code true} if the response started.
+     */
+    boolean isResponseStarted() {
+        return responseCode != -1;
+    }
+
+    /**
+     * Give up on a response that can't be completed, closing the connection once this exchange is
+     * closed.
+     */
+    void abort() {
+        keepAlive = false;
+        rawResponseBody.failed = true;
+    }
+
+    private static String date() {
+        var now = System.currentTimeMillis();
+        if (now / 1000L != dateSecond) {
+            date = HttpCaching.formatHttpDate(now);
+            dateSecond = now / 1000L;
+        }
+        return date;
+    }
+
+    private static String reasonPhrase(int code) {
+        switch (code) {
+            case 100:
+                return "Continue";
+            case 200:
+                return "OK";
+            case 204:
+                return "No Content";
+            case 206:
+                return "Partial Content";
+            case 301:
+                return "Moved Permanently";
+            case 302:
+                return "Found";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 403:
+                return "Forbidden";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 412:
+                return "Precondition Failed";
+            case 416:
+                return "Range Not Satisfiable";
+            case 500:
+                return "Internal Server Error";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Status " + code;
+        }
+    }
+
+    /**
+     * Body of the response, buffered and framed as the response headers say.
+     */
+    private final class ResponseBody extends OutputStream {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // Bytes still expected of a fixed length body, -1 if the length isn't known.
+        private long remaining = -1L;
+
+        private boolean chunked;
+
+        private boolean discard;
+
+        private boolean failed;
+
+        private boolean done;
+
+        // Bytes of the buffer holding the status line and headers rather than body.
+        private int headersLength;
+
+        private void buffer(byte[] headers) {
+            buffer.put(headers);
+            headersLength = headers.length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                throw new IOException("Response body closed");
+            } else if (responseCode == -1) {
+                throw new IOException("Response headers not sent");
+            } else if (discard || len == 0) {
+                return;
+            }
+            if (remaining >= 0) {
+                if (len > remaining) {
+                    throw new IOException("Response body longer than its Content-Length");
+                }
+                remaining -= len;
+            }
+            if (len < buffer.remaining()) {
+                buffer.put(b, off, len);
+            } else {
+                // Sends the buffered bytes and these in one gathering write, without copying them.
+                writeBuffer(ByteBuffer.wrap(b, off, len));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!done && responseCode != -1) {
+                writeBuffer(null);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (failed) {
+                connection.finish(false);
+                return;
+            }
+            try {
+                writeBuffer(null);
+                if (chunked) {
+                    connection.write(ByteBuffer.wrap(LAST_CHUNK));
+                }
+                connection.finish(keepAlive && remaining <= 0);
+            } catch (IOException e) {
+                connection.finish(false);
+                throw e;
+            }
+        }
+
+        // Writes the buffer followed by more body bytes, if any, framing the body as a chunk.
+        private void writeBuffer(ByteBuffer more) throws IOException {
+            if (buffer.position() == 0 && more == null) {
+                return;
+            }
+            buffer.flip();
+            if (chunked) {
+                var data = buffer.duplicate();
+                data.position(headersLength);
+                buffer.limit(headersLength);
+                var length = data.remaining() + (more == null ? 0 : more.remaining());
+                if (length == 0) {
+                    connection.write(buffer);
+                } else if (more == null) {
+                    connection.write(buffer, chunkHeader(length), data, ByteBuffer.wrap(CRLF));
+                } else {
+                    connection.write(buffer, chunkHeader(length), data, more,
+                            ByteBuffer.wrap(CRLF));
+                }
+            } else if (more == null) {
+                connection.write(buffer);
+            } else {
+                connection.write(buffer, more);
+            }
+            buffer.clear();
+            headersLength = 0;
+        }
+    }
+
+    private static ByteBuffer chunkHeader(int length) {
+        return ByteBuffer.wrap((Integer.toHexString(length) + "\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,765 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP/1.1 server that keeps every connection on one selector thread and only takes a worker
+ * thread while a request is being handled, so that thousands of idle keep-alive connections cost
+ * no threads.
+ *
+ * <p>
+ * It implements {@link HttpServer}, so the handlers and filters of the server run on it
+ * unchanged. Requests pipelined on a connection are handled one after the other and answered in
+ * order. Responses are written by the worker straight to the socket while it accepts them, the
+ * rest is queued and written by the selector thread with gathering writes, and a worker producing
+ * faster than the client reads waits once {@value #MAX_PENDING_BYTES} bytes are queued.
+ *
+ * <p>
+ * Idle connections are closed after {@value #DEFAULT_IDLE_SECONDS} seconds (configurable by
+ * setting the {@value #SYS_PROP_IDLE_SECONDS} system property). Request bodies are limited to
+ * {@value #MAX_BODY_BYTES} bytes and chunked request bodies aren't supported.
+ */
+class NioHttpServer extends HttpServer {
+
+    private static final System.Logger LOGGER = System.getLogger(NioHttpServer.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_IDLE_SECONDS =
+            "com.github.argherna.javadocserver.nio.idle.seconds";
+
+    static final int DEFAULT_IDLE_SECONDS = 30;
+
+    // Backlog used when none is given, the JDK's default of 50 is soon overrun by bursts of
+    // connections.
+    private static final int DEFAULT_BACKLOG = 1024;
+
+    static final int MAX_HEADER_BYTES = 64 * 1024;
+
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    static final int MAX_PENDING_BYTES = 256 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final byte[] HEADERS_END = {'\r', '\n', '\r', '\n'};
+
+    private final List<Context> contexts = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger activeExchanges = new AtomicInteger();
+
+    private final long idleNanos = TimeUnit.SECONDS.toNanos(
+            Math.max(1, Util.getIntegerProperty(SYS_PROP_IDLE_SECONDS, DEFAULT_IDLE_SECONDS)));
+
+    private Selector selector;
+
+    private ServerSocketChannel serverChannel;
+
+    private Executor executor;
+
+    private ExecutorService defaultExecutor;
+
+    private Thread dispatcher;
+
+    private volatile boolean closed;
+
+    /**
+     * Create a server bound to the given address.
+     *
+     * @param address address to listen on, or {@code null} to bind later.
+     * @param backlog socket backlog, {@code 0} for the system default.
+     * @throws IOException if the address can't be bound.
+     */
+    NioHttpServer(InetSocketAddress address, int backlog) throws IOException {
+        if (address != null) {
+            bind(address, backlog);
+        }
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new BindException("Server already bound");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, backlog > 0 ? backlog : DEFAULT_BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null || dispatcher != null) {
+            throw new IllegalStateException("Server not bound or already started");
+        }
+        if (executor == null) {
+            // Handlers block on writes the selector thread completes, so they can't run on it.
+            defaultExecutor = WorkerExecutors.create(WorkerExecutors.Mode.PLATFORM,
+                    WorkerExecutors.DEFAULT_THREADS, WorkerExecutors.DEFAULT_QUEUE_SIZE, true);
+            executor = defaultExecutor;
+        }
+        dispatcher = new Thread(this::select, "nio-http-dispatcher");
+        dispatcher.start();
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (dispatcher != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return defaultExecutor == null ? executor : null;
+    }
+
+    @Override
+    public void stop(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Negative delay");
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(DEBUG, "Failed to close server channel", e);
+        }
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+        while (activeExchanges.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closed = true;
+        selector.wakeup();
+        if (dispatcher != null) {
+            try {
+                dispatcher.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        var context = createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public HttpContext createContext(String path) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Invalid context path " + path);
+        }
+        for (var context : contexts) {
+            if (context.path.equals(path)) {
+                throw new IllegalArgumentException("Context " + path + " already exists");
+            }
+        }
+        var context = new Context(path);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.path.equals(path))) {
+            throw new IllegalArgumentException("No context " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        if (!contexts.remove(context)) {
+            throw new IllegalArgumentException("No such context");
+        }
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Returns the context with the longest path the request path starts with, like the JDK's
+    // server does.
+    private Context findContext(String path) {
+        Context found = null;
+        for (var context : contexts) {
+            if (path.startsWith(context.path)
+                    && (found == null || context.path.length() > found.path.length())) {
+                found = context;
+            }
+        }
+        return found;
+    }
+
+    private void select() {
+        var lastSweep = System.nanoTime();
+        try {
+            while (!closed) {
+                selector.select(1000L);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                var selected = selector.selectedKeys();
+                for (var key : selected) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else if (key.attachment() != null) {
+                        var connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException | CancelledKeyException e) {
+                            connection.close();
+                        }
+                    }
+                }
+                selected.clear();
+                var now = System.nanoTime();
+                if (now - lastSweep > TimeUnit.SECONDS.toNanos(1L)) {
+                    closeIdleConnections(now);
+                    lastSweep = now;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.log(WARNING, "logger.warning.nioselect", e);
+        } finally {
+            for (var key : selector.keys()) {
+                if (key.attachment() != null) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(DEBUG, "Failed to close selector", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            var connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        for (var key : selector.keys()) {
+            var connection = (Connection) key.attachment();
+            if (connection != null && connection.exchange == null
+                    && now - connection.lastActive > idleNanos) {
+                connection.close();
+            }
+        }
+    }
+
+    // Runs a task on the selector thread.
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Connection to a client. Reading, parsing and interest changes happen on the selector thread,
+     * writes on the worker thread handling the current exchange or on the selector thread.
+     */
+    final class Connection {
+
+        private final SocketChannel channel;
+
+        private final InetSocketAddress remoteAddress;
+
+        private final InetSocketAddress localAddress;
+
+        private SelectionKey key;
+
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private long lastActive = System.nanoTime();
+
+        // Exchange being handled, only set and cleared by the selector thread.
+        private NioHttpExchange exchange;
+
+        // Guarded by this.
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+        private long pendingBytes;
+
+        private boolean writeRequested;
+
+        private boolean finished;
+
+        private boolean keepAlive;
+
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        }
+
+        InetSocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        InetSocketAddress getLocalAddress() {
+            return localAddress;
+        }
+
+        private void onReadable() throws IOException {
+            if (!in.hasRemaining()) {
+                if (in.capacity() >= MAX_HEADER_BYTES + MAX_BODY_BYTES) {
+                    reject(413, "Payload Too Large");
+                    return;
+                }
+                var larger = ByteBuffer.allocate(Math.min(in.capacity() * 2,
+                        MAX_HEADER_BYTES + MAX_BODY_BYTES));
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+            var n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActive = System.nanoTime();
+            dispatch();
+        }
+
+        // Starts the next request in the input buffer, or waits for more input.
+        private void dispatch() throws IOException {
+            if (exchange != null || closed) {
+                return;
+            }
+            var request = parse();
+            if (request == null) {
+                if (!closed) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                return;
+            }
+            exchange = request;
+            // Pipelined requests wait in the buffer until this one is answered.
+            key.interestOps(0);
+            synchronized (this) {
+                finished = false;
+            }
+            activeExchanges.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    // An executor that runs tasks on the caller when it's saturated would run the
+                    // exchange on the selector thread and stall every connection.
+                    if (Thread.currentThread() == dispatcher) {
+                        throw new RejectedExecutionException("Executor saturated");
+                    }
+                    handle(request);
+                });
+            } catch (RuntimeException e) {
+                // Rejected by a saturated or stopped executor.
+                activeExchanges.decrementAndGet();
+                exchange = null;
+                reject(503, "Service Unavailable");
+            }
+        }
+
+        // Parses the request at the start of the input buffer, returning null if it's incomplete.
+        private NioHttpExchange parse() throws IOException {
+            var data = in.array();
+            var limit = in.position();
+            var start = 0;
+            // Ignores empty lines between requests, as RFC 7230 suggests.
+            while (start + 1 < limit && data[start] == '\r' && data[start + 1] == '\n') {
+                start += 2;
+            }
+            var headersEnd = indexOf(data, start, limit, HEADERS_END);
+            if (headersEnd < 0) {
+                if (limit - start >= MAX_HEADER_BYTES) {
+                    reject(431, "Request Header Fields Too Large");
+                }
+                return null;
+            }
+
+            var text = new String(data, start, headersEnd - start, StandardCharsets.ISO_8859_1);
+            var lines = text.split("\r\n");
+            var requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                reject(400, "Bad Request");
+                return null;
+            }
+            URI uri;
+            try {
+                uri = new URI(requestLine[1]);
+            } catch (URISyntaxException e) {
+                reject(400, "Bad Request");
+                return null;
+            }
+            var headers = new Headers();
+            for (var i = 1; i < lines.length; i++) {
+                var colon = lines[i].indexOf(':');
+                if (colon <= 0 || Character.isWhitespace(lines[i].charAt(0))) {
+                    reject(400, "Bad Request");
+                    return null;
+                }
+                headers.add(lines[i].substring(0, colon).strip(),
+                        lines[i].substring(colon + 1).strip());
+            }
+            if (headers.containsKey("Transfer-Encoding")) {
+                reject(501, "Not Implemented");
+                return null;
+            }
+            var contentLength = 0L;
+            var contentLengthHeader = headers.getFirst("Content-Length");
+            if (contentLengthHeader != null) {
+                try {
+                    contentLength = Long.parseLong(contentLengthHeader);
+                } catch (NumberFormatException e) {
+                    contentLength = -1L;
+                }
+                if (contentLength < 0) {
+                    reject(400, "Bad Request");
+                    return null;
+                } else if (contentLength > MAX_BODY_BYTES) {
+                    reject(413, "Payload Too Large");
+                    return null;
+                }
+            }
+            var bodyStart = headersEnd + HEADERS_END.length;
+            if (limit - bodyStart < contentLength) {
+                return null;
+            }
+            var body = new byte[(int) contentLength];
+            System.arraycopy(data, bodyStart, body, 0, body.length);
+
+            // Keeps whatever follows, the start of the next pipelined request.
+            in.flip();
+            in.position(bodyStart + body.length);
+            in.compact();
+            if (in.capacity() > READ_BUFFER_SIZE && in.position() < READ_BUFFER_SIZE) {
+                in.flip();
+                in = ByteBuffer.allocate(READ_BUFFER_SIZE).put(in);
+            }
+
+            var protocol = requestLine[2];
+            var connectionHeader = headers.getFirst("Connection");
+            keepAlive = protocol.equals("HTTP/1.1")
+                    ? !"close".equalsIgnoreCase(connectionHeader)
+                    : "keep-alive".equalsIgnoreCase(connectionHeader);
+            var context = findContext(uri.getRawPath() == null ? "/" : uri.getRawPath());
+            return new NioHttpExchange(this, context, requestLine[0], uri, protocol, headers, body,
+                    keepAlive);
+        }
+
+        // Runs on a worker thread.
+        private void handle(NioHttpExchange request) {
+            try {
+                var context = (Context) request.getHttpContext();
+                if (context == null || context.handler == null) {
+                    request.getResponseHeaders().set("Content-Type", "text/plain");
+                    request.sendResponseHeaders(404, -1);
+                } else {
+                    new Filter.Chain(context.filters, context.handler).doFilter(request);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(DEBUG, "Exchange failed", e);
+                if (!request.isResponseStarted()) {
+                    try {
+                        request.getResponseHeaders().clear();
+                        request.sendResponseHeaders(500, -1);
+                    } catch (IOException e1) {
+                        // The connection is closed below.
+                    }
+                } else {
+                    request.abort();
+                }
+            } finally {
+                request.close();
+            }
+        }
+
+        /**
+         * Write buffers to the client, straight away as far as the socket takes them. The rest is
+         * copied and written by the selector thread, the caller waits if too much is queued.
+         *
+         * @param buffers buffers to write, they can be reused once this returns.
+         * @throws IOException if the connection is closed.
+         */
+        synchronized void write(ByteBuffer... buffers) throws IOException {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            if (pending.isEmpty()) {
+                try {
+                    channel.write(buffers);
+                } catch (IOException e) {
+                    closeLater();
+                    throw e;
+                }
+            }
+            for (var buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    var copy = ByteBuffer.allocate(buffer.remaining());
+                    copy.put(buffer).flip();
+                    pending.add(copy);
+                    pendingBytes += copy.remaining();
+                }
+            }
+            if (!pending.isEmpty()) {
+                requestWrite();
+            }
+            // An executor running exchanges on the caller when saturated can run them here, and
+            // the selector thread can't wait for itself.
+            while (pendingBytes > MAX_PENDING_BYTES && !closed
+                    && Thread.currentThread() != dispatcher) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing");
+                }
+            }
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+        }
+
+        /**
+         * Mark the exchange as answered, the connection moves on to the next request or is
+         * closed once the response is written.
+         *
+         * @param reuse {@code true} if the connection can be kept alive.
+         */
+        synchronized void finish(boolean reuse) {
+            finished = true;
+            keepAlive = keepAlive && reuse;
+            execute(this::afterWrite);
+        }
+
+        private synchronized void requestWrite() {
+            if (!writeRequested) {
+                writeRequested = true;
+                execute(() -> {
+                    if (key.isValid()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                });
+            }
+        }
+
+        private void onWritable() throws IOException {
+            synchronized (this) {
+                if (!pending.isEmpty()) {
+                    var written = channel.write(pending.toArray(new ByteBuffer[0]));
+                    pendingBytes -= written;
+                    while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+                        pending.poll();
+                    }
+                    notifyAll();
+                }
+                if (!pending.isEmpty()) {
+                    return;
+                }
+                writeRequested = false;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            afterWrite();
+        }
+
+        // Runs on the selector thread once the response may be complete.
+        private void afterWrite() {
+            boolean reuse;
+            synchronized (this) {
+                if (!finished || !pending.isEmpty() || exchange == null) {
+                    return;
+                }
+                finished = false;
+                reuse = keepAlive;
+            }
+            exchange = null;
+            activeExchanges.decrementAndGet();
+            lastActive = System.nanoTime();
+            if (!reuse) {
+                close();
+                return;
+            }
+            try {
+                dispatch();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        // Answers a request that can't be handled and closes the connection.
+        private void reject(int status, String reason) throws IOException {
+            var response = ("HTTP/1.1 " + status + ' ' + reason + "\r\nContent-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            channel.write(ByteBuffer.wrap(response));
+            close();
+        }
+
+        private void closeLater() {
+            closed = true;
+            execute(this::close);
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+                pendingBytes = 0;
+                notifyAll();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(DEBUG, "Failed to close connection", e);
+            }
+            if (exchange != null) {
+                exchange = null;
+                activeExchanges.decrementAndGet();
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] target) {
+        outer: for (var i = from; i <= to - target.length; i++) {
+            for (var j = 0; j < target.length; j++) {
+                if (data[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Context of the server.
+     */
+    private final class Context extends HttpContext {
+
+        private final String path;
+
+        private final List<Filter> filters = new CopyOnWriteArrayList<>();
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        private volatile HttpHandler handler;
+
+        private Authenticator authenticator;
+
+        private Context(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpHandler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public void setHandler(HttpHandler handler) {
+            if (this.handler != null) {
+                throw new IllegalArgumentException("Handler already set");
+            }
+            this.handler = handler;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public HttpServer getServer() {
+            return NioHttpServer.this;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<Filter> getFilters() {
+            return filters;
+        }
+
+        @Override
+        public Authenticator setAuthenticator(Authenticator auth) {
+            var previous = authenticator;
+            authenticator = auth;
+            return previous;
+        }
+
+        @Override
+        public Authenticator getAuthenticator() {
+            return authenticator;
+        }
+    }
+}
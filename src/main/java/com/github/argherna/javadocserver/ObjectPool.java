@@ -0,0 +1,76 @@
+package com.github.argherna.javadocserver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Small lock-free pool of reusable objects.
+ *
+ * <p>
+ * Objects sit in a fixed array of slots. Threads start looking for a free or full slot at a
+ * position derived from their id, so threads on different processors rarely touch the same slot.
+ * Taking an object from an empty pool creates a new one, and an object given back to a full pool
+ * is discarded. Neither operation allocates.
+ *
+ * @param <T> type of the pooled objects.
+ */
+class ObjectPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    private final Supplier<T> factory;
+
+    private final Consumer<T> discarder;
+
+    /**
+     * @param size      number of objects the pool keeps.
+     * @param factory   creates an object when the pool is empty.
+     * @param discarder disposes of an object given back to a full pool.
+     */
+    ObjectPool(int size, Supplier<T> factory, Consumer<T> discarder) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, size));
+        this.factory = factory;
+        this.discarder = discarder;
+    }
+
+    /**
+     * Return an object from the pool, or a new object if the pool is empty.
+     */
+    T take() {
+        var length = slots.length();
+        var start = start(length);
+        for (var i = 0; i < length; i++) {
+            var index = (start + i) % length;
+            if (slots.get(index) != null) {
+                var value = slots.getAndSet(index, null);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return factory.get();
+    }
+
+    /**
+     * Give an object back to the pool.
+     *
+     * @param value object that is no longer used.
+     */
+    void give(T value) {
+        var length = slots.length();
+        var start = start(length);
+        for (var i = 0; i < length; i++) {
+            var index = (start + i) % length;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, value)) {
+                return;
+            }
+        }
+        discarder.accept(value);
+    }
+
+    private static int start(int length) {
+        var id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & 0x7fffffff) % length;
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.TRACE;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Scans a Maven repository for directories containing javadoc archives on a {@link ForkJoinPool}.
+ *
+ * <p>
+ * Every directory is listed by its own task, and the tasks for its subdirectories are forked so
+ * that idle workers steal whole groupId and artifactId subtrees from each other. Scans are bound by
+ * I/O latency rather than CPU, so the default parallelism is twice the number of processors
+ * (configurable by setting the {@value #SYS_PROP_PARALLELISM} system property).
+ *
+ * <p>
+ * The scanner reports the same directory names as {@link JavadocArchiveFinder}, relative to the
+ * base path: every directory with an entry named {@code *-javadoc.jar} that isn't a directory,
+ * symbolic links included, found without following symbolic links to directories. The one
+ * difference is that entries whose names end with a file extension Maven uses for artifacts and
+ * their metadata are taken to be files without reading their attributes, so a directory named like
+ * one, {@code foo.jar} say, isn't descended into. A directory that can't be listed is logged and
+ * skipped instead of ending the scan.
+ */
+class ParallelJavadocArchiveScanner implements Closeable {
+
+    private static final System.Logger LOGGER =
+            System.getLogger(ParallelJavadocArchiveScanner.class.getName(), ResourceBundle
+                    .getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_PARALLELISM =
+            "com.github.argherna.javadocserver.scanner.parallelism";
+
+    static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final String[] FILE_SUFFIXES = {".jar", ".pom", ".sha1", ".md5", ".sha256",
+            ".sha512", ".asc", ".xml", ".module", ".repositories", ".lastUpdated", ".properties",
+            ".zip", ".war", ".aar", ".tar.gz"};
+
+    private final ForkJoinPool pool;
+
+    ParallelJavadocArchiveScanner() {
+        this(Util.getIntegerProperty(SYS_PROP_PARALLELISM, DEFAULT_PARALLELISM));
+    }
+
+    ParallelJavadocArchiveScanner(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("javadoc-server-scanner-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Return the directory names relative to {@code basePath} of every directory under
+     * {@code basePath} that contains a javadoc archive.
+     *
+     * @param basePath base path of the repository.
+     * @return directory names relative to the base path.
+     */
+    Collection<String> scan(Path basePath) {
+        return scan(basePath, basePath, d -> {
+        });
+    }
+
+    /**
+     * Return the directory names relative to {@code basePath} of every directory under
+     * {@code dir} that contains a javadoc archive, calling {@code onDirectory} for every directory
+     * that is listed.
+     *
+     * @param basePath    base path of the repository.
+     * @param dir         directory to start the scan from, at or under the base path.
+     * @param onDirectory called from worker threads with every directory listed.
+     * @return directory names relative to the base path.
+     */
+    Collection<String> scan(Path basePath, Path dir, Consumer<Path> onDirectory) {
+        return pool.invoke(new ScanTask(basePath.getNameCount(), dir, onDirectory));
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static boolean isFileName(String name) {
+        for (var suffix : FILE_SUFFIXES) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class ScanTask extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int baseNameCount;
+
+        private final Path dir;
+
+        private final transient Consumer<Path> onDirectory;
+
+        ScanTask(int baseNameCount, Path dir, Consumer<Path> onDirectory) {
+            this.baseNameCount = baseNameCount;
+            this.dir = dir;
+            this.onDirectory = onDirectory;
+        }
+
+        @Override
+        protected List<String> compute() {
+            LOGGER.log(TRACE, "logger.finer.scanning", dir.toString());
+            onDirectory.accept(dir);
+            var results = new ArrayList<String>();
+            var subdirs = new ArrayList<Path>();
+            var hasJavadocArchive = false;
+            try (var entries = Files.newDirectoryStream(dir)) {
+                for (var entry : entries) {
+                    var name = entry.getFileName().toString();
+                    if (JavadocArchiveFinder.isJavadocArchive(entry.getFileName())) {
+                        if (isDirectory(entry)) {
+                            subdirs.add(entry);
+                        } else {
+                            hasJavadocArchive = true;
+                        }
+                    } else if (!isFileName(name) && isDirectory(entry)) {
+                        subdirs.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(WARNING, "logger.warning.visitfail", e);
+                return results;
+            }
+
+            if (hasJavadocArchive && dir.getNameCount() > baseNameCount) {
+                var subpath = dir.subpath(baseNameCount, dir.getNameCount()).toString();
+                LOGGER.log(TRACE, "logger.finer.adding", subpath);
+                results.add(subpath);
+            }
+
+            var tasks = new ArrayList<ScanTask>(subdirs.size());
+            for (var subdir : subdirs) {
+                tasks.add(new ScanTask(baseNameCount, subdir, onDirectory));
+            }
+            for (var task : invokeAll(tasks)) {
+                results.addAll(task.join());
+            }
+            return results;
+        }
+
+        // Symbolic links aren't followed, a link to a directory is a file like it is to the finder.
+        private static boolean isDirectory(Path entry) throws IOException {
+            return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                    .isDirectory();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.github.argherna.javadocserver;
+
+import java.io.File;
+
+/**
+ * Request path parsed into what it points to, like the JDK documentation key or the Maven
+ * coordinates, and the name of the archive entry.
+ *
+ * <p>
+ * Paths are parsed once with index arithmetic, the parts are kept as positions in the path and
+ * only turned into strings when they are needed. Paths are always split on {@code /}, whatever the
+ * file separator of the host is.
+ */
+final class Route {
+
+    private static final String SNAPSHOT_SUFFIX = "-SNAPSHOT";
+
+    /**
+     * What a route points to.
+     */
+    static enum Kind {
+
+        /**
+         * An entry in a JDK documentation archive, {@code /jdk/<key>/<entry>}.
+         */
+        JDK,
+
+        /**
+         * An entry in a javadoc archive in the Maven repository,
+         * {@code /m2/<groupId>/<artifactId>/<version>/<entry>}.
+         */
+        M2;
+    }
+
+    private final Kind kind;
+
+    private final String path;
+
+    // The key for JDK routes, the coordinates for Maven routes.
+    private final int keyStart;
+
+    private final int keyEnd;
+
+    private final int groupEnd;
+
+    private final int artifactStart;
+
+    private final int artifactEnd;
+
+    private final int versionStart;
+
+    private final int entryStart;
+
+    private final int entryEnd;
+
+    private Route(Kind kind, String path, int keyStart, int keyEnd, int groupEnd,
+            int artifactStart, int artifactEnd, int versionStart, int entryStart, int entryEnd) {
+        this.kind = kind;
+        this.path = path;
+        this.keyStart = keyStart;
+        this.keyEnd = keyEnd;
+        this.groupEnd = groupEnd;
+        this.artifactStart = artifactStart;
+        this.artifactEnd = artifactEnd;
+        this.versionStart = versionStart;
+        this.entryStart = entryStart;
+        this.entryEnd = entryEnd;
+    }
+
+    /**
+     * Parse a decoded request path. Empty path elements are ignored, so {@code //jdk//17/a.html}
+     * is the same as {@code /jdk/17/a.html}.
+     *
+     * @param path decoded request path.
+     * @return the route, or {@code null} if the path doesn't point into an archive.
+     */
+    static Route parse(String path) {
+        var start = skipSlashes(path, 0);
+        var end = elementEnd(path, start);
+        Kind kind;
+        if (end - start == 3 && path.startsWith("jdk", start)) {
+            kind = Kind.JDK;
+        } else if (end - start == 2 && path.startsWith("m2", start)) {
+            kind = Kind.M2;
+        } else {
+            return null;
+        }
+
+        var keyStart = skipSlashes(path, end);
+        var keyEnd = elementEnd(path, keyStart);
+        if (keyStart == keyEnd) {
+            return null;
+        }
+        var groupEnd = keyEnd;
+        var artifactStart = -1;
+        var artifactEnd = -1;
+        var versionStart = -1;
+        if (kind == Kind.M2) {
+            artifactStart = skipSlashes(path, groupEnd);
+            artifactEnd = elementEnd(path, artifactStart);
+            versionStart = skipSlashes(path, artifactEnd);
+            keyEnd = elementEnd(path, versionStart);
+            if (artifactStart == artifactEnd || versionStart == keyEnd) {
+                return null;
+            }
+        }
+
+        var entryStart = skipSlashes(path, keyEnd);
+        var entryEnd = path.length();
+        while (entryEnd > entryStart && path.charAt(entryEnd - 1) == '/') {
+            entryEnd--;
+        }
+        if (kind == Kind.JDK && entryStart == entryEnd) {
+            return null;
+        }
+        return new Route(kind, path, keyStart, keyEnd, groupEnd, artifactStart, artifactEnd,
+                versionStart, entryStart, entryEnd);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Return {@code true} if the key of the route, the JDK documentation key or the Maven
+     * coordinates as {@code <groupId>/<artifactId>/<version>}, is the given string.
+     *
+     * @param key key to compare with.
+     * @return {@code true} if the key is the same.
+     */
+    boolean keyEquals(String key) {
+        return key.length() == keyEnd - keyStart && path.startsWith(key, keyStart);
+    }
+
+    /**
+     * Return a hash code of the key of the route, equal to the hash code of the key as a string.
+     *
+     * @return hash code of the key.
+     */
+    int keyHashCode() {
+        var h = 0;
+        for (var i = keyStart; i < keyEnd; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * Return the key of the route as a string.
+     *
+     * @return JDK documentation key or Maven coordinates.
+     */
+    String getKey() {
+        return path.substring(keyStart, keyEnd);
+    }
+
+    /**
+     * Return the group id and artifact id of a Maven route as {@code <groupId>/<artifactId>}.
+     *
+     * @return the artifact.
+     */
+    String getArtifact() {
+        return path.substring(keyStart, groupEnd) + '/'
+                + path.substring(artifactStart, artifactEnd);
+    }
+
+    /**
+     * Return the version of a Maven route.
+     *
+     * @return the version.
+     */
+    String getVersion() {
+        return path.substring(versionStart, keyEnd);
+    }
+
+    /**
+     * Return this Maven route with another version, pointing to the same entry.
+     *
+     * @param version the version.
+     * @return the route for the version.
+     */
+    Route withVersion(String version) {
+        return parse("/m2/" + path.substring(keyStart, groupEnd) + '/'
+                + path.substring(artifactStart, artifactEnd) + '/' + version + '/'
+                + path.substring(entryStart, entryEnd));
+    }
+
+    /**
+     * Return {@code true} if the Maven version of the route is a SNAPSHOT version.
+     *
+     * @return {@code true} for SNAPSHOT versions.
+     */
+    boolean isSnapshot() {
+        return kind == Kind.M2 && keyEnd - versionStart >= SNAPSHOT_SUFFIX.length()
+                && path.startsWith(SNAPSHOT_SUFFIX, keyEnd - SNAPSHOT_SUFFIX.length());
+    }
+
+    /**
+     * Return the name of the archive entry the route points to, with empty path elements removed.
+     *
+     * @return entry name, empty if the route points to the archive itself.
+     */
+    String getEntryName() {
+        var entryName = path.substring(entryStart, entryEnd);
+        return entryName.contains("//") ? entryName.replaceAll("/+", "/") : entryName;
+    }
+
+    /**
+     * Return the path to the javadoc archive of a Maven route in a repository.
+     *
+     * @param repository path to the Maven repository.
+     * @return path to the javadoc archive.
+     */
+    String toArchivePath(String repository) {
+        var sb = new StringBuilder(repository.length() + 2 * (keyEnd - keyStart) + 16);
+        sb.append(repository).append(File.separatorChar);
+        for (var i = keyStart; i < groupEnd; i++) {
+            var c = path.charAt(i);
+            sb.append(c == '.' ? File.separatorChar : c);
+        }
+        sb.append(File.separatorChar).append(path, artifactStart, artifactEnd)
+                .append(File.separatorChar).append(path, versionStart, keyEnd)
+                .append(File.separatorChar).append(path, artifactStart, artifactEnd).append('-')
+                .append(path, versionStart, keyEnd).append("-javadoc.jar");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return kind + "[key=" + path.substring(keyStart, keyEnd) + ", entry="
+                + path.substring(entryStart, entryEnd) + "]";
+    }
+
+    private static int skipSlashes(String path, int from) {
+        while (from < path.length() && path.charAt(from) == '/') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int elementEnd(String path, int from) {
+        var end = path.indexOf('/', from);
+        return end < 0 ? path.length() : end;
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Answers {@code /api/search?q=<text>[&limit=<n>]} with the best matching modules, packages, types
+ * and members across every javadoc archive, as JSON.
+ *
+ * <p>
+ * The response is an object with the query and an array of hits, each with the kind, the simple
+ * and qualified names, the documentation set and the URL of the page documenting it:
+ *
+ * <pre>
+ * {"query":"string","hits":[{"kind":"type","name":"String","qualifiedName":"java.lang.String",
+ *   "source":"Java 17","url":"/jdk/17/docs/api/java.base/java/lang/String.html"}]}
+ * </pre>
+ */
+class SearchHandler extends JavadocHandler {
+
+    static final int DEFAULT_LIMIT = 20;
+
+    static final int MAX_LIMIT = 200;
+
+    private final String contentTypeJson =
+            JavadocServerFileNameMap.getInstance().getContentTypeFor(".json");
+
+    private final SearchIndex searchIndex;
+
+    SearchHandler(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        var params = parseQuery(exchange.getRequestURI().getRawQuery());
+        var query = params.getOrDefault("q", "").strip();
+        if (query.isEmpty()) {
+            doSend(exchange, contentTypeJson, error("Missing query parameter q"),
+                    HTTP_BAD_REQUEST);
+            return;
+        }
+        var limit = DEFAULT_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Math.min(MAX_LIMIT, Math.max(1, Integer.parseInt(params.get("limit"))));
+            } catch (NumberFormatException e) {
+                doSend(exchange, contentTypeJson, error("Invalid limit"), HTTP_BAD_REQUEST);
+                return;
+            }
+        }
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        doSend(exchange, contentTypeJson, toJson(query, searchIndex.search(query, limit)),
+                HTTP_OK);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var params = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (var pair : rawQuery.split("&")) {
+            var eq = pair.indexOf('=');
+            var name = eq < 0 ? pair : pair.substring(0, eq);
+            var value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                // Ignore malformed escapes, the parameter is missing as far as we're concerned.
+            }
+        }
+        return params;
+    }
+
+    private static byte[] toJson(String query, List<SearchIndex.Hit> hits) {
+        var sb = new StringBuilder(64 + hits.size() * 160);
+        sb.append("{\"query\":");
+        appendString(sb, query);
+        sb.append(",\"hits\":[");
+        for (var i = 0; i < hits.size(); i++) {
+            var hit = hits.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"kind\":");
+            appendString(sb, hit.getKind().label());
+            sb.append(",\"name\":");
+            appendString(sb, hit.getName());
+            sb.append(",\"qualifiedName\":");
+            appendString(sb, hit.getQualifiedName());
+            sb.append(",\"source\":");
+            appendString(sb, hit.getSource());
+            sb.append(",\"url\":");
+            appendString(sb, hit.getUrl());
+            sb.append('}');
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] error(String message) {
+        var sb = new StringBuilder("{\"error\":");
+        appendString(sb, message);
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (var i = 0; i < s.length(); i++) {
+            var c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,906 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Searchable index of the modules, packages, types and members documented in every javadoc
+ * archive the server knows about.
+ *
+ * <p>
+ * Javadoc writes its search data to {@code module-search-index.js},
+ * {@code package-search-index.js}, {@code type-search-index.js} and {@code member-search-index.js}
+ * (zipped JSON files named {@code *-search-index.zip} before JDK 11). Each archive's files are read
+ * into a {@link Segment} that keeps the lower-cased names sorted for prefix matches and a trigram
+ * posting list for substring matches. Segments are rebuilt only for archives that changed, in
+ * parallel on a {@link ForkJoinPool} of {@value #SYS_PROP_PARALLELISM} threads (defaults to the
+ * number of processors).
+ *
+ * <p>
+ * Hits are ranked by how well the name matches (exact, then prefix, then substring), then by kind
+ * (types before modules and packages before members), then by the length of the name.
+ */
+class SearchIndex implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(SearchIndex.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String SYS_PROP_PARALLELISM =
+            "com.github.argherna.javadocserver.search.parallelism";
+
+    private static final String[] INDEX_FILES = {"module-search-index", "package-search-index",
+            "type-search-index", "member-search-index"};
+
+    private static final Kind[] FILE_KINDS = {Kind.MODULE, Kind.PACKAGE, Kind.TYPE, Kind.MEMBER};
+
+    private static final Kind[] KINDS = Kind.values();
+
+    // Searching many segments is spread over the pool, searching a few isn't worth the hand-off.
+    private static final int PARALLEL_SEARCH_THRESHOLD = 64;
+
+    private static final class InstanceHolder {
+        private static final SearchIndex INSTANCE = new SearchIndex(Util.getIntegerProperty(
+                SYS_PROP_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    }
+
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+
+    SearchIndex(int parallelism) {
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("javadoc-server-search-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    static SearchIndex getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Bring the index in line with the given sources. Segments are built for new sources and
+     * sources whose archive changed, and dropped for sources that are gone.
+     *
+     * @param sources every archive that should be searchable.
+     */
+    void update(Collection<Source> sources) {
+        var prefixes = new HashSet<String>();
+        var tasks = new ArrayList<Callable<Void>>();
+        for (var source : sources) {
+            prefixes.add(source.urlPrefix);
+            tasks.add(() -> {
+                refresh(source);
+                return null;
+            });
+        }
+        segments.keySet().retainAll(prefixes);
+        for (var future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOGGER.log(WARNING, "logger.warning.searchindexfail", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Return the best hits for the query across every segment.
+     *
+     * @param query text to search for, matched case-insensitively against names. Text up to the
+     *              last period, if any, must also be part of the qualified name.
+     * @param limit maximum number of hits.
+     * @return ranked hits, best first.
+     */
+    List<Hit> search(String query, int limit) {
+        var q = Query.parse(query);
+        if (q == null || limit <= 0) {
+            return List.of();
+        }
+        var all = new ArrayList<>(segments.values());
+        // Segments past the most a candidate can number aren't searched.
+        var count = Math.min(all.size(), TopHits.MAX_SEGMENTS);
+        var top = new TopHits(limit);
+        if (count < PARALLEL_SEARCH_THRESHOLD) {
+            for (var i = 0; i < count; i++) {
+                all.get(i).search(q, i, top);
+            }
+        } else {
+            var chunks = pool.getParallelism();
+            var tasks = new ArrayList<Callable<TopHits>>(chunks);
+            for (var c = 0; c < chunks; c++) {
+                var chunk = c;
+                tasks.add(() -> {
+                    var chunkTop = new TopHits(limit);
+                    for (var i = chunk; i < count; i += chunks) {
+                        all.get(i).search(q, i, chunkTop);
+                    }
+                    return chunkTop;
+                });
+            }
+            for (var future : pool.invokeAll(tasks)) {
+                try {
+                    top.addAll(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return List.of();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        var hits = new ArrayList<Hit>(top.size);
+        for (var i = 0; i < top.size; i++) {
+            var packed = top.heap[i];
+            hits.add(all.get(TopHits.segment(packed)).hit(TopHits.element(packed),
+                    TopHits.match(packed)));
+        }
+        hits.sort(Hit.RANKING);
+        return hits;
+    }
+
+    /**
+     * Return the number of archives in the index.
+     */
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void refresh(Source source) throws IOException {
+        var path = Paths.get(source.archiveName);
+        long identity;
+        try {
+            var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            identity = HttpCaching.archiveIdentity(path.toString(), attrs.size(),
+                    attrs.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            segments.remove(source.urlPrefix);
+            throw e;
+        }
+        var segment = segments.get(source.urlPrefix);
+        if (segment != null && segment.identity == identity) {
+            return;
+        }
+        try (var zf = new ZipFile(path.toFile())) {
+            segment = Segment.build(source, identity, zf);
+        } catch (IOException | RuntimeException e) {
+            segments.remove(source.urlPrefix);
+            throw new IOException(source.archiveName, e);
+        }
+        segments.put(source.urlPrefix, segment);
+        LOGGER.log(DEBUG, "logger.finer.searchindexed", source.archiveName, segment.size());
+    }
+
+    /**
+     * Javadoc archive and where its pages are served from.
+     */
+    static final class Source {
+
+        private final String archiveName;
+
+        private final String urlPrefix;
+
+        private final String label;
+
+        /**
+         * @param archiveName path to the archive.
+         * @param urlPrefix   URL path the archive's entries are served under, ending in a slash.
+         * @param label       name of the documentation set shown with hits.
+         */
+        Source(String archiveName, String urlPrefix, String label) {
+            this.archiveName = archiveName;
+            this.urlPrefix = urlPrefix;
+            this.label = label;
+        }
+
+        String getArchiveName() {
+            return archiveName;
+        }
+    }
+
+    /**
+     * Kinds of documented elements, in ranking order.
+     */
+    enum Kind {
+        TYPE, MODULE, PACKAGE, MEMBER;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Search result.
+     */
+    static final class Hit {
+
+        // Written out rather than chained, it's called for every candidate.
+        static final Comparator<Hit> RANKING = new Comparator<>() {
+            @Override
+            public int compare(Hit a, Hit b) {
+                if (a.match != b.match) {
+                    return Integer.compare(a.match, b.match);
+                }
+                if (a.kind != b.kind) {
+                    return a.kind.compareTo(b.kind);
+                }
+                if (a.name.length() != b.name.length()) {
+                    return Integer.compare(a.name.length(), b.name.length());
+                }
+                var c = a.qualifiedName.compareTo(b.qualifiedName);
+                return c != 0 ? c : a.url.compareTo(b.url);
+            }
+        };
+
+
+        private final int match;
+
+        private final Kind kind;
+
+        private final String name;
+
+        private final String qualifiedName;
+
+        private final String source;
+
+        private final String url;
+
+        Hit(int match, Kind kind, String name, String qualifiedName, String source, String url) {
+            this.match = match;
+            this.kind = kind;
+            this.name = name;
+            this.qualifiedName = qualifiedName;
+            this.source = source;
+            this.url = url;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getQualifiedName() {
+            return qualifiedName;
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        String getUrl() {
+            return url;
+        }
+    }
+
+    // Lower-cased query split into the name to match and an optional qualifier.
+    private static final class Query {
+
+        private static final int EXACT = 0;
+
+        private static final int PREFIX = 1;
+
+        private static final int SUBSTRING = 2;
+
+        private final String name;
+
+        private final String qualifier;
+
+        private final int[] trigrams;
+
+        private Query(String name, String qualifier) {
+            this.name = name;
+            this.qualifier = qualifier;
+            this.trigrams = Segment.trigrams(name);
+        }
+
+        static Query parse(String text) {
+            if (text == null) {
+                return null;
+            }
+            var q = text.strip().toLowerCase();
+            var paren = q.indexOf('(');
+            if (paren >= 0) {
+                q = q.substring(0, paren);
+            }
+            var dot = q.lastIndexOf('.');
+            var name = q.substring(dot + 1);
+            if (name.isEmpty()) {
+                return null;
+            }
+            return new Query(name, dot > 0 ? q.substring(0, dot) : null);
+        }
+    }
+
+    /**
+     * Searchable data of one archive.
+     */
+    static final class Segment {
+
+        private final Source source;
+
+        private final long identity;
+
+        // Directory of the javadoc within the archive, for example "docs/api/".
+        private final String root;
+
+        private final byte[] kinds;
+
+        // Lower-cased simple names without parameter lists, the text queries are matched against.
+        private final String[] keys;
+
+        private final String[] labels;
+
+        private final String[] modules;
+
+        private final String[] packages;
+
+        private final String[] classes;
+
+        private final String[] urls;
+
+        // Lower-cased names of what contains each element, like "java.util" for the type
+        // java.util.Map or "java.util.map" for its members. Shared by elements with the same one.
+        private final String[] containers;
+
+        // Element numbers sorted by key.
+        private final int[] sorted;
+
+        private final Map<Integer, int[]> postings;
+
+        private Segment(Source source, long identity, String root, List<Element> elements) {
+            this.source = source;
+            this.identity = identity;
+            this.root = root;
+            var count = elements.size();
+            kinds = new byte[count];
+            keys = new String[count];
+            labels = new String[count];
+            modules = new String[count];
+            packages = new String[count];
+            classes = new String[count];
+            urls = new String[count];
+            containers = new String[count];
+            var lowerCased = new HashMap<String, String>();
+            for (var i = 0; i < count; i++) {
+                var e = elements.get(i);
+                kinds[i] = (byte) e.kind.ordinal();
+                labels[i] = e.label;
+                modules[i] = e.module;
+                packages[i] = e.pkg;
+                classes[i] = e.cls;
+                urls[i] = e.url;
+                var paren = e.label.indexOf('(');
+                keys[i] = (paren < 0 ? e.label : e.label.substring(0, paren)).toLowerCase();
+                var p = e.pkg == null || e.pkg.equals("<Unnamed>") ? null : e.pkg;
+                var container = e.kind == Kind.MEMBER ? (p == null ? e.cls : p + "." + e.cls)
+                        : e.kind == Kind.TYPE && p != null ? p : "";
+                containers[i] = lowerCased.computeIfAbsent(container, String::toLowerCase);
+            }
+            sorted = sortedByKey(keys);
+            postings = buildPostings(keys);
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        /**
+         * Build the segment for an archive from its javadoc search files.
+         */
+        static Segment build(Source source, long identity, ZipFile zf) throws IOException {
+            String root = null;
+            var elements = new ArrayList<Element>();
+            var strings = new HashMap<String, String>();
+            for (var kind = 0; kind < INDEX_FILES.length; kind++) {
+                var found = findIndexFile(zf, INDEX_FILES[kind]);
+                if (found == null) {
+                    continue;
+                }
+                var name = found.getName();
+                var dir = name.substring(0, name.lastIndexOf('/') + 1);
+                if (root == null) {
+                    root = dir;
+                } else if (!root.equals(dir)) {
+                    continue;
+                }
+                List<Map<String, String>> items;
+                try {
+                    items = parseItems(read(zf, found));
+                } catch (ZipException e) {
+                    LOGGER.log(DEBUG, "logger.finer.searchfileskipped", name);
+                    continue;
+                }
+                for (var item : items) {
+                    if (elements.size() == TopHits.MAX_ELEMENTS) {
+                        break;
+                    }
+                    var element = toElement(FILE_KINDS[kind], item, strings);
+                    if (element != null) {
+                        elements.add(element);
+                    }
+                }
+            }
+            return new Segment(source, identity, root == null ? "" : root, elements);
+        }
+
+        // Returns the search file nearest to the root of the archive, or null if there's none.
+        private static ZipEntry findIndexFile(ZipFile zf, String baseName) {
+            ZipEntry best = null;
+            for (var entries = zf.entries(); entries.hasMoreElements();) {
+                var entry = entries.nextElement();
+                var name = entry.getName();
+                var fileName = name.substring(name.lastIndexOf('/') + 1);
+                if ((fileName.equals(baseName + ".js") || fileName.equals(baseName + ".zip"))
+                        && (best == null || name.length() < best.getName().length())) {
+                    best = entry;
+                }
+            }
+            return best;
+        }
+
+        private static String read(ZipFile zf, ZipEntry entry) throws IOException {
+            byte[] bytes;
+            try (var in = zf.getInputStream(entry)) {
+                bytes = in.readAllBytes();
+            }
+            if (entry.getName().endsWith(".zip")) {
+                try (var in = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+                    if (in.getNextEntry() == null) {
+                        throw new ZipException("Empty search index " + entry.getName());
+                    }
+                    bytes = in.readAllBytes();
+                }
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static Element toElement(Kind kind, Map<String, String> item,
+                Map<String, String> strings) {
+            var l = item.get("l");
+            if (l == null || l.isEmpty()) {
+                return null;
+            }
+            var m = intern(strings, item.get("m"));
+            var p = intern(strings, item.get("p"));
+            var c = intern(strings, item.get("c"));
+            var u = item.get("u");
+            var moduleDir = m == null ? "" : m + "/";
+            var packageDir = p == null || p.equals("<Unnamed>") ? "" : p.replace('.', '/') + "/";
+            String url;
+            switch (kind) {
+                case MODULE:
+                    url = u != null ? u : l + "/module-summary.html";
+                    break;
+                case PACKAGE:
+                    if (u != null) {
+                        url = u;
+                    } else if (l.equals("<Unnamed>")) {
+                        url = moduleDir + "package-summary.html";
+                    } else {
+                        url = moduleDir + l.replace('.', '/') + "/package-summary.html";
+                    }
+                    break;
+                case TYPE:
+                    url = u != null ? u : moduleDir + packageDir + l + ".html";
+                    break;
+                default:
+                    if (c == null) {
+                        return null;
+                    }
+                    url = moduleDir + packageDir + c + ".html#" + (u != null ? u : l);
+                    break;
+            }
+            return new Element(kind, l, m, p, c, url);
+        }
+
+        private static String intern(Map<String, String> strings, String s) {
+            if (s == null) {
+                return null;
+            }
+            var interned = strings.putIfAbsent(s, s);
+            return interned == null ? s : interned;
+        }
+
+        private void search(Query q, int segment, TopHits top) {
+            var from = lowerBound(q.name);
+            for (var i = from; i < sorted.length && keys[sorted[i]].startsWith(q.name); i++) {
+                var element = sorted[i];
+                var match = keys[element].length() == q.name.length() ? Query.EXACT : Query.PREFIX;
+                offer(top, segment, element, match, q);
+            }
+            // Substring matches rank below every prefix match, skip them once those fill the top.
+            if (q.trigrams.length > 0
+                    && top.accepts(TopHits.pack(Query.SUBSTRING, KINDS[0], 0, 0, 0))) {
+                for (var element : candidates(q.trigrams)) {
+                    var key = keys[element];
+                    if (!key.startsWith(q.name) && key.contains(q.name)) {
+                        offer(top, segment, element, Query.SUBSTRING, q);
+                    }
+                }
+            }
+        }
+
+        private void offer(TopHits top, int segment, int element, int match, Query q) {
+            var kind = KINDS[kinds[element]];
+            var nameLength = labels[element].length()
+                    + (kind == Kind.MEMBER ? classes[element].length() + 1 : 0);
+            var packed = TopHits.pack(match, kind, nameLength, segment, element);
+            if (top.accepts(packed)
+                    && (q.qualifier == null || isQualifiedBy(element, q.qualifier))) {
+                top.offer(packed);
+            }
+        }
+
+        // Returns true if the qualifier is part of the lower-cased qualified name of the element,
+        // without building the qualified name.
+        private boolean isQualifiedBy(int element, String qualifier) {
+            var container = containers[element];
+            var key = keys[element];
+            if (container.contains(qualifier) || key.contains(qualifier)) {
+                return true;
+            }
+            for (var dot = qualifier.indexOf('.'); dot >= 0; dot = qualifier.indexOf('.', dot + 1)) {
+                if (container.endsWith(qualifier.substring(0, dot))
+                        && key.startsWith(qualifier.substring(dot + 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Hit hit(int element, int match) {
+            var kind = KINDS[kinds[element]];
+            var name = kind == Kind.MEMBER ? classes[element] + "." + labels[element]
+                    : labels[element];
+            return new Hit(match, kind, name, qualifiedName(element), source.label,
+                    source.urlPrefix + root + urls[element]);
+        }
+
+        private String qualifiedName(int element) {
+            var kind = KINDS[kinds[element]];
+            var p = packages[element];
+            var prefix = p == null || p.equals("<Unnamed>") ? "" : p + ".";
+            switch (kind) {
+                case MEMBER:
+                    return prefix + classes[element] + "." + labels[element];
+                case TYPE:
+                    return prefix + labels[element];
+                default:
+                    return labels[element];
+            }
+        }
+
+        private int lowerBound(String key) {
+            var lo = 0;
+            var hi = sorted.length;
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (keys[sorted[mid]].compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        // Intersects the posting lists of the query's trigrams, shortest first.
+        private int[] candidates(int[] trigrams) {
+            var lists = new int[trigrams.length][];
+            for (var i = 0; i < trigrams.length; i++) {
+                lists[i] = postings.get(trigrams[i]);
+                if (lists[i] == null) {
+                    return new int[0];
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+            var result = lists[0];
+            for (var i = 1; i < lists.length && result.length > 0; i++) {
+                result = intersect(result, lists[i]);
+            }
+            return result;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            var out = new int[Math.min(a.length, b.length)];
+            var n = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length;) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static int[] sortedByKey(String[] keys) {
+            var order = new Integer[keys.length];
+            for (var i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+            var sorted = new int[order.length];
+            for (var i = 0; i < order.length; i++) {
+                sorted[i] = order[i];
+            }
+            return sorted;
+        }
+
+        // Sorts (trigram, element) pairs packed into longs and cuts them into posting lists, which
+        // come out sorted by element number.
+        private static Map<Integer, int[]> buildPostings(String[] keys) {
+            var pairs = new long[64];
+            var n = 0;
+            for (var i = 0; i < keys.length; i++) {
+                for (var t : trigrams(keys[i])) {
+                    if (n == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, n * 2);
+                    }
+                    pairs[n++] = ((long) t << 32) | i;
+                }
+            }
+            Arrays.sort(pairs, 0, n);
+            var postings = new HashMap<Integer, int[]>();
+            for (var start = 0; start < n;) {
+                var t = (int) (pairs[start] >> 32);
+                var end = start + 1;
+                while (end < n && (int) (pairs[end] >> 32) == t) {
+                    end++;
+                }
+                var list = new int[end - start];
+                for (var j = start; j < end; j++) {
+                    list[j - start] = (int) pairs[j];
+                }
+                postings.put(t, list);
+                start = end;
+            }
+            return postings;
+        }
+
+        // Parses the array of flat objects with string values that javadoc writes to its search
+        // files, skipping whatever comes before the array and after it.
+        static List<Map<String, String>> parseItems(String content) throws ZipException {
+            var items = new ArrayList<Map<String, String>>();
+            var pos = content.indexOf('[');
+            if (pos < 0) {
+                throw new ZipException("No search index array");
+            }
+            var buf = new StringBuilder();
+            Map<String, String> item = null;
+            String name = null;
+            for (pos++; pos < content.length(); pos++) {
+                var c = content.charAt(pos);
+                if (c == '{') {
+                    item = new HashMap<>();
+                } else if (c == '}') {
+                    if (item != null) {
+                        items.add(item);
+                    }
+                    item = null;
+                } else if (c == ']' && item == null) {
+                    break;
+                } else if (c == '"') {
+                    buf.setLength(0);
+                    for (pos++; pos < content.length() && (c = content.charAt(pos)) != '"'; pos++) {
+                        if (c == '\\' && pos + 1 < content.length()) {
+                            c = content.charAt(++pos);
+                            switch (c) {
+                                case 'u':
+                                    if (pos + 4 >= content.length()) {
+                                        throw new ZipException("Invalid escape in search index");
+                                    }
+                                    c = (char) Integer.parseInt(content.substring(pos + 1, pos + 5),
+                                            16);
+                                    pos += 4;
+                                    break;
+                                case 'n':
+                                    c = '\n';
+                                    break;
+                                case 't':
+                                    c = '\t';
+                                    break;
+                                case 'r':
+                                    c = '\r';
+                                    break;
+                                case 'b':
+                                    c = '\b';
+                                    break;
+                                case 'f':
+                                    c = '\f';
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                        buf.append(c);
+                    }
+                    if (item != null) {
+                        if (name == null) {
+                            name = buf.toString();
+                        } else {
+                            item.put(name, buf.toString());
+                            name = null;
+                        }
+                    }
+                } else if (c == ',' || c == ':' || Character.isWhitespace(c)) {
+                    continue;
+                } else if (item != null && name != null) {
+                    // A value that isn't a string, like a number, isn't needed.
+                    while (pos + 1 < content.length() && ",}".indexOf(content.charAt(pos + 1)) < 0) {
+                        pos++;
+                    }
+                    name = null;
+                }
+            }
+            return items;
+        }
+
+        // Distinct trigrams of the text, each packed into an int.
+        static int[] trigrams(String text) {
+            if (text.length() < 3) {
+                return new int[0];
+            }
+            var result = new int[text.length() - 2];
+            var n = 0;
+            for (var i = 0; i + 3 <= text.length(); i++) {
+                var t = (text.charAt(i) * 31 + text.charAt(i + 1)) * 31 + text.charAt(i + 2);
+                var seen = false;
+                for (var j = 0; j < n && !seen; j++) {
+                    seen = result[j] == t;
+                }
+                if (!seen) {
+                    result[n++] = t;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+
+    // Best candidates of a search in a max-heap of longs packing the rank (match, kind and name
+    // length), the segment number and the element number, so ranking candidates allocates nothing.
+    // A smaller value is a better hit, and candidates that rank the same go to the one found first.
+    static final class TopHits {
+
+        private static final int SEGMENT_BITS = 20;
+
+        private static final int ELEMENT_BITS = 23;
+
+        // Most segments and most elements in a segment that fit in a packed candidate.
+        static final int MAX_SEGMENTS = 1 << SEGMENT_BITS;
+
+        static final int MAX_ELEMENTS = 1 << ELEMENT_BITS;
+
+        private final long[] heap;
+
+        private int size;
+
+        private TopHits(int limit) {
+            heap = new long[limit];
+        }
+
+        static long pack(int match, Kind kind, int nameLength, int segment, int element) {
+            long rank = (match << 18) | (kind.ordinal() << 16) | Math.min(nameLength, 0xffff);
+            return (rank << (SEGMENT_BITS + ELEMENT_BITS)) | ((long) segment << ELEMENT_BITS)
+                    | element;
+        }
+
+        static int match(long packed) {
+            return (int) (packed >>> (SEGMENT_BITS + ELEMENT_BITS + 18));
+        }
+
+        static int segment(long packed) {
+            return (int) (packed >>> ELEMENT_BITS) & ((1 << SEGMENT_BITS) - 1);
+        }
+
+        static int element(long packed) {
+            return (int) packed & ((1 << ELEMENT_BITS) - 1);
+        }
+
+        boolean accepts(long packed) {
+            return size < heap.length || packed < heap[0];
+        }
+
+        void offer(long packed) {
+            if (size < heap.length) {
+                var i = size++;
+                while (i > 0 && heap[(i - 1) / 2] < packed) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = packed;
+            } else if (packed < heap[0]) {
+                var i = 0;
+                while (true) {
+                    var child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heap[child + 1] > heap[child]) {
+                        child++;
+                    }
+                    if (heap[child] <= packed) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = packed;
+            }
+        }
+
+        void addAll(TopHits other) {
+            for (var i = 0; i < other.size; i++) {
+                offer(other.heap[i]);
+            }
+        }
+    }
+
+    // Element read from a search file, before it's added to a segment.
+    private static final class Element {
+
+        private final Kind kind;
+
+        private final String label;
+
+        private final String module;
+
+        private final String pkg;
+
+        private final String cls;
+
+        private final String url;
+
+        private Element(Kind kind, String label, String module, String pkg, String cls,
+                String url) {
+            this.kind = kind;
+            this.label = label;
+            this.module = module;
+            this.pkg = pkg;
+            this.cls = cls;
+            this.url = url;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.ResourceBundle;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.NodeChangeEvent;
+import java.util.prefs.NodeChangeListener;
+import java.util.prefs.PreferenceChangeListener;
+import java.util.prefs.Preferences;
+
+/**
+ * Configuration of the server read from the user preferences, held as an immutable
+ * {@link Snapshot} so that requests never touch the preferences store.
+ *
+ * <p>
+ * The snapshot is loaded when the configuration is first used and swapped for a new one when
+ * preference or node change events report a change. Changes made by other processes send no
+ * events, so {@link #refresh()} reads the preferences again on demand, at most once per
+ * {@value #DEFAULT_REFRESH_MILLIS} milliseconds (configurable by setting the
+ * {@value #SYS_PROP_REFRESH_MILLIS} system property).
+ */
+class ServerConfig {
+
+    private static final System.Logger LOGGER = System.getLogger(ServerConfig.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final String JDK_DOCS_NODE = "jdk-docs";
+
+    static final String M2_REPOS_NODE = "m2-repos";
+
+    static final String DEFAULT_M2_REPO = "default";
+
+    static final String M2_PRECEDENCE_KEY = "precedence";
+
+    static final String SYS_PROP_REFRESH_MILLIS =
+            "com.github.argherna.javadocserver.config.refresh.millis";
+
+    static final long DEFAULT_REFRESH_MILLIS = 1000L;
+
+    private static final class InstanceHolder {
+        private static final ServerConfig INSTANCE = new ServerConfig(
+                Preferences.userNodeForPackage(ServerMain.class),
+                Util.getLongProperty(SYS_PROP_REFRESH_MILLIS, DEFAULT_REFRESH_MILLIS));
+    }
+
+    private final Preferences root;
+
+    private final long refreshNanos;
+
+    private final PreferenceChangeListener preferenceChangeListener = evt -> reload();
+
+    private volatile Snapshot snapshot;
+
+    private volatile long loadedAt;
+
+    ServerConfig(Preferences root, long refreshMillis) {
+        this.root = root;
+        this.refreshNanos = Math.max(0L, refreshMillis) * 1_000_000L;
+        this.snapshot = new Snapshot(0L, false, Map.of(), Map.of());
+        root.addNodeChangeListener(new NodeChangeListener() {
+
+            @Override
+            public void childAdded(NodeChangeEvent evt) {
+                listenTo(evt.getChild());
+                reload();
+            }
+
+            @Override
+            public void childRemoved(NodeChangeEvent evt) {
+                reload();
+            }
+        });
+        try {
+            for (var name : root.childrenNames()) {
+                listenTo(root.node(name));
+            }
+        } catch (BackingStoreException e) {
+            LOGGER.log(WARNING, "logger.warning.configload", e);
+        }
+        reload();
+    }
+
+    static ServerConfig getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Return the current snapshot of the configuration.
+     *
+     * @return current snapshot.
+     */
+    Snapshot get() {
+        return snapshot;
+    }
+
+    /**
+     * Read the preferences again if they haven't been read recently and return the current
+     * snapshot. Use this as a fallback for changes made by other processes, like before answering
+     * that something isn't configured.
+     *
+     * @return current snapshot.
+     */
+    Snapshot refresh() {
+        if (System.nanoTime() - loadedAt < refreshNanos) {
+            return snapshot;
+        }
+        synchronized (this) {
+            // Callers that waited for another one to reload take its snapshot.
+            if (System.nanoTime() - loadedAt < refreshNanos) {
+                return snapshot;
+            }
+            return reload();
+        }
+    }
+
+    /**
+     * Read the preferences and swap the snapshot for a new one if they changed.
+     *
+     * @return current snapshot.
+     */
+    synchronized Snapshot reload() {
+        var current = snapshot;
+        try {
+            var configured = root.childrenNames().length > 0;
+            var jdkDocs = read(JDK_DOCS_NODE);
+            var m2Repos = read(M2_REPOS_NODE);
+            if (configured != current.configured || !jdkDocs.equals(current.jdkDocs)
+                    || !m2Repos.equals(current.m2Repos)) {
+                current = new Snapshot(current.generation + 1, configured, jdkDocs, m2Repos);
+                snapshot = current;
+                LOGGER.log(DEBUG, "logger.finer.configloaded", current.generation);
+            }
+        } catch (BackingStoreException | IllegalStateException e) {
+            LOGGER.log(WARNING, "logger.warning.configload", e);
+        }
+        loadedAt = System.nanoTime();
+        return current;
+    }
+
+    private void listenTo(Preferences node) {
+        if (node.name().equals(JDK_DOCS_NODE) || node.name().equals(M2_REPOS_NODE)) {
+            node.addPreferenceChangeListener(preferenceChangeListener);
+        }
+    }
+
+    // Reads the node without creating it, a node that doesn't exist is empty.
+    private Map<String, String> read(String name) throws BackingStoreException {
+        if (!root.nodeExists(name)) {
+            return Map.of();
+        }
+        var node = root.node(name);
+        var values = new LinkedHashMap<String, String>();
+        for (var key : node.keys()) {
+            var value = node.get(key, "");
+            if (!value.isEmpty()) {
+                values.put(key, value);
+            }
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Immutable configuration of the server.
+     */
+    static final class Snapshot {
+
+        private final long generation;
+
+        private final boolean configured;
+
+        private final Map<String, String> jdkDocs;
+
+        private final Map<String, String> m2Repos;
+
+        private final List<String> m2RepoPaths;
+
+        private Snapshot(long generation, boolean configured, Map<String, String> jdkDocs,
+                Map<String, String> m2Repos) {
+            this.generation = generation;
+            this.configured = configured;
+            this.jdkDocs = jdkDocs;
+            this.m2Repos = m2Repos;
+            this.m2RepoPaths = orderM2Repos(m2Repos);
+        }
+
+        // Orders the repositories by the keys listed in the precedence entry, then the default
+        // repository, then the others by key. A path configured twice keeps its first place.
+        private static List<String> orderM2Repos(Map<String, String> m2Repos) {
+            var byKey = new TreeMap<>(m2Repos);
+            var precedence = byKey.remove(M2_PRECEDENCE_KEY);
+            var keys = new ArrayList<String>();
+            if (precedence != null) {
+                for (var key : precedence.split(",")) {
+                    keys.add(key.strip());
+                }
+            }
+            keys.add(DEFAULT_M2_REPO);
+            keys.addAll(byKey.keySet());
+            var paths = new ArrayList<String>();
+            for (var key : keys) {
+                var path = byKey.get(key);
+                if (path != null && !paths.contains(path)) {
+                    paths.add(path);
+                }
+            }
+            return Collections.unmodifiableList(paths);
+        }
+
+        /**
+         * Return the generation of the snapshot, a number that is incremented every time the
+         * configuration changes.
+         *
+         * @return generation of the snapshot.
+         */
+        long getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Return {@code true} if anything has been configured at all.
+         *
+         * @return {@code false} if the server hasn't been set up yet.
+         */
+        boolean isConfigured() {
+            return configured;
+        }
+
+        /**
+         * Return the JDK documentation archives by their keys, in the order of the keys.
+         *
+         * @return read-only map of keys to archive paths.
+         */
+        Map<String, String> getJdkDocs() {
+            return jdkDocs;
+        }
+
+        /**
+         * Return the Maven repositories in the order they are searched for an artifact, the
+         * first one that has it wins.
+         *
+         * @return read-only list of paths to the repositories.
+         */
+        List<String> getM2Repos() {
+            return m2RepoPaths;
+        }
+    }
+}
@@ -8,7 +8,11 @@ import static java.lang.System.Logger.Level.WARNING;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 /**
@@ -22,7 +26,7 @@ import com.sun.net.httpserver.HttpServer;
  */
 public class ServerMain implements Runnable {
 
-    private static final int DEFAULT_HTTP_PORT = 8084;
+    private static final int DEFAULT_HTTP_PORT = ServerOptions.DEFAULT_HTTP_PORT;
 
     static final System.Logger LOGGER = System.getLogger(ServerMain.class.getName());
 
@@ -30,13 +34,28 @@ public class ServerMain implements Runnable {
 
     private final int port;
 
+    private final ServerOptions options;
+
+    private ExecutorService executor;
+
+    private MavenRepositories repositories;
+
+    private ArchiveIndexer indexer;
+
+    private final Metrics metrics = new Metrics();
+
+    private AccessLog accessLog;
+
+    private Bulkhead inFlight;
+
     /**
-     * The main takes 1 command line argument that signifies the port to run the server on.
+     * The main takes 1 command line argument that signifies the port to run the server on, and
+     * options that tune how requests are executed.
      */
     public static void main(String... args) {
 
         int argIdx = 0;
-        int port = DEFAULT_HTTP_PORT;
+        var options = new ServerOptions();
 
         while (argIdx < args.length) {
             String arg = args[argIdx];
@@ -44,13 +63,47 @@ public class ServerMain implements Runnable {
                 case "-h":
                     showUsageAndExit(2);
                     break;
+                case "-x":
+                    try {
+                        options.setExecutorMode(
+                                WorkerExecutors.Mode.fromString(nextArg(args, ++argIdx)));
+                    } catch (IllegalArgumentException e) {
+                        showUsageAndExit(2);
+                    }
+                    break;
+                case "-t":
+                    options.setWorkerThreads(
+                            parsePositiveInt(nextArg(args, ++argIdx), options.getWorkerThreads()));
+                    break;
+                case "-r":
+                    try {
+                        options.setArchiveReader(
+                                JavadocHandler.ArchiveReader.fromString(nextArg(args, ++argIdx)));
+                    } catch (IllegalArgumentException e) {
+                        showUsageAndExit(2);
+                    }
+                    break;
+                case "-s":
+                    try {
+                        options.setEngine(ServerOptions.Engine.fromString(nextArg(args, ++argIdx)));
+                    } catch (IllegalArgumentException e) {
+                        showUsageAndExit(2);
+                    }
+                    break;
+                case "-w":
+                    options.setWaitForPrewarm(true);
+                    break;
+                case "-q":
+                    options.setWorkerQueueSize(parsePositiveInt(nextArg(args, ++argIdx),
+                            options.getWorkerQueueSize()));
+                    break;
                 default:
                     try {
-                        port = Integer.valueOf(arg);
+                        options.setPort(Integer.valueOf(arg));
                     } catch (NumberFormatException e) {
                         LOGGER.log(INFO, format("Invalid port number %s, defaulting to %d%n", arg,
                                 DEFAULT_HTTP_PORT));
-                        port = DEFAULT_HTTP_PORT;
+                        options.setPort(DEFAULT_HTTP_PORT);
                     }
                     break;
             }
@@ -58,7 +111,7 @@ public class ServerMain implements Runnable {
         }
 
         try {
-            var javadocServer = new ServerMain(port);
+            var javadocServer = new ServerMain(options);
             javadocServer.run();
         } catch (Exception e) {
             System.err.printf("%s", e.getMessage());
@@ -67,13 +120,33 @@ public class ServerMain implements Runnable {
         }
     }
 
+    private static String nextArg(String[] args, int argIdx) {
+        if (argIdx >= args.length) {
+            showUsageAndExit(2);
+        }
+        return args[argIdx];
+    }
+
+    private static int parsePositiveInt(String arg, int defaultValue) {
+        try {
+            var value = Integer.parseInt(arg);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the warning below.
+        }
+        LOGGER.log(INFO, format("Invalid value %s, defaulting to %d", arg, defaultValue));
+        return defaultValue;
+    }
+
     private static void showUsageAndExit(int status) {
         showUsage();
         System.exit(status);
     }
 
     private static void showUsage() {
-        System.err.printf("Usage: %s [port]%n", ServerMain.class.getName());
+        System.err.printf("Usage: %s [options] [port]%n", ServerMain.class.getName());
         System.err.println();
         System.err
                 .println("Serves content from javadoc jars stored locally in zip" + "/jar files.");
@@ -83,18 +156,39 @@ public class ServerMain implements Runnable {
         System.err.println();
         System.err.println("Arguments:");
         System.err.println();
-        System.err.println(" port  port the server will listen on " + "(default is "
+        System.err.println(" port        port the server will listen on " + "(default is "
                 + DEFAULT_HTTP_PORT + ")");
         System.err.println();
         System.err.println("Options:");
         System.err.println();
-        System.err.println(" -h    show this help and exit");
+        System.err.println(" -h          show this help and exit");
+        System.err.println(" -q <size>   number of requests queued for the worker threads "
+                + "(default is " + WorkerExecutors.DEFAULT_QUEUE_SIZE + ")");
+        System.err.println(" -r <reader> how archives are read, one of zipfile or mapped "
+                + "(default is zipfile)");
+        System.err.println(" -s <engine> HTTP server engine, one of jdk or nio (default is jdk)");
+        System.err.println(" -t <count>  number of worker threads (default is "
+                + WorkerExecutors.DEFAULT_THREADS + ")");
+        System.err.println(" -w          read the most requested entries of the last run before "
+                + "accepting requests");
+        System.err.println(" -x <mode>   how requests are executed, one of platform, virtual or "
+                + "dispatcher");
+        System.err.println("             (default is platform)");
     }
 
     public ServerMain(int port) {
+        this(new ServerOptions().setPort(port));
+    }
+
+    ServerMain(ServerOptions options) {
         try {
-            this.port = port;
-            httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+            this.port = options.getPort();
+            this.options = options;
+            if (options.getEngine() == ServerOptions.Engine.NIO) {
+                httpServer = new NioHttpServer(new InetSocketAddress(port), 0);
+            } else {
+                httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -103,35 +197,142 @@ public class ServerMain implements Runnable {
     @Override
     public void run() {
         init();
+        var hotSet = HotSet.getInstance();
+        var prewarm = hotSet.prewarm(options.getArchiveReader());
+        if (options.isWaitForPrewarm()) {
+            LOGGER.log(DEBUG, "Waiting for the warm-up to finish...");
+            prewarm.join();
+        }
+        hotSet.start();
         LOGGER.log(DEBUG, "Starting HTTP server...");
         httpServer.start();
         LOGGER.log(INFO, format(
                 "Welcome to JavadocServer. Visit http://localhost:%d/docs for initial setup information.",
-                port));
+                getLocalPort()));
+    }
+
+    /**
+     * Return the port the server listens on, the one picked by the system if it was started on
+     * port {@code 0}.
+     *
+     * @return local port.
+     */
+    int getLocalPort() {
+        return httpServer.getAddress().getPort();
     }
 
     private void init() {
+        // The NIO engine can't run exchanges on its selector thread, it answers the ones its
+        // executor rejects with a 503.
+        executor = WorkerExecutors.create(options.getExecutorMode(), options.getWorkerThreads(),
+                options.getWorkerQueueSize(), options.getEngine() == ServerOptions.Engine.NIO);
+        httpServer.setExecutor(executor);
+
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 LOGGER.log(WARNING, "Stopping HTTP server...");
-                httpServer.stop(0);
+                httpServer.stop((int) options.getShutdownSeconds());
+                WorkerExecutors.shutdown(executor, options.getShutdownSeconds());
+                if (indexer != null) {
+                    indexer.close();
+                }
+                if (repositories != null) {
+                    repositories.close();
+                }
+                HotSet.getInstance().close();
+                ArchiveCache.getInstance().close();
+                if (accessLog != null) {
+                    accessLog.close();
+                }
             }
         });
 
+        accessLog = AccessLog.fromSystemProperties();
+        if (accessLog != null) {
+            metrics.addCounter("javadocserver_access_log_records_total",
+                    "Access log records written.", accessLog::getWritten);
+            metrics.addCounter("javadocserver_access_log_dropped_total",
+                    "Access log records dropped because the buffer was full.",
+                    accessLog::getDropped);
+        }
+
         var filters = List.of(new AllowGetRequestsOnlyFilter(), new InternalServerErrorFilter(),
                 new ServerHeaderFilter());
 
-        var ctx0 = httpServer.createContext("/", new IndexHandler());
-        ctx0.getFilters().addAll(filters);
+        repositories = new MavenRepositories(ServerConfig.getInstance());
+        repositories.start();
+
+        indexer = new ArchiveIndexer(repositories);
+        indexer.start();
 
-        var ctx1 = httpServer.createContext("/jdk", new JdkDocsHandler());
-        ctx1.getFilters().addAll(filters);
+        // Limits are sized to the workers: the archive routes may take every one of them, the
+        // others at most a quarter, plus half as many waiting, so a burst of them leaves most of
+        // the workers to the archives. Requests the worker queue can't take are shed before they
+        // reach a bulkhead. Without an executor requests run on the dispatcher
+        // thread one at a time, a request waiting in a queue would hold up the one it waits for,
+        // so they're turned away instead. Virtual threads have no pool to bound them, the
+        // in-flight cap does.
+        var threads = options.getWorkerThreads();
+        var queued = executor != null;
+        int workers;
+        if (executor == null) {
+            workers = 1;
+        } else if (executor instanceof ThreadPoolExecutor) {
+            workers = ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+        } else {
+            workers = Math.max(64, threads * 16);
+        }
+        inFlight = bulkhead("inflight", workers, 0);
+        var largeEntries = bulkhead("large", Math.max(1, workers / 4), queued);
+        metrics.addCounter("javadocserver_requests_shed_total",
+                "Requests shed because the worker queue was full.", AdmissionFilter::getShed);
+
+        createContext("/", new IndexHandler(repositories), filters,
+                bulkhead("index", Math.max(1, workers / 4), queued));
+        createContext("/jdk", new JdkDocsHandler(options.getArchiveReader(), largeEntries), filters,
+                bulkhead("jdk", workers, queued));
+        createContext("/m2", new M2Handler(repositories, options.getArchiveReader(), largeEntries),
+                filters, bulkhead("m2", workers, queued));
+        createContext("/docs", new DocsHandler(), filters,
+                bulkhead("docs", Math.max(1, workers / 4), queued));
+        createContext("/api/search", new SearchHandler(SearchIndex.getInstance()), filters, null);
+        createContext("/metrics", new MetricsHandler(metrics), filters);
+    }
 
-        var ctx2 = httpServer.createContext("/m2", new M2Handler());
-        ctx2.getFilters().addAll(filters);
+    // Queues half as many requests as the bulkhead runs at once.
+    private Bulkhead bulkhead(String name, int defaultLimit, boolean queued) {
+        return bulkhead(name, defaultLimit, queued ? defaultLimit / 2 : 0);
+    }
+
+    private Bulkhead bulkhead(String name, int defaultLimit, int defaultQueueSize) {
+        var bulkhead = Bulkhead.fromSystemProperties(name, defaultLimit, defaultQueueSize);
+        if (bulkhead != null) {
+            metrics.addBulkhead(bulkhead);
+        }
+        return bulkhead;
+    }
 
-        var ctx3 = httpServer.createContext("/docs", new DocsHandler());
-        ctx3.getFilters().addAll(filters);
+    private void createContext(String path, HttpHandler handler, List<Filter> filters) {
+        createContext(path, handler, filters, null, false);
+    }
+
+    private void createContext(String path, HttpHandler handler, List<Filter> filters,
+            Bulkhead bulkhead) {
+        createContext(path, handler, filters, bulkhead, true);
+    }
+
+    // Metrics come first so that requests turned away by the other filters are recorded too.
+    private void createContext(String path, HttpHandler handler, List<Filter> filters,
+            Bulkhead bulkhead, boolean admitted) {
+        var ctx = httpServer.createContext(path, handler);
+        ctx.getFilters().add(new MetricsFilter(metrics.forRoute(path)));
+        if (accessLog != null) {
+            ctx.getFilters().add(new AccessLogFilter(accessLog));
+        }
+        if (admitted && (inFlight != null || bulkhead != null)) {
+            ctx.getFilters().add(new AdmissionFilter(inFlight, bulkhead));
+        }
+        ctx.getFilters().addAll(filters);
     }
 }
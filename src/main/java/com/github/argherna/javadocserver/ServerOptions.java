@@ -0,0 +1,121 @@
+package com.github.argherna.javadocserver;
+
+/**
+ * Startup options for the server, usually set from the command line.
+ */
+class ServerOptions {
+
+    static final int DEFAULT_HTTP_PORT = 8084;
+
+    static final long DEFAULT_SHUTDOWN_SECONDS = 5L;
+
+    private int port = DEFAULT_HTTP_PORT;
+
+    private WorkerExecutors.Mode executorMode = WorkerExecutors.Mode.PLATFORM;
+
+    private int workerThreads = WorkerExecutors.DEFAULT_THREADS;
+
+    private int workerQueueSize = WorkerExecutors.DEFAULT_QUEUE_SIZE;
+
+    private long shutdownSeconds = DEFAULT_SHUTDOWN_SECONDS;
+
+    private JavadocHandler.ArchiveReader archiveReader = JavadocHandler.ArchiveReader.ZIPFILE;
+
+    private Engine engine = Engine.JDK;
+
+    private boolean waitForPrewarm;
+
+    int getPort() {
+        return port;
+    }
+
+    ServerOptions setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    WorkerExecutors.Mode getExecutorMode() {
+        return executorMode;
+    }
+
+    ServerOptions setExecutorMode(WorkerExecutors.Mode executorMode) {
+        this.executorMode = executorMode;
+        return this;
+    }
+
+    int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    ServerOptions setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    ServerOptions setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+        return this;
+    }
+
+    long getShutdownSeconds() {
+        return shutdownSeconds;
+    }
+
+    ServerOptions setShutdownSeconds(long shutdownSeconds) {
+        this.shutdownSeconds = shutdownSeconds;
+        return this;
+    }
+
+    JavadocHandler.ArchiveReader getArchiveReader() {
+        return archiveReader;
+    }
+
+    ServerOptions setArchiveReader(JavadocHandler.ArchiveReader archiveReader) {
+        this.archiveReader = archiveReader;
+        return this;
+    }
+
+    Engine getEngine() {
+        return engine;
+    }
+
+    ServerOptions setEngine(Engine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    boolean isWaitForPrewarm() {
+        return waitForPrewarm;
+    }
+
+    ServerOptions setWaitForPrewarm(boolean waitForPrewarm) {
+        this.waitForPrewarm = waitForPrewarm;
+        return this;
+    }
+
+    /**
+     * HTTP server implementations the server can run on.
+     */
+    static enum Engine {
+
+        /**
+         * The JDK's {@code com.sun.net.httpserver} server, a thread per exchange with blocking
+         * writes.
+         */
+        JDK,
+
+        /**
+         * The {@link NioHttpServer}, connections on a selector and a worker thread per exchange
+         * only while it's handled.
+         */
+        NIO;
+
+        static Engine fromString(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.github.argherna.javadocserver;
 
+import static java.lang.System.Logger.Level.WARNING;
 import static java.util.Objects.nonNull;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ResourceBundle;
 
 /**
  * Utilities for this server that defy categorization as a member of a class.
  */
 class Util {
 
+    private static final System.Logger LOGGER = System.getLogger(Util.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
     static byte[] EMPTY_BYTE_ARRAY = new byte[0];
 
     // Empty private constructor to prevent instantiation.
@@ -85,4 +92,48 @@ class Util {
             is.close();
         }
     }
+
+    /**
+     * Return the value of the named system property or {@code null} if it isn't set.
+     * 
+     * @param name system property name.
+     * @return value of the system property or {@code null}.
+     */
+    static String getSystemProperty(String name) {
+        return AccessController
+                .doPrivileged((PrivilegedAction<String>) () -> System.getProperty(name));
+    }
+
+    /**
+     * Return the value of the named system property as an int or the default value if it isn't set
+     * or isn't a number.
+     * 
+     * @param name         system property name.
+     * @param defaultValue value returned if the property isn't set or isn't a number.
+     * @return value of the system property as an int.
+     */
+    static int getIntegerProperty(String name, int defaultValue) {
+        return (int) getLongProperty(name, defaultValue);
+    }
+
+    /**
+     * Return the value of the named system property as a long or the default value if it isn't set
+     * or isn't a number.
+     * 
+     * @param name         system property name.
+     * @param defaultValue value returned if the property isn't set or isn't a number.
+     * @return value of the system property as a long.
+     */
+    static long getLongProperty(String name, long defaultValue) {
+        var value = getSystemProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.log(WARNING, "logger.warning.badproperty", name, value);
+            return defaultValue;
+        }
+    }
 }
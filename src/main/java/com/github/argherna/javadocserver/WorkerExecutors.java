@@ -0,0 +1,180 @@
+package com.github.argherna.javadocserver;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that run HTTP exchanges for the server.
+ */
+class WorkerExecutors {
+
+    private static final System.Logger LOGGER = System.getLogger(WorkerExecutors.class.getName(),
+            ResourceBundle.getBundle("com.github.argherna.javadocserver.messages_javadocserver"));
+
+    static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    static final int DEFAULT_QUEUE_SIZE = 256;
+
+    /**
+     * Kinds of worker executors the server can run exchanges on.
+     */
+    static enum Mode {
+
+        /**
+         * Run every exchange on the dispatcher thread of the HTTP server.
+         */
+        DISPATCHER,
+
+        /**
+         * Run exchanges on a bounded pool of platform threads.
+         */
+        PLATFORM,
+
+        /**
+         * Run every exchange on its own virtual thread.
+         */
+        VIRTUAL;
+
+        static Mode fromString(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    // Empty private constructor to prevent instantiation.
+    private WorkerExecutors() {
+    }
+
+    /**
+     * Return a new executor for the given mode, or {@code null} for {@link Mode#DISPATCHER}.
+     *
+     * <p>
+     * The platform pool runs at most {@code threads} exchanges at once and queues at most
+     * {@code queueSize} more. When the queue is full the dispatcher thread runs the exchange itself
+     * with {@link AdmissionFilter#runShedding(Runnable)}, so that it's answered with a 503 at once
+     * instead of holding up the dispatcher. If virtual threads aren't available in the running
+     * JVM, a platform pool is returned instead.
+     *
+     * @param mode      executor mode.
+     * @param threads   number of platform threads.
+     * @param queueSize number of exchanges queued for the platform threads.
+     * @return new executor or {@code null}.
+     */
+    static ExecutorService create(Mode mode, int threads, int queueSize) {
+        return create(mode, threads, queueSize, false);
+    }
+
+    /**
+     * Return a new executor for the given mode, for a server that can't run exchanges on its
+     * dispatcher thread when {@code rejectWhenSaturated} is {@code true}.
+     *
+     * <p>
+     * Such a server answers the exchanges its executor rejects itself, so the platform pool
+     * rejects exchanges when its queue is full instead of running them on the caller, and
+     * {@link Mode#DISPATCHER} gets a pool of a single thread that runs exchanges one at a time
+     * instead of {@code null}.
+     *
+     * @param mode                executor mode.
+     * @param threads             number of platform threads.
+     * @param queueSize           number of exchanges queued for the platform threads.
+     * @param rejectWhenSaturated {@code true} to reject exchanges rather than run them on the
+     *                            caller.
+     * @return new executor, or {@code null} for {@link Mode#DISPATCHER} if
+     *         {@code rejectWhenSaturated} is {@code false}.
+     */
+    static ExecutorService create(Mode mode, int threads, int queueSize,
+            boolean rejectWhenSaturated) {
+        switch (mode) {
+            case DISPATCHER:
+                if (rejectWhenSaturated) {
+                    return newPlatformPool(1, queueSize, true);
+                }
+                return null;
+            case VIRTUAL:
+                var virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null) {
+                    LOGGER.log(INFO, "logger.info.executorvirtual");
+                    return virtual;
+                }
+                LOGGER.log(WARNING, "logger.warning.novthreads");
+                // Fall through to a platform pool.
+            case PLATFORM:
+            default:
+                return newPlatformPool(threads, queueSize, rejectWhenSaturated);
+        }
+    }
+
+    private static ExecutorService newPlatformPool(int threads, int queueSize,
+            boolean rejectWhenSaturated) {
+        var poolSize = Math.max(1, threads);
+        var executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), new WorkerThreadFactory(),
+                rejectWhenSaturated ? new ThreadPoolExecutor.AbortPolicy() : (r, pool) -> {
+                    // The JDK's server can't answer an exchange its executor rejects, it closes
+                    // the connection.
+                    if (!pool.isShutdown()) {
+                        AdmissionFilter.runShedding(r);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        LOGGER.log(INFO, "logger.info.executorplatform", poolSize, queueSize);
+        return executor;
+    }
+
+    /**
+     * Stop accepting new work and wait for running exchanges to finish.
+     *
+     * @param executor       executor to shut down, may be {@code null}.
+     * @param timeoutSeconds seconds to wait before interrupting running exchanges.
+     */
+    static void shutdown(ExecutorService executor, long timeoutSeconds) {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                LOGGER.log(WARNING, "logger.warning.executordrain", timeoutSeconds);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Virtual threads are only available from Java 21, so look the factory method up reflectively
+    // to keep running on older JVMs.
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Preview builds throw UnsupportedOperationException unless preview is enabled.
+            return null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            var t = new Thread(r, "javadoc-server-worker-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
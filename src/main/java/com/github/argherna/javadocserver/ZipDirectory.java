@@ -0,0 +1,256 @@
+package com.github.argherna.javadocserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.ZipException;
+
+/**
+ * Reader for the central directory of a zip archive and the positions of the entries' data in the
+ * archive.
+ *
+ * <p>
+ * {@link java.util.zip.ZipFile} only hands out inflated entry streams and keeps a
+ * {@link java.util.zip.ZipEntry} and name for every entry it's asked about. Serving compressed
+ * entries as they are stored needs the offset of each entry's data in the archive, which this class
+ * reads from the central directory and the local file headers. Entries are reported to an
+ * {@link EntryVisitor} straight from the central directory's bytes, without creating an object per
+ * entry.
+ */
+class ZipDirectory {
+
+    static final int STORED = 0;
+
+    static final int DEFLATED = 8;
+
+    private static final int END_SIG = 0x06054b50;
+
+    private static final int END_SIZE = 22;
+
+    private static final int ZIP64_END_SIG = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int CENTRAL_SIG = 0x02014b50;
+
+    private static final int CENTRAL_SIZE = 46;
+
+    private static final int LOCAL_SIG = 0x04034b50;
+
+    private static final int LOCAL_SIZE = 30;
+
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    /**
+     * Receives the entries of a central directory.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+
+        /**
+         * Visit an entry.
+         *
+         * @param central           buffer holding the central directory.
+         * @param nameOffset        offset of the entry's UTF-8 encoded name in {@code central}.
+         * @param nameLength        length of the entry's name in bytes.
+         * @param method            compression method.
+         * @param crc               CRC-32 of the uncompressed data.
+         * @param compressedSize    compressed size.
+         * @param size              uncompressed size.
+         * @param localHeaderOffset offset of the entry's local file header in the archive.
+         * @param time              last modification time in milliseconds, as
+         *                          {@link java.util.zip.ZipEntry#getTime()} would report it.
+         */
+        void visit(ByteBuffer central, int nameOffset, int nameLength, int method, int crc,
+                long compressedSize, long size, long localHeaderOffset, long time);
+    }
+
+    // Empty private constructor to prevent instantiation.
+    private ZipDirectory() {
+    }
+
+    /**
+     * Read the central directory of the archive open on the given channel.
+     *
+     * @param channel channel open on a zip archive.
+     * @param visitor receives every entry in the archive.
+     * @return number of entries in the archive.
+     * @throws IOException if an I/O error occurs or the archive is malformed.
+     */
+    static int read(FileChannel channel, EntryVisitor visitor) throws IOException {
+        var fileSize = channel.size();
+        var tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        var tail = readFully(channel, fileSize - tailSize, tailSize);
+        var end = findEnd(tail);
+        var locator = locateCentralDirectory(tail, end, fileSize,
+                offset -> readFully(channel, offset, 56));
+        var count = (int) locator[0];
+        parse(readFully(channel, locator[1], (int) locator[2]), count, visitor);
+        return count;
+    }
+
+    private static int findEnd(ByteBuffer tail) throws ZipException {
+        for (var i = tail.limit() - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG) {
+                return i;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    // Returns the entry count, offset and size of the central directory.
+    private static long[] locateCentralDirectory(ByteBuffer tail, int end, long fileSize,
+            Zip64EndReader zip64EndReader) throws IOException {
+        long count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long centralSize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long centralOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if ((count == 0xffff || centralSize == 0xffffffffL || centralOffset == 0xffffffffL)
+                && end >= ZIP64_LOCATOR_SIZE
+                && tail.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIG) {
+            var zip64End = zip64EndReader.read(tail.getLong(end - ZIP64_LOCATOR_SIZE + 8));
+            if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                throw new ZipException("Invalid zip64 end of central directory");
+            }
+            count = zip64End.getLong(32);
+            centralSize = zip64End.getLong(40);
+            centralOffset = zip64End.getLong(48);
+        }
+        if (count > Integer.MAX_VALUE || centralSize > Integer.MAX_VALUE
+                || centralOffset + centralSize > fileSize) {
+            throw new ZipException("Unsupported central directory size");
+        }
+        return new long[] {count, centralOffset, centralSize};
+    }
+
+    @FunctionalInterface
+    private interface Zip64EndReader {
+        ByteBuffer read(long offset) throws IOException;
+    }
+
+    /**
+     * Parse a central directory.
+     *
+     * @param central buffer holding exactly the central directory, in little-endian order.
+     * @param count   number of entries in the central directory.
+     * @param visitor receives every entry in the central directory.
+     * @throws ZipException if the central directory is malformed.
+     */
+    static void parse(ByteBuffer central, int count, EntryVisitor visitor) throws ZipException {
+        var pos = 0;
+        for (var i = 0; i < count; i++) {
+            if (pos + CENTRAL_SIZE > central.limit() || central.getInt(pos) != CENTRAL_SIG) {
+                throw new ZipException("Invalid central directory header");
+            }
+            var nameLength = Short.toUnsignedInt(central.getShort(pos + 28));
+            var extraLength = Short.toUnsignedInt(central.getShort(pos + 30));
+            var commentLength = Short.toUnsignedInt(central.getShort(pos + 32));
+            long compressedSize = Integer.toUnsignedLong(central.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(central.getInt(pos + 24));
+            long localHeaderOffset = Integer.toUnsignedLong(central.getInt(pos + 42));
+
+            var dosTime = central.getInt(pos + 12);
+            var time = dosToJavaTime(dosTime);
+            var extra = pos + CENTRAL_SIZE + nameLength;
+            var extraEnd = Math.min(extra + extraLength, central.limit());
+            while (extra + 4 <= extraEnd) {
+                var id = Short.toUnsignedInt(central.getShort(extra));
+                var length = Short.toUnsignedInt(central.getShort(extra + 2));
+                var field = extra + 4;
+                if (id == 0x0001) {
+                    if (size == 0xffffffffL) {
+                        size = central.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xffffffffL) {
+                        compressedSize = central.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xffffffffL) {
+                        localHeaderOffset = central.getLong(field);
+                    }
+                } else if (id == 0x5455 && length >= 5 && (central.get(field) & 0x1) != 0) {
+                    // Extended timestamp, which ZipEntry.getTime() prefers to the DOS time.
+                    time = Integer.toUnsignedLong(central.getInt(field + 1)) * 1000L;
+                }
+                extra += 4 + length;
+            }
+
+            if (pos + CENTRAL_SIZE + nameLength > central.limit()) {
+                throw new ZipException("Invalid central directory header");
+            }
+            visitor.visit(central, pos + CENTRAL_SIZE, nameLength,
+                    Short.toUnsignedInt(central.getShort(pos + 10)), central.getInt(pos + 16),
+                    compressedSize, size, localHeaderOffset, time);
+            pos += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Return the offset of an entry's data in the archive open on the given channel.
+     *
+     * @param channel           channel open on the archive.
+     * @param localHeaderOffset offset of the entry's local file header.
+     * @return offset of the entry's data.
+     * @throws IOException if an I/O error occurs or the local header is malformed.
+     */
+    static long dataOffset(FileChannel channel, long localHeaderOffset) throws IOException {
+        return localDataOffset(readFully(channel, localHeaderOffset, LOCAL_SIZE),
+                localHeaderOffset);
+    }
+
+    /**
+     * Return the offset of an entry's data in an archive mapped into memory.
+     *
+     * @param archive           buffer holding the whole archive.
+     * @param localHeaderOffset offset of the entry's local file header.
+     * @return offset of the entry's data.
+     * @throws ZipException if the local header is malformed.
+     */
+    static long dataOffset(ByteBuffer archive, long localHeaderOffset) throws ZipException {
+        if (localHeaderOffset < 0 || localHeaderOffset + LOCAL_SIZE > archive.capacity()) {
+            throw new ZipException("Invalid local file header");
+        }
+        return localDataOffset(archive.slice((int) localHeaderOffset, LOCAL_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN), localHeaderOffset);
+    }
+
+    // Returns the offset of an entry's data from a buffer holding its local file header.
+    private static long localDataOffset(ByteBuffer local, long localHeaderOffset)
+            throws ZipException {
+        if (local.getInt(0) != LOCAL_SIG) {
+            throw new ZipException("Invalid local file header");
+        }
+        return localHeaderOffset + LOCAL_SIZE + Short.toUnsignedInt(local.getShort(26))
+                + Short.toUnsignedInt(local.getShort(28));
+    }
+
+    // Same conversion as java.util.zip.ZipUtils.dosToJavaTime.
+    private static long dosToJavaTime(int dosTime) {
+        try {
+            return LocalDateTime
+                    .of(((dosTime >> 25) & 0x7f) + 1980, (dosTime >> 21) & 0x0f,
+                            (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f,
+                            (dosTime << 1) & 0x3e)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1L;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException {
+        var buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of archive");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import com.sun.net.httpserver.Headers;
+
+import org.junit.jupiter.api.Test;
+
+class ByteRangesTest {
+
+    @Test
+    void resolvesRanges() {
+        assertRanges(ByteRanges.parse("bytes=0-499", 1000), 0, 499);
+        assertRanges(ByteRanges.parse("bytes=500-", 1000), 500, 999);
+        assertNull(ByteRanges.parse("bytes = 10-19", 1000));
+        assertRanges(ByteRanges.parse(" BYTES=10-19 ", 1000), 10, 19);
+        assertEquals("bytes 10-19/1000", ByteRanges.parse("bytes=10-19", 1000)
+                .getContentRange(0, 1000));
+        assertEquals(10L, ByteRanges.parse("bytes=10-19", 1000).getLength(0));
+    }
+
+    @Test
+    void resolvesSuffixRanges() {
+        assertRanges(ByteRanges.parse("bytes=-100", 1000), 900, 999);
+        assertRanges(ByteRanges.parse("bytes=-1000", 1000), 0, 999);
+        assertRanges(ByteRanges.parse("bytes=-5000", 1000), 0, 999);
+        assertRanges(ByteRanges.parse("bytes=-0", 1000));
+    }
+
+    @Test
+    void clampsOrDropsRangesPastTheEnd() {
+        assertRanges(ByteRanges.parse("bytes=900-5000", 1000), 900, 999);
+        assertRanges(ByteRanges.parse("bytes=999-", 1000), 999, 999);
+        assertRanges(ByteRanges.parse("bytes=1000-", 1000));
+        assertRanges(ByteRanges.parse("bytes=5000-6000", 1000));
+        assertRanges(ByteRanges.parse("bytes=5000-,0-9", 1000), 0, 9);
+    }
+
+    @Test
+    void satisfiesNoRangeOfAnEmptyEntry() {
+        assertRanges(ByteRanges.parse("bytes=0-", 0));
+        assertRanges(ByteRanges.parse("bytes=0-0", 0));
+        assertRanges(ByteRanges.parse("bytes=-10", 0));
+    }
+
+    @Test
+    void sortsAndMergesRanges() {
+        assertRanges(ByteRanges.parse("bytes=500-599,0-99", 1000), 0, 99, 500, 599);
+        assertRanges(ByteRanges.parse("bytes=0-99,50-149", 1000), 0, 149);
+        assertRanges(ByteRanges.parse("bytes=0-99,100-199", 1000), 0, 199);
+        assertRanges(ByteRanges.parse("bytes=0-99,101-199", 1000), 0, 99, 101, 199);
+        assertRanges(ByteRanges.parse("bytes=200-299,-100,0-9,5-250", 1000), 0, 299, 900, 999);
+        assertRanges(ByteRanges.parse("bytes=0-999,10-19", 1000), 0, 999);
+    }
+
+    @Test
+    void ignoresRequestsForTooManyRanges() {
+        var ranges = new StringBuilder("bytes=");
+        for (var i = 0; i < ByteRanges.MAX_RANGES; i++) {
+            ranges.append(i == 0 ? "" : ",").append(i * 10).append('-').append(i * 10 + 1);
+        }
+        var parsed = ByteRanges.parse(ranges.toString(), 1000);
+        assertNotNull(parsed);
+        assertEquals(ByteRanges.MAX_RANGES, parsed.size());
+        assertNull(ByteRanges.parse(ranges + ",500-501", 1000));
+        // Ranges past the end still count.
+        assertNull(ByteRanges.parse(ranges + ",5000-5001", 1000));
+        // Empty elements of the list don't.
+        assertNotNull(ByteRanges.parse(ranges + ",,", 1000));
+    }
+
+    @Test
+    void ignoresMalformedHeaders() {
+        assertNull(ByteRanges.parse("items=0-9", 1000));
+        assertNull(ByteRanges.parse("bytes=", 1000));
+        assertNull(ByteRanges.parse("bytes=,", 1000));
+        assertNull(ByteRanges.parse("bytes=10", 1000));
+        assertNull(ByteRanges.parse("bytes=9-0", 1000));
+        assertNull(ByteRanges.parse("bytes=a-9", 1000));
+        assertNull(ByteRanges.parse("bytes=0-9,x", 1000));
+        assertNull(ByteRanges.parse("bytes=--9", 1000));
+        assertNull(ByteRanges.parse("bytes=-", 1000));
+    }
+
+    @Test
+    void ignoresNumbersThatOverflow() {
+        assertNull(ByteRanges.parse("bytes=99999999999999999999-", 1000));
+        assertNull(ByteRanges.parse("bytes=0-99999999999999999999", 1000));
+        assertNull(ByteRanges.parse("bytes=-99999999999999999999", 1000));
+        assertRanges(ByteRanges.parse("bytes=0-" + Long.MAX_VALUE, 1000), 0, 999);
+        assertRanges(ByteRanges.parse("bytes=-" + Long.MAX_VALUE, 1000), 0, 999);
+    }
+
+    @Test
+    void comparesIfRangeEntityTagsStrongly() {
+        assertTrue(HttpCaching.isRangeCurrent(ifRange(null), "\"abc\"", -1L));
+        assertTrue(HttpCaching.isRangeCurrent(ifRange("\"abc\""), "\"abc\"", -1L));
+        assertTrue(HttpCaching.isRangeCurrent(ifRange(" \"abc\" "), "\"abc\"", -1L));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange("\"abd\""), "\"abc\"", -1L));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange("W/\"abc\""), "\"abc\"", -1L));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange("W/\"abc\""), "W/\"abc\"", -1L));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange("\"abc\""), null, -1L));
+    }
+
+    @Test
+    void comparesIfRangeDatesWithTheLastModifiedTime() {
+        var lastModified = 1_600_000_000_123L;
+        var date = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC));
+        var earlier = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(lastModified - 1000L).atZone(ZoneOffset.UTC));
+        assertTrue(HttpCaching.isRangeCurrent(ifRange(date), "\"abc\"", lastModified));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange(earlier), "\"abc\"", lastModified));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange(date), "\"abc\"", -1L));
+        assertFalse(HttpCaching.isRangeCurrent(ifRange("yesterday"), "\"abc\"", lastModified));
+    }
+
+    private static Headers ifRange(String value) {
+        var headers = new Headers();
+        if (value != null) {
+            headers.set("If-Range", value);
+        }
+        return headers;
+    }
+
+    // Asserts the ranges are the given start and end pairs, in order.
+    private static void assertRanges(ByteRanges ranges, long... startsAndEnds) {
+        assertNotNull(ranges);
+        assertEquals(startsAndEnds.length / 2, ranges.size());
+        for (var i = 0; i < ranges.size(); i++) {
+            assertEquals(startsAndEnds[2 * i], ranges.getStart(i), "start of range " + i);
+            assertEquals(startsAndEnds[2 * i + 1], ranges.getEnd(i), "end of range " + i);
+        }
+    }
+}
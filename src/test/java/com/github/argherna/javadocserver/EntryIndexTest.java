@@ -0,0 +1,94 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void findsEntriesOfArchivesIndexedConcurrently() throws Exception {
+        var archives = new ArrayList<Path>();
+        for (var a = 0; a < 8; a++) {
+            archives.add(archive("archive" + a + ".zip", 200, "v1"));
+        }
+        var index = new EntryIndex(60_000L);
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+            for (var t = 0; t < 16; t++) {
+                var archive = archives.get(t % archives.size()).toString();
+                tasks.add(() -> {
+                    for (var i = 0; i < 200; i++) {
+                        var entry = index.find(archive, "entry" + i + ".html");
+                        assertNotNull(entry);
+                        assertEquals(2L, entry.getSize());
+                    }
+                    assertNull(index.find(archive, "missing.html"));
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(8 * 200, index.getEntryCount());
+    }
+
+    @Test
+    void indexesAChangedArchiveAgain() throws IOException {
+        var archive = archive("changing.zip", 10, "v1");
+        var index = new EntryIndex(0L);
+        assertNotNull(index.find(archive.toString(), "entry9.html"));
+        assertNull(index.find(archive.toString(), "entry10.html"));
+
+        archive("changing.zip", 20, "v22");
+        Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis() + 5000L));
+        var entry = index.find(archive.toString(), "entry10.html");
+        assertNotNull(entry);
+        assertEquals(3L, entry.getSize());
+        assertEquals(20, index.getEntryCount());
+    }
+
+    @Test
+    void reportsMissingArchives() {
+        var index = new EntryIndex(0L);
+        assertThrows(NoSuchFileException.class,
+                () -> index.find(dir.resolve("missing.zip").toString(), "index.html"));
+    }
+
+    private Path archive(String name, int entries, String content) throws IOException {
+        var path = dir.resolve(name);
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (var i = 0; i < entries; i++) {
+                out.putNextEntry(new ZipEntry("entry" + i + ".html"));
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+}
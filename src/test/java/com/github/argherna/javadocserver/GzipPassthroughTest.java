@@ -0,0 +1,46 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.Headers;
+
+class GzipPassthroughTest {
+
+    @Test
+    void acceptsGzip() {
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip, deflate, br")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("x-gzip")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("*")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;q=0, x-gzip;q=0.5")));
+        assertFalse(GzipPassthrough.acceptsGzip(new Headers()));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("identity, br")));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;q=0")));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("*;q=0")));
+    }
+
+    @Test
+    void explicitGzipWinsOverAny() {
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;q=0, *")));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("*, gzip;q=0.000")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip, *;q=0")));
+    }
+
+    @Test
+    void readsTheQualityParameterOnly() {
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;Q=0")));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("gzip; q = 0")));
+        assertFalse(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;level=9;q=0")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;freq=0")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;freq=0;q=1")));
+        assertTrue(GzipPassthrough.acceptsGzip(acceptEncoding("gzip;q=0.5;level=0")));
+    }
+
+    private static Headers acceptEncoding(String value) {
+        var headers = new Headers();
+        headers.add("Accept-Encoding", value);
+        return headers;
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class HotEntryCacheTest {
+
+    private static final int ENTRY_BYTES = 8 * 1024;
+
+    private static final long MAX_BYTES = 100L * ENTRY_BYTES;
+
+    @Test
+    void returnsWhatWasPut() {
+        var cache = new HotEntryCache(MAX_BYTES, ENTRY_BYTES);
+        var key = key(1);
+        assertNull(cache.get(key));
+        var entry = entry();
+        cache.put(key, entry);
+        assertSame(entry, cache.get(key));
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+        assertEquals(ENTRY_BYTES, cache.getSize());
+    }
+
+    @Test
+    void keepsPopularEntriesThroughAScan() {
+        var cache = new HotEntryCache(MAX_BYTES, ENTRY_BYTES);
+        for (var round = 0; round < 10; round++) {
+            for (var i = 0; i < 20; i++) {
+                if (cache.get(key(i)) == null) {
+                    cache.put(key(i), entry());
+                }
+            }
+        }
+        for (var i = 1000; i < 1500; i++) {
+            if (cache.get(key(i)) == null) {
+                cache.put(key(i), entry());
+            }
+        }
+        var kept = 0;
+        for (var i = 0; i < 20; i++) {
+            if (cache.get(key(i)) != null) {
+                kept++;
+            }
+        }
+        assertEquals(20, kept);
+        assertEquals(cache.getEntryCount() * (long) ENTRY_BYTES, cache.getSize());
+    }
+
+    @Test
+    void staysWithinItsBudgetUnderConcurrentUse() throws Exception {
+        var cache = new HotEntryCache(MAX_BYTES, ENTRY_BYTES);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+            for (var t = 0; t < 4; t++) {
+                var seed = t;
+                tasks.add(() -> {
+                    for (var i = 0; i < 20_000; i++) {
+                        var key = key((i * 31 + seed) % (i % 3 == 0 ? 500 : 40));
+                        if (cache.get(key) == null) {
+                            cache.put(key, entry());
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(cache.getEntryCount() * (long) ENTRY_BYTES, cache.getSize());
+        assertEquals(MAX_BYTES / ENTRY_BYTES, cache.getEntryCount(), 1.0);
+    }
+
+    private static HotEntryCache.Key key(int i) {
+        return new HotEntryCache.Key(1L, "entry" + i + ".html", false);
+    }
+
+    private static HotEntryCache.CachedEntry entry() {
+        return new HotEntryCache.CachedEntry(new byte[ENTRY_BYTES], "\"etag\"", 0L, false, false);
+    }
+}
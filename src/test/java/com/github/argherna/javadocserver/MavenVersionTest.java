@@ -0,0 +1,140 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MavenVersionTest {
+
+    @Test
+    void ordersQualifiers() {
+        assertOrdered("1-alpha2snapshot", "1-alpha2", "1-alpha-123", "1-beta-2", "1-beta123",
+                "1-m2", "1-m11", "1-rc", "1-cr2", "1-rc123", "1-SNAPSHOT", "1", "1-sp", "1-sp2",
+                "1-sp123", "1-abc", "1-def", "1-pom-1", "1-1-snapshot", "1-1", "1-2", "1-123");
+    }
+
+    @Test
+    void ordersNumbers() {
+        assertOrdered("2.0", "2-1", "2.0.a", "2.0.0.a", "2.0.2", "2.0.123", "2.1.0", "2.1-a",
+                "2.1b", "2.1-c", "2.1-1", "2.1.0.1", "2.2", "2.123", "11.a2", "11.a11", "11.b2",
+                "11.b11", "11.m2", "11.m11", "11", "11.a", "11b", "11c", "11m");
+    }
+
+    @Test
+    void ordersQualifiersBeforeNumbers() {
+        assertOrdered("1-sp", "1-1", "1.1");
+        assertOrdered("1.0-alpha1", "1.0-SNAPSHOT", "1.0", "1.0-sp", "1.0.1");
+    }
+
+    @Test
+    void comparesNumbersOfAnySize() {
+        assertOrdered("1.9", "1.10", "1.99999999999999999999", "1.100000000000000000000");
+    }
+
+    @Test
+    void ignoresTrailingZerosAndReleaseQualifiers() {
+        assertEquivalent("1", "1.0", "1.0.0", "1-0", "1-ga", "1-final", "1-release", "1.0-GA");
+        assertEquivalent("1a1", "1-a1", "1-alpha-1", "1alpha1");
+        assertEquivalent("1cr", "1rc", "1-CR");
+        assertEquivalent("1-SNAPSHOT", "1-snapshot");
+    }
+
+    @Test
+    void recognizesSnapshots() {
+        assertTrue(MavenVersion.parse("1.0-SNAPSHOT").isSnapshot());
+        assertFalse(MavenVersion.parse("1.0").isSnapshot());
+        assertEquals("1.0-SNAPSHOT", MavenVersion.parse("1.0-SNAPSHOT").toString());
+    }
+
+    @Test
+    void parsesSymbolicVersions() {
+        assertNull(MavenVersion.Selector.parse("1.0"));
+        assertNull(MavenVersion.Selector.parse("1.0-SNAPSHOT"));
+        assertNull(MavenVersion.Selector.parse(""));
+        assertEquals("latest", MavenVersion.Selector.parse("latest").toString());
+        assertEquals("[1.0,2.0)", MavenVersion.Selector.parse("[1.0,2.0)").toString());
+    }
+
+    @Test
+    void rejectsMalformedRanges() {
+        for (var range : List.of("[", "[1.0", "[1.0,2.0", "[1.0,2.0,3.0]", "(1.0)", "[1.0)",
+                "[]", "[1.0,2.0)x", "[1.0,2.0),", "[1.0,2.0)[3.0,)")) {
+            assertThrows(IllegalArgumentException.class, () -> MavenVersion.Selector.parse(range),
+                    range);
+        }
+    }
+
+    @Test
+    void selectsTheHighestMatchingVersion() {
+        var versions = descending("1.0", "1.1", "1.5", "2.0-SNAPSHOT", "2.0", "2.1-SNAPSHOT");
+        assertEquals("2.1-SNAPSHOT", select("latest", versions));
+        assertEquals("2.0", select("latest-release", versions));
+        // Like in Maven, 2.0-SNAPSHOT comes before 2.0 and so is in the range.
+        assertEquals("2.0-SNAPSHOT", select("[1.0,2.0)", versions));
+        assertEquals("1.5", select("[1.0,2.0-SNAPSHOT)", versions));
+        assertEquals("2.0", select("[1.0,2.0]", versions));
+        assertEquals("1.1", select("(,1.5)", versions));
+        assertEquals("2.1-SNAPSHOT", select("[1.5,)", versions));
+        assertEquals("1.1", select("[1.1]", versions));
+        assertEquals("1.0", select("(,1.0],[3.0,)", versions));
+        assertEquals("2.1-SNAPSHOT", select("(,1.0],[2.0,)", versions));
+        assertNull(select("(1.0,1.1)", versions));
+        assertNull(select("[3.0,)", versions));
+    }
+
+    @Test
+    void excludesBoundsOfOpenRanges() {
+        var selector = MavenVersion.Selector.parse("(1.0,2.0)");
+        assertFalse(selector.matches(MavenVersion.parse("1.0")));
+        assertFalse(selector.matches(MavenVersion.parse("1.0.0")));
+        assertTrue(selector.matches(MavenVersion.parse("1.0.1")));
+        // 2.0-SNAPSHOT comes before 2.0.
+        assertTrue(selector.matches(MavenVersion.parse("2.0-SNAPSHOT")));
+        assertFalse(selector.matches(MavenVersion.parse("2.0")));
+    }
+
+    private static void assertOrdered(String... versions) {
+        for (var i = 0; i < versions.length; i++) {
+            var low = MavenVersion.parse(versions[i]);
+            for (var j = i + 1; j < versions.length; j++) {
+                var high = MavenVersion.parse(versions[j]);
+                assertTrue(low.compareTo(high) < 0, versions[i] + " < " + versions[j]);
+                assertTrue(high.compareTo(low) > 0, versions[j] + " > " + versions[i]);
+            }
+        }
+    }
+
+    private static void assertEquivalent(String... versions) {
+        for (var i = 0; i < versions.length; i++) {
+            for (var j = 0; j < versions.length; j++) {
+                var a = MavenVersion.parse(versions[i]);
+                var b = MavenVersion.parse(versions[j]);
+                assertEquals(0, a.compareTo(b), versions[i] + " == " + versions[j]);
+                assertEquals(a, b);
+                assertEquals(a.hashCode(), b.hashCode(), versions[i] + " hash " + versions[j]);
+            }
+        }
+    }
+
+    private static List<MavenVersion> descending(String... versions) {
+        var list = new ArrayList<MavenVersion>();
+        for (var version : versions) {
+            list.add(MavenVersion.parse(version));
+        }
+        list.sort(Collections.reverseOrder());
+        return list;
+    }
+
+    private static String select(String spec, List<MavenVersion> versions) {
+        var selected = MavenVersion.Selector.parse(spec).select(versions);
+        return selected == null ? null : selected.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NioHttpServerTest {
+
+    private NioHttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new NioHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", NioHttpServerTest::echo);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void parsesTheRequestLineAndHeaders() throws IOException {
+        var responses = exchange("GET /a/b%20c?x=1&y=2 HTTP/1.1\r\nHost: localhost\r\n"
+                + "X-Test:  one \r\nx-test:two\r\nConnection: close\r\n\r\n");
+        assertEquals(1, responses.size());
+        assertEquals(200, responses.get(0).status);
+        assertEquals("GET /a/b%20c x=1&y=2 HTTP/1.1 [one, two] 0:", responses.get(0).body);
+    }
+
+    @Test
+    void readsBodiesOfTheContentLength() throws IOException {
+        var responses = exchange("POST /form HTTP/1.1\r\nContent-Length: 5\r\n"
+                + "Connection: close\r\n\r\nhello");
+        assertEquals("POST /form null HTTP/1.1 null 5:hello", responses.get(0).body);
+    }
+
+    @Test
+    void answersPipelinedRequestsInOrder() throws IOException {
+        var responses = exchange("\r\n\r\nGET /1 HTTP/1.1\r\n\r\n"
+                + "POST /2 HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "GET /3 HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertEquals(3, responses.size());
+        assertEquals("GET /1 null HTTP/1.1 null 0:", responses.get(0).body);
+        assertEquals("POST /2 null HTTP/1.1 null 3:abc", responses.get(1).body);
+        assertEquals("GET /3 null HTTP/1.1 null 0:", responses.get(2).body);
+    }
+
+    @Test
+    void waitsForRequestsSplitAcrossReads() throws IOException, InterruptedException {
+        try (var socket = connect()) {
+            var out = socket.getOutputStream();
+            for (var part : new String[] {"GET /sp", "lit HTTP/1.1\r\nConn", "ection: close\r",
+                    "\n\r", "\n"}) {
+                out.write(part.getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                Thread.sleep(20L);
+            }
+            var responses = parseResponses(socket.getInputStream().readAllBytes());
+            assertEquals("GET /split null HTTP/1.1 null 0:", responses.get(0).body);
+        }
+    }
+
+    @Test
+    void closesHttp10ConnectionsUnlessKeptAlive() throws IOException {
+        var responses = exchange("GET /1 HTTP/1.0\r\n\r\nGET /2 HTTP/1.0\r\n\r\n");
+        assertEquals(1, responses.size());
+        assertEquals("close", responses.get(0).header("Connection"));
+
+        responses = exchange("GET /1 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n"
+                + "GET /2 HTTP/1.0\r\n\r\n");
+        assertEquals(2, responses.size());
+        assertEquals("GET /2 null HTTP/1.0 null 0:", responses.get(1).body);
+    }
+
+    @Test
+    void chunksResponsesOfUnknownLength() throws IOException {
+        var responses = exchange("GET /chunked HTTP/1.1\r\n\r\n"
+                + "GET /after HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertEquals(2, responses.size());
+        assertEquals("chunked", responses.get(0).header("Transfer-Encoding"));
+        assertEquals("GET /chunked null HTTP/1.1 null 0:", responses.get(0).body);
+        assertEquals("GET /after null HTTP/1.1 null 0:", responses.get(1).body);
+    }
+
+    @Test
+    void rejectsMalformedRequestLines() throws IOException {
+        assertStatus(400, "GET /\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1 extra\r\n\r\n");
+        assertStatus(400, "GET / HTTP/2.0\r\n\r\n");
+        assertStatus(400, "GET /a b HTTP/1.1\r\n\r\n");
+        assertStatus(400, "GET /%zz HTTP/1.1\r\n\r\n");
+    }
+
+    @Test
+    void rejectsMalformedHeaders() throws IOException {
+        assertStatus(400, "GET / HTTP/1.1\r\nNoColon\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\n: empty name\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nX-Test: one\r\n folded\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nContent-Length: 1x\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nContent-Length: 99999999999999999999\r\n\r\n");
+    }
+
+    @Test
+    void rejectsChunkedRequestBodies() throws IOException {
+        assertStatus(501, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n0\r\n\r\n");
+    }
+
+    @Test
+    void rejectsRequestsThatAreTooLarge() throws IOException {
+        assertStatus(413, "POST / HTTP/1.1\r\nContent-Length: "
+                + (NioHttpServer.MAX_BODY_BYTES + 1) + "\r\n\r\n");
+        assertStatus(431, "GET / HTTP/1.1\r\nX-Test: "
+                + "a".repeat(NioHttpServer.MAX_HEADER_BYTES) + "\r\n\r\n");
+    }
+
+    // Answers with what the parser made of the request, in chunks when the path says so.
+    private static void echo(HttpExchange exchange) throws IOException {
+        var body = exchange.getRequestBody().readAllBytes();
+        var text = exchange.getRequestMethod() + ' ' + exchange.getRequestURI().getRawPath() + ' '
+                + exchange.getRequestURI().getRawQuery() + ' ' + exchange.getProtocol() + ' '
+                + exchange.getRequestHeaders().get("X-Test") + ' ' + body.length + ':'
+                + new String(body, StandardCharsets.ISO_8859_1);
+        var content = text.getBytes(StandardCharsets.ISO_8859_1);
+        var chunked = exchange.getRequestURI().getPath().equals("/chunked");
+        exchange.sendResponseHeaders(200, chunked ? 0 : content.length);
+        try (var out = exchange.getResponseBody()) {
+            if (chunked) {
+                out.write(content, 0, 4);
+                out.flush();
+                out.write(content, 4, content.length - 4);
+            } else {
+                out.write(content);
+            }
+        }
+    }
+
+    private Socket connect() throws IOException {
+        var socket = new Socket(InetAddress.getLoopbackAddress(), server.getAddress().getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    // Sends the requests and reads responses until the server closes the connection.
+    private List<Response> exchange(String requests) throws IOException {
+        try (var socket = connect()) {
+            socket.getOutputStream().write(requests.getBytes(StandardCharsets.ISO_8859_1));
+            socket.getOutputStream().flush();
+            return parseResponses(socket.getInputStream().readAllBytes());
+        }
+    }
+
+    private void assertStatus(int status, String request) throws IOException {
+        var responses = exchange(request);
+        assertEquals(1, responses.size(), request);
+        assertEquals(status, responses.get(0).status, request);
+        assertEquals("close", responses.get(0).header("Connection"), request);
+    }
+
+    private static List<Response> parseResponses(byte[] data) {
+        var text = new String(data, StandardCharsets.ISO_8859_1);
+        var responses = new ArrayList<Response>();
+        var pos = 0;
+        while (pos < text.length()) {
+            var headersEnd = text.indexOf("\r\n\r\n", pos);
+            assertTrue(headersEnd > 0, "Incomplete response: " + text.substring(pos));
+            var lines = text.substring(pos, headersEnd).split("\r\n");
+            var response = new Response(Integer.parseInt(lines[0].split(" ")[1]));
+            for (var i = 1; i < lines.length; i++) {
+                var colon = lines[i].indexOf(':');
+                response.headers.add(lines[i].substring(0, colon).toLowerCase());
+                response.headers.add(lines[i].substring(colon + 1).strip());
+            }
+            pos = headersEnd + 4;
+            var contentLength = response.header("Content-Length");
+            if ("chunked".equals(response.header("Transfer-Encoding"))) {
+                var body = new ByteArrayOutputStream();
+                while (true) {
+                    var lineEnd = text.indexOf("\r\n", pos);
+                    var size = Integer.parseInt(text.substring(pos, lineEnd), 16);
+                    pos = lineEnd + 2;
+                    body.writeBytes(text.substring(pos, pos + size)
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    pos += size;
+                    assertEquals("\r\n", text.substring(pos, pos + 2));
+                    pos += 2;
+                    if (size == 0) {
+                        break;
+                    }
+                }
+                response.body = body.toString(StandardCharsets.ISO_8859_1);
+            } else if (contentLength != null) {
+                var length = Integer.parseInt(contentLength);
+                response.body = text.substring(pos, pos + length);
+                pos += length;
+            } else {
+                response.body = text.substring(pos);
+                pos = text.length();
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    private static final class Response {
+
+        private final int status;
+
+        // Lower-cased names, each followed by its value.
+        private final List<String> headers = new ArrayList<>();
+
+        private String body;
+
+        private Response(int status) {
+            this.status = status;
+        }
+
+        private String header(String name) {
+            var i = headers.indexOf(name.toLowerCase());
+            return i < 0 || i % 2 != 0 ? null : headers.get(i + 1);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelJavadocArchiveScannerTest {
+
+    @TempDir
+    Path repository;
+
+    @Test
+    void reportsTheSameDirectoriesAsTheFinder() throws IOException {
+        for (var g = 0; g < 5; g++) {
+            for (var a = 0; a < 4; a++) {
+                for (var v = 0; v < 3; v++) {
+                    var artifact = "artifact" + a;
+                    var version = "1." + v;
+                    var dir = Files.createDirectories(repository.resolve("org/group" + g)
+                            .resolve(artifact).resolve(version));
+                    var base = artifact + "-" + version;
+                    Files.createFile(dir.resolve(base + ".pom"));
+                    Files.createFile(dir.resolve(base + ".jar"));
+                    Files.createFile(dir.resolve(base + ".jar.sha1"));
+                    if ((g + a + v) % 2 == 0) {
+                        Files.createFile(dir.resolve(base + "-javadoc.jar"));
+                    }
+                }
+                Files.createFile(repository.resolve("org/group" + g).resolve("artifact" + a)
+                        .resolve("maven-metadata-local.xml"));
+            }
+        }
+        // Two javadoc archives in one directory.
+        var artifact0 = repository.resolve("org/group0/artifact0/1.0");
+        Files.createFile(artifact0.resolve("artifact0-1.0-tests-javadoc.jar"));
+        // A symbolic link to a javadoc archive.
+        var linked = Files.createDirectories(repository.resolve("com/linked/1.0"));
+        Files.createSymbolicLink(linked.resolve("linked-1.0-javadoc.jar"),
+                artifact0.resolve("artifact0-1.0-javadoc.jar"));
+        // A hidden directory.
+        Files.createFile(Files.createDirectories(repository.resolve(".cache/hidden/1.0"))
+                .resolve("hidden-1.0-javadoc.jar"));
+        // A subdirectory of a version directory.
+        Files.createFile(Files.createDirectories(artifact0.resolve("nested"))
+                .resolve("nested-javadoc.jar"));
+        // A symbolic link to a directory, followed by neither.
+        Files.createSymbolicLink(repository.resolve("com/alias"), repository.resolve("org"));
+        // A directory named like a javadoc archive.
+        var odd = Files.createDirectories(repository.resolve("net/odd/1.0/odd-1.0-javadoc.jar"));
+        Files.createFile(odd.resolve("inner-javadoc.jar"));
+
+        var finder = new JavadocArchiveFinder(repository);
+        Files.walkFileTree(repository, finder);
+        var expected = new HashSet<>(finder.getJavadocArtifactDirectoryNames());
+        Set<String> actual;
+        try (var scanner = new ParallelJavadocArchiveScanner(4)) {
+            actual = new HashSet<>(scanner.scan(repository));
+        }
+
+        assertEquals(expected, actual);
+        assertTrue(actual.contains(Path.of("com/linked/1.0").toString()));
+        assertTrue(actual.contains(Path.of(".cache/hidden/1.0").toString()));
+        assertTrue(actual.contains(Path.of("org/group0/artifact0/1.0/nested").toString()));
+        assertTrue(actual.contains(Path.of("net/odd/1.0/odd-1.0-javadoc.jar").toString()));
+    }
+}
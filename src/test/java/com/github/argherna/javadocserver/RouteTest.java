@@ -0,0 +1,108 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+
+class RouteTest {
+
+    @Test
+    void parsesJdkRoutes() {
+        var route = Route.parse("/jdk/17/docs/api/java.base/java/lang/String.html");
+        assertEquals(Route.Kind.JDK, route.getKind());
+        assertEquals("17", route.getKey());
+        assertTrue(route.keyEquals("17"));
+        assertFalse(route.keyEquals("1"));
+        assertFalse(route.keyEquals("170"));
+        assertEquals("17".hashCode(), route.keyHashCode());
+        assertEquals("docs/api/java.base/java/lang/String.html", route.getEntryName());
+        assertFalse(route.isSnapshot());
+    }
+
+    @Test
+    void parsesMavenRoutes() {
+        var route = Route.parse("/m2/org.apache.commons/commons-lang3/3.12.0/index.html");
+        assertEquals(Route.Kind.M2, route.getKind());
+        assertEquals("org.apache.commons/commons-lang3/3.12.0", route.getKey());
+        assertTrue(route.keyEquals("org.apache.commons/commons-lang3/3.12.0"));
+        assertEquals("org.apache.commons/commons-lang3/3.12.0".hashCode(), route.keyHashCode());
+        assertEquals("org.apache.commons/commons-lang3", route.getArtifact());
+        assertEquals("3.12.0", route.getVersion());
+        assertEquals("index.html", route.getEntryName());
+        assertFalse(route.isSnapshot());
+    }
+
+    @Test
+    void pointsMavenRoutesWithoutAnEntryToTheArchive() {
+        assertEquals("", Route.parse("/m2/org.example/demo/1.0").getEntryName());
+        assertEquals("", Route.parse("/m2/org.example/demo/1.0/").getEntryName());
+    }
+
+    @Test
+    void ignoresEmptyPathElements() {
+        var route = Route.parse("//jdk//17///docs//api/index.html//");
+        assertEquals("17", route.getKey());
+        assertEquals("docs/api/index.html", route.getEntryName());
+
+        route = Route.parse("/m2//org.example//demo//1.0//a//b.html");
+        assertEquals("org.example/demo", route.getArtifact());
+        assertEquals("1.0", route.getVersion());
+        assertEquals("a/b.html", route.getEntryName());
+    }
+
+    @Test
+    void rejectsPathsOutsideTheArchives() {
+        assertNull(Route.parse(""));
+        assertNull(Route.parse("/"));
+        assertNull(Route.parse("/index.html"));
+        assertNull(Route.parse("/jdkx/17/index.html"));
+        assertNull(Route.parse("/jd/17/index.html"));
+        assertNull(Route.parse("/m22/org.example/demo/1.0/index.html"));
+        assertNull(Route.parse("/JDK/17/index.html"));
+    }
+
+    @Test
+    void rejectsIncompleteRoutes() {
+        assertNull(Route.parse("/jdk"));
+        assertNull(Route.parse("/jdk/"));
+        assertNull(Route.parse("/jdk/17"));
+        assertNull(Route.parse("/jdk/17//"));
+        assertNull(Route.parse("/m2"));
+        assertNull(Route.parse("/m2/org.example"));
+        assertNull(Route.parse("/m2/org.example/demo"));
+        assertNull(Route.parse("/m2/org.example/demo/"));
+    }
+
+    @Test
+    void recognizesSnapshotVersions() {
+        assertTrue(Route.parse("/m2/org.example/demo/1.0-SNAPSHOT/index.html").isSnapshot());
+        assertTrue(Route.parse("/m2/org.example/demo/-SNAPSHOT").isSnapshot());
+        assertFalse(Route.parse("/m2/org.example/demo/1.0-snapshot/index.html").isSnapshot());
+        assertFalse(Route.parse("/m2/org.example/demo/SNAPSHOT/index.html").isSnapshot());
+        assertFalse(Route.parse("/m2/org.example/demo/1.0-SNAPSHOT-1/index.html").isSnapshot());
+    }
+
+    @Test
+    void replacesTheVersion() {
+        var route = Route.parse("/m2/org.example/demo/1.0-SNAPSHOT/a/b.html")
+                .withVersion("1.0-20200101.120000-1");
+        assertEquals(Route.Kind.M2, route.getKind());
+        assertEquals("org.example/demo/1.0-20200101.120000-1", route.getKey());
+        assertEquals("a/b.html", route.getEntryName());
+        assertFalse(route.isSnapshot());
+    }
+
+    @Test
+    void resolvesTheArchivePath() {
+        var s = File.separator;
+        assertEquals(String.join(s, "repo", "org", "apache", "commons", "commons-lang3", "3.12.0",
+                "commons-lang3-3.12.0-javadoc.jar"),
+                Route.parse("/m2/org.apache.commons/commons-lang3/3.12.0/index.html")
+                        .toArchivePath("repo"));
+    }
+}
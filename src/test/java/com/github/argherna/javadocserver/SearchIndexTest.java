@@ -0,0 +1,128 @@
+package com.github.argherna.javadocserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+import com.github.argherna.javadocserver.SearchIndex.Kind;
+import com.github.argherna.javadocserver.SearchIndex.Segment;
+import com.github.argherna.javadocserver.SearchIndex.TopHits;
+
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+
+    // Query.EXACT, Query.PREFIX and Query.SUBSTRING.
+    private static final int EXACT = 0;
+
+    private static final int PREFIX = 1;
+
+    private static final int SUBSTRING = 2;
+
+    @Test
+    void parsesTheArrayOfASearchFile() throws ZipException {
+        var items = Segment.parseItems("typeSearchIndex = [{\"p\":\"java.lang\",\"l\":\"String\"},"
+                + "{\"p\":\"java.util\",\"l\":\"Map\"}];updateSearchResults();");
+        assertEquals(List.of(Map.of("p", "java.lang", "l", "String"),
+                Map.of("p", "java.util", "l", "Map")), items);
+    }
+
+    @Test
+    void parsesEmptyArrays() throws ZipException {
+        assertEquals(List.of(), Segment.parseItems("[]"));
+        assertEquals(List.of(), Segment.parseItems("moduleSearchIndex = [ ] ;"));
+        assertEquals(List.of(Map.of()), Segment.parseItems("[{}]"));
+    }
+
+    @Test
+    void ignoresWhitespace() throws ZipException {
+        assertEquals(List.of(Map.of("l", "String")),
+                Segment.parseItems("[\n  { \"l\" :\t\"String\" }\r\n]\n"));
+    }
+
+    @Test
+    void unescapesStrings() throws ZipException {
+        var items = Segment.parseItems("[{\"l\":\"a\\\"b\\\\c\\/d\\u0041\\u00e9\\n\\t\\r\\b\\f\"}]");
+        assertEquals("a\"b\\c/dAé\n\t\r\b\f", items.get(0).get("l"));
+        items = Segment.parseItems("[{\"l\":\"[{]}\"}]");
+        assertEquals("[{]}", items.get(0).get("l"));
+    }
+
+    @Test
+    void skipsValuesThatArentStrings() throws ZipException {
+        var items = Segment.parseItems("[{\"k\":12,\"l\":\"String\",\"x\":true},{\"n\":null}]");
+        assertEquals(List.of(Map.of("l", "String"), Map.of()), items);
+    }
+
+    @Test
+    void rejectsContentWithoutAnArray() {
+        assertThrows(ZipException.class, () -> Segment.parseItems(""));
+        assertThrows(ZipException.class, () -> Segment.parseItems("{\"l\":\"String\"}"));
+    }
+
+    @Test
+    void rejectsTruncatedUnicodeEscapes() {
+        assertThrows(ZipException.class, () -> Segment.parseItems("[{\"l\":\"\\u00"));
+    }
+
+    @Test
+    void packsTheLargestSegmentAndElementNumbers() {
+        var segment = TopHits.MAX_SEGMENTS - 1;
+        var element = TopHits.MAX_ELEMENTS - 1;
+        for (var match : new int[] {EXACT, PREFIX, SUBSTRING}) {
+            for (var kind : Kind.values()) {
+                var packed = TopHits.pack(match, kind, Integer.MAX_VALUE, segment, element);
+                assertTrue(packed > 0L);
+                assertEquals(match, TopHits.match(packed));
+                assertEquals(segment, TopHits.segment(packed));
+                assertEquals(element, TopHits.element(packed));
+            }
+        }
+        var packed = TopHits.pack(EXACT, Kind.TYPE, 0, 0, 0);
+        assertEquals(0L, packed);
+        assertEquals(0, TopHits.segment(packed));
+        assertEquals(0, TopHits.element(packed));
+    }
+
+    @Test
+    void keepsSegmentAndElementNumbersApart() {
+        var packed = TopHits.pack(PREFIX, Kind.MEMBER, 7, 1, TopHits.MAX_ELEMENTS - 1);
+        assertEquals(1, TopHits.segment(packed));
+        assertEquals(TopHits.MAX_ELEMENTS - 1, TopHits.element(packed));
+        packed = TopHits.pack(PREFIX, Kind.MEMBER, 7, TopHits.MAX_SEGMENTS - 1, 0);
+        assertEquals(TopHits.MAX_SEGMENTS - 1, TopHits.segment(packed));
+        assertEquals(0, TopHits.element(packed));
+        assertEquals(PREFIX, TopHits.match(packed));
+    }
+
+    @Test
+    void ranksByMatchThenKindThenNameLength() {
+        var last = TopHits.MAX_SEGMENTS - 1;
+        var lastElement = TopHits.MAX_ELEMENTS - 1;
+        // The worst exact match still beats the best prefix match.
+        assertTrue(TopHits.pack(EXACT, Kind.MEMBER, 0xffff, last, lastElement)
+                < TopHits.pack(PREFIX, Kind.TYPE, 0, 0, 0));
+        assertTrue(TopHits.pack(PREFIX, Kind.MEMBER, 0xffff, last, lastElement)
+                < TopHits.pack(SUBSTRING, Kind.TYPE, 0, 0, 0));
+        assertTrue(TopHits.pack(PREFIX, Kind.TYPE, 0xffff, last, lastElement)
+                < TopHits.pack(PREFIX, Kind.MODULE, 0, 0, 0));
+        assertTrue(TopHits.pack(PREFIX, Kind.TYPE, 5, last, lastElement)
+                < TopHits.pack(PREFIX, Kind.TYPE, 6, 0, 0));
+        // Equal ranks go to the candidate found first.
+        assertTrue(TopHits.pack(PREFIX, Kind.TYPE, 5, 0, lastElement)
+                < TopHits.pack(PREFIX, Kind.TYPE, 5, 1, 0));
+        assertTrue(TopHits.pack(PREFIX, Kind.TYPE, 5, 3, 8)
+                < TopHits.pack(PREFIX, Kind.TYPE, 5, 3, 9));
+    }
+
+    @Test
+    void capsNameLengths() {
+        assertEquals(TopHits.pack(PREFIX, Kind.TYPE, 0xffff, 2, 3),
+                TopHits.pack(PREFIX, Kind.TYPE, 0x10000, 2, 3));
+        assertEquals(PREFIX, TopHits.match(TopHits.pack(PREFIX, Kind.MEMBER, 1 << 20, 2, 3)));
+    }
+}